@@ -328,6 +328,7 @@ public class BenchmarkRunner {
             new FlatTreeUpdateTest(),
             new CreateManyChildNodesTest(),
             new CreateManyNodesTest(),
+            new LargeImportTest(),
             new UpdateManyChildNodesTest(),
             new TransientManyChildNodesTest(),
             new WikipediaImport(
@@ -445,6 +446,7 @@ public class BenchmarkRunner {
             ReadManyTest.uniform("UniformReadFiles", 1, ReadManyTest.FILES),
             ReadManyTest.uniform("UniformReadNodes", 1, ReadManyTest.NODES),
             new ConcurrentCreateNodesTest(),
+            new ConcurrentCommitTest(),
             new SequentialCreateNodesTest(),
             new CreateManyIndexedNodesTest(),
             new GetPoliciesTest(),
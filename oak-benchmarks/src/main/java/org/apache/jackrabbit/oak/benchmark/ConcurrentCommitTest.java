@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Measures the throughput of many small concurrent commits. Each writer
+ * updates a property on its own node and saves, which puts the commit
+ * ordering of the repository under contention rather than conflict
+ * handling. The number of background writers is controlled with the
+ * {@code writerCount} system property.
+ */
+public class ConcurrentCommitTest extends AbstractTest {
+
+    private static final int WRITER_COUNT = Integer.getInteger("writerCount", 100);
+
+    private static final int COMMITS_PER_ITERATION = 10;
+
+    private static final String ROOT_NODE_NAME = "test" + TEST_ID;
+
+    private Writer writer;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        Session session = loginWriter();
+        Node root = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i <= WRITER_COUNT; i++) {
+            root.addNode("node" + i, "nt:unstructured");
+        }
+        session.save();
+        for (int i = 1; i <= WRITER_COUNT; i++) {
+            addBackgroundJob(new Writer(root.getPath() + "/node" + i));
+        }
+        writer = new Writer(root.getPath() + "/node0");
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        writer.run();
+    }
+
+    private class Writer implements Runnable {
+
+        private final Session session = loginWriter();
+
+        private final String path;
+
+        private long count = 0;
+
+        private Writer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Node node = session.getNode(path);
+                for (int i = 0; i < COMMITS_PER_ITERATION; i++) {
+                    node.setProperty("count", count++);
+                    session.save();
+                }
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
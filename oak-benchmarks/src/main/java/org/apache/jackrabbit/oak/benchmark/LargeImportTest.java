@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.commons.JcrUtils;
+
+/**
+ * Measures the throughput of a large content import saved with a single
+ * call to {@link Session#save()}. On a DocumentNodeStore the transient
+ * changes exceed the update limit and are written as persistent branch
+ * commits. The number of nodes per import is controlled with the
+ * {@code importSize} system property.
+ */
+public class LargeImportTest extends AbstractTest {
+
+    private static final int IMPORT_SIZE = Integer.getInteger("importSize", 100000);
+
+    private static final int FANOUT = 100;
+
+    private static final String ROOT_NODE_NAME = "import" + TEST_ID;
+
+    private Session session;
+
+    private Node testRootNode;
+
+    private int iteration;
+
+    @Override
+    public void beforeSuite() throws RepositoryException {
+        session = loginWriter();
+        testRootNode = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        session.save();
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        Node node = testRootNode.addNode("import" + iteration++, "nt:unstructured");
+        int remaining = IMPORT_SIZE;
+        for (int i = 0; remaining > 0; i++) {
+            Node folder = node.addNode("folder" + i, "nt:unstructured");
+            for (int j = 0; j < FANOUT && remaining > 0; j++, remaining--) {
+                Node child = folder.addNode("node" + j, "nt:unstructured");
+                child.setProperty("title", "node " + i + "/" + j);
+                child.setProperty("index", j);
+            }
+        }
+        session.save();
+    }
+
+    @Override
+    public void afterTest() throws RepositoryException {
+        for (Node n : JcrUtils.getChildNodes(testRootNode)) {
+            n.remove();
+        }
+        session.save();
+    }
+
+    @Override
+    public void afterSuite() throws RepositoryException {
+        testRootNode.remove();
+        session.save();
+        session.logout();
+    }
+}
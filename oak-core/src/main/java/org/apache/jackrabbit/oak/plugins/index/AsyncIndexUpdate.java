@@ -35,6 +35,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -63,6 +65,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexUpdate.MissingIndexProviderS
 import org.apache.jackrabbit.oak.plugins.index.TrackingCorruptIndexHandler.CorruptIndexInfo;
 import org.apache.jackrabbit.oak.plugins.index.progress.MetricRateEstimator;
 import org.apache.jackrabbit.oak.plugins.index.progress.NodeCounterMBeanEstimator;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.metric.MetricStatisticsProvider;
 import org.apache.jackrabbit.oak.spi.commit.CommitContext;
@@ -98,6 +101,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class AsyncIndexUpdate implements Runnable, Closeable {
     /**
@@ -115,6 +119,17 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
     private static final long DEFAULT_LIFETIME = TimeUnit.DAYS.toMillis(1000);
 
+    /**
+     * The name of the lane that refreshes the property index statistics.
+     */
+    private static final String STATISTICS_LANE = System.getProperty(
+            "oak.indexStatistics.lane", "async");
+
+    /**
+     * Whether it was logged that the statistics lane doesn't run.
+     */
+    private static final AtomicBoolean STATISTICS_LANE_WARNED = new AtomicBoolean();
+
     private static final CommitFailedException INTERRUPTED = new CommitFailedException(
             "Async", 1, "Indexing stopped forcefully");
 
@@ -205,6 +220,18 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
     private final StatisticsProvider statisticsProvider;
 
+    /**
+     * The maximum number of indexes that are updated in parallel, each in
+     * its own thread, while the diff is traversed once. 0 means all indexes
+     * are updated in the indexing thread.
+     */
+    private int parallelEditors = Integer.getInteger("oak.async.parallelEditors", 0);
+
+    /**
+     * The threads of the parallel index editors, created on first use.
+     */
+    private ExecutorService parallelExecutor;
+
     public AsyncIndexUpdate(@NotNull String name, @NotNull NodeStore store,
                             @NotNull IndexEditorProvider provider, boolean switchOnSync) {
         this(name, store, provider, StatisticsProvider.NOOP, switchOnSync);
@@ -470,6 +497,9 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         } else {
             log.info("[{}] Closed", name);
         }
+        if (parallelExecutor != null) {
+            parallelExecutor.shutdown();
+        }
         closed = true;
     }
 
@@ -728,6 +758,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
                     new IndexUpdate(provider, name, after, builder, callback, callback, info, corruptIndexHandler)
                     .withMissingProviderStrategy(missingStrategy);
             configureRateEstimator(indexUpdate);
+            configureParallelEditors(indexUpdate);
             CommitFailedException exception =
                     EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
             if (exception != null) {
@@ -770,6 +801,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
                 }
                 updatePostRunStatus = true;
             }
+            refreshIndexStatistics(after, builder, callback);
             mergeWithConcurrencyCheck(store, validatorProviders, builder, beforeCheckpoint,
                     callback.lease, name);
             indexingFailed = false;
@@ -782,6 +814,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
             }
 
             corruptIndexHandler.markWorkingIndexes(indexUpdate.getUpdatedIndexPaths());
+            reportParallelEditors(indexUpdate);
         } finally {
             if (indexUpdate != null) {
                 if ( !indexingFailed ) {
@@ -806,6 +839,66 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         return updatePostRunStatus;
     }
 
+    /**
+     * Refresh the statistics of (at most) one property index, if they are
+     * outdated. This is only done by one lane, as the statistics don't
+     * depend on the lane. The callback renews the lease while the values are
+     * read, and stops the refresh if indexing is stopped. Other lanes log
+     * (once) if the statistics lane has never run.
+     */
+    private void refreshIndexStatistics(NodeState after, NodeBuilder builder,
+            AsyncUpdateCallback callback) throws CommitFailedException {
+        if (!STATISTICS_LANE.equals(name)) {
+            NodeBuilder async = builder.getChildNode(ASYNC);
+            if (!async.hasProperty(STATISTICS_LANE)
+                    && !async.hasProperty(leasify(STATISTICS_LANE))
+                    && STATISTICS_LANE_WARNED.compareAndSet(false, true)) {
+                log.warn("[{}] Property index statistics are refreshed by lane {}, which has not run; " +
+                        "set the system property oak.indexStatistics.lane to a lane that runs",
+                        name, STATISTICS_LANE);
+            }
+            return;
+        }
+        try {
+            String index = PropertyIndexStatistics.refresh(after, builder,
+                    System.currentTimeMillis(), callback);
+            if (index != null) {
+                log.debug("[{}] Refreshed the statistics of index {}", name, index);
+            }
+        } catch (RuntimeException e) {
+            log.warn("[{}] Failed to refresh index statistics", name, e);
+        }
+    }
+
+    private void configureParallelEditors(IndexUpdate indexUpdate) {
+        if (parallelEditors <= 0 || closed) {
+            return;
+        }
+        if (parallelExecutor == null) {
+            // one thread per index, as each index editor blocks its thread
+            // until the traversal is done
+            parallelExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("async-index-editor-" + name + "-%d")
+                    .setDaemon(true).build());
+        }
+        indexUpdate.setParallelEditors(parallelExecutor, parallelEditors);
+    }
+
+    private void reportParallelEditors(IndexUpdate indexUpdate) {
+        for (ParallelIndexEditor.Statistics stats : indexUpdate.getParallelEditorStatistics()) {
+            String prefix = name + ".parallel." + stats.getIndexPath();
+            statisticsProvider.getMeter(prefix + ".EVENTS", StatsOptions.METRICS_ONLY)
+                    .mark(stats.getEventCount());
+            statisticsProvider.getHistogram(prefix + ".LAG", StatsOptions.METRICS_ONLY)
+                    .update(stats.getMaxLag());
+            statisticsProvider.getHistogram(prefix + ".BLOCKED_MS", StatsOptions.METRICS_ONLY)
+                    .update(stats.getBlockedMillis());
+            statisticsProvider.getHistogram(prefix + ".EVENTS_PER_SEC", StatsOptions.METRICS_ONLY)
+                    .update(stats.getEventsPerSecond());
+            log.debug("[{}] Parallel index update {}", name, stats);
+        }
+    }
+
     private void configureRateEstimator(IndexUpdate indexUpdate) {
         //As metrics is an optional library guard the access with the check
         if (statisticsProvider.getClass().getSimpleName().equals("MetricStatisticsProvider")){
@@ -898,6 +991,16 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         this.validatorProviders = checkNotNull(validatorProviders);
     }
 
+    /**
+     * Set the maximum number of indexes that are updated in parallel. See
+     * also the system property {@code oak.async.parallelEditors}.
+     *
+     * @param parallelEditors the number of indexes, 0 to disable
+     */
+    public void setParallelEditors(int parallelEditors) {
+        this.parallelEditors = parallelEditors;
+    }
+
     public void setCorruptIndexHandler(TrackingCorruptIndexHandler corruptIndexHandler) {
         this.corruptIndexHandler = checkNotNull(corruptIndexHandler);
     }
@@ -63,6 +63,21 @@ public interface IndexConstants {
      */
     String VALUE_INCLUDED_PREFIXES = "valueIncludedPrefixes";
 
+    /**
+     * The expected number of distinct values of a property index. If set, a
+     * bloom filter of that capacity is built when the index is (re)indexed,
+     * so that lookups of values that are not indexed don't need to read the
+     * index content.
+     */
+    String BLOOM_FILTER_ENTRIES = "bloomFilterEntries";
+
+    /**
+     * Marks a property index for which the async indexer keeps value
+     * statistics, which are then used for cost estimation instead of
+     * counting the index entries.
+     */
+    String STATISTICS_PROPERTY_NAME = "statistics";
+
     /**
      * Marks a unique property index.
      */
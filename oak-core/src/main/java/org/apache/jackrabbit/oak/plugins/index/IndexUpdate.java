@@ -33,6 +33,7 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_COU
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_DISABLED;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.getAsyncLaneName;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
 import static org.apache.jackrabbit.oak.spi.commit.CompositeEditor.compose;
@@ -43,8 +44,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -55,6 +58,7 @@ import org.apache.jackrabbit.oak.plugins.index.NodeTraversalCallback.PathSource;
 import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
 import org.apache.jackrabbit.oak.plugins.index.progress.NodeCountEstimator;
 import org.apache.jackrabbit.oak.plugins.index.progress.TraversalRateEstimator;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.upgrade.IndexDisabler;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.Editor;
@@ -123,6 +127,12 @@ public class IndexUpdate implements Editor, PathSource {
      */
     private final Map<String, Editor> reindex = new HashMap<String, Editor>();
 
+    /**
+     * Property indexes that are reindexed using multiple threads, or
+     * {@code null}.
+     */
+    private ParallelReindexer parallelReindex;
+
 
     public IndexUpdate(
             IndexEditorProvider provider, String async,
@@ -163,15 +173,23 @@ public class IndexUpdate implements Editor, PathSource {
         rootState.nodeRead(this);
         collectIndexEditors(builder.getChildNode(INDEX_DEFINITIONS_NAME), before);
 
-        if (!reindex.isEmpty()) {
+        if (!reindex.isEmpty() || parallelReindex != null) {
             log.info("Reindexing will be performed for following indexes: {}",
-                    reindex.keySet());
+                    parallelReindex == null ? reindex.keySet()
+                            : Sets.union(reindex.keySet(), parallelReindex.getIndexPaths()));
             rootState.progressReporter.reindexingTraversalStart(getPath());
         }
 
         // no-op when reindex is empty
         CommitFailedException exception = process(
                 wrap(wrapProgress(compose(reindex.values()))), MISSING_NODE, after);
+        if (exception == null && parallelReindex != null) {
+            try {
+                parallelReindex.reindex(after, rootState.progressReporter, rootState);
+            } catch (CommitFailedException e) {
+                exception = e;
+            }
+        }
         rootState.progressReporter.reindexingTraversalEnd();
         if (exception != null) {
             throw exception;
@@ -210,6 +228,41 @@ public class IndexUpdate implements Editor, PathSource {
         rootState.setIgnoreReindexFlags(ignoreReindexFlag);
     }
 
+    /**
+     * Reindex non-unique property indexes of this update using the given
+     * number of threads. See also the system property
+     * {@code oak.indexUpdate.parallelReindexThreads}.
+     *
+     * @param threads the number of threads, 0 or 1 to reindex in the
+     *            traversal thread
+     */
+    public void setParallelReindexThreads(int threads) {
+        rootState.parallelReindexThreads = threads;
+    }
+
+    /**
+     * Update up to the given number of indexes in threads of the given
+     * executor, instead of in the traversal thread. Reindexing is not
+     * affected. This needs to be set before the diff is processed, and
+     * requires that {@link #commitProgress(IndexProgress)} is called once
+     * the update is done.
+     *
+     * @param executor the executor (with at least {@code count} threads)
+     * @param count the maximum number of indexes to update in parallel
+     */
+    void setParallelEditors(ExecutorService executor, int count) {
+        rootState.parallelExecutor = executor;
+        rootState.maxParallelEditors = count;
+    }
+
+    List<ParallelIndexEditor.Statistics> getParallelEditorStatistics() {
+        List<ParallelIndexEditor.Statistics> list = newArrayList();
+        for (ParallelIndexEditor editor : rootState.parallelEditors) {
+            list.add(editor.getStatistics());
+        }
+        return list;
+    }
+
     private boolean shouldReindex(NodeBuilder definition, NodeState before,
             String name) {
         //Async indexes are not considered for reindexing for sync indexing
@@ -271,6 +324,9 @@ public class IndexUpdate implements Editor, PathSource {
 
                 boolean shouldReindex = shouldReindex(definition, before, name);
                 String indexPath = getIndexPath(getPath(), name);
+                // only incremental updates of the root editor run in parallel
+                boolean parallel = parent == null && !shouldReindex && rootState.canRunInParallel();
+                NodeBuilder editorDefinition = parallel ? ParallelIndexEditor.detach(definition) : definition;
                 if (definition.hasProperty(IndexConstants.CORRUPT_PROPERTY_NAME) && !shouldReindex){
                     String corruptSince = definition.getProperty(IndexConstants.CORRUPT_PROPERTY_NAME).getValue(Type.DATE);
                     rootState.corruptIndexHandler.skippingCorruptIndex(rootState.async, indexPath, ISO8601.parse(corruptSince));
@@ -278,9 +334,11 @@ public class IndexUpdate implements Editor, PathSource {
                 }
 
                 Editor editor = null;
+                IndexUpdateCallback callback = null;
                 try {
-                    editor = rootState.provider.getIndexEditor(type, definition, rootState.root,
-                            rootState.newCallback(indexPath, shouldReindex, getEstimatedCount(definition)));
+                    callback = rootState.newCallback(indexPath, shouldReindex, getEstimatedCount(definition));
+                    editor = rootState.provider.getIndexEditor(type, editorDefinition, rootState.root,
+                            callback);
                 } catch (IllegalStateException e) {
                     // This will be caught here in case there is any config related error in the index definition
                     // where multiple values are assigned to a property that is supposed to be single valued
@@ -312,7 +370,16 @@ public class IndexUpdate implements Editor, PathSource {
                         removeIndexState(definition);
 
                         clearCorruptFlag(definition, indexPath);
-                        reindex.put(concat(getPath(), INDEX_DEFINITIONS_NAME, name), editor);
+                        if (canReindexInParallel(type, definition)) {
+                            // the editor is created for each partition
+                            if (parallelReindex == null) {
+                                parallelReindex = new ParallelReindexer(rootState.provider,
+                                        rootState.root, rootState.parallelReindexThreads);
+                            }
+                            parallelReindex.add(indexPath, type, definition, callback);
+                        } else {
+                            reindex.put(concat(getPath(), INDEX_DEFINITIONS_NAME, name), editor);
+                        }
                     }
 
                     rootState.indexDisabler.markDisableFlagIfRequired(indexPath, definition);
@@ -321,12 +388,21 @@ public class IndexUpdate implements Editor, PathSource {
                     if (getAsyncLaneName(definition.getNodeState(), indexPath) == null || rootState.async != null) {
                         rootState.indexDisabler.disableOldIndexes(indexPath, definition);
                     }
+                    if (parallel) {
+                        editor = rootState.startParallel(indexPath, editor, editorDefinition, definition);
+                    }
                     editors.add(editor);
                 }
             }
         }
     }
 
+    private boolean canReindexInParallel(String type, NodeBuilder definition) {
+        return parent == null && rootState.parallelReindexThreads > 1
+                && PropertyIndexEditorProvider.TYPE.equals(type)
+                && !definition.getBoolean(UNIQUE_PROPERTY_NAME);
+    }
+
     private void removeIndexState(NodeBuilder definition) {
         // as we don't know the index content node name
         // beforehand, we'll remove all child nodes
@@ -581,6 +657,10 @@ public class IndexUpdate implements Editor, PathSource {
         private int changedNodeCount;
         private int changedPropertyCount;
         private MissingIndexProviderStrategy missingProvider = new MissingIndexProviderStrategy();
+        private ExecutorService parallelExecutor;
+        private int maxParallelEditors;
+        private int parallelReindexThreads = ParallelReindexer.THREADS;
+        final List<ParallelIndexEditor> parallelEditors = newArrayList();
 
         private IndexUpdateRootState(IndexEditorProvider provider, String async, NodeState root,
                                      NodeBuilder builder, IndexUpdateCallback updateCallback,
@@ -604,6 +684,16 @@ public class IndexUpdate implements Editor, PathSource {
             return async != null;
         }
 
+        boolean canRunInParallel() {
+            return parallelExecutor != null && parallelEditors.size() < maxParallelEditors;
+        }
+
+        Editor startParallel(String indexPath, Editor editor, NodeBuilder detached, NodeBuilder definition) {
+            ParallelIndexEditor p = ParallelIndexEditor.start(parallelExecutor, indexPath, editor, detached, definition);
+            parallelEditors.add(p);
+            return p;
+        }
+
         public void nodeRead(PathSource pathSource) throws CommitFailedException {
             changedNodeCount++;
             progressReporter.traversedNode(pathSource);
@@ -631,6 +721,10 @@ public class IndexUpdate implements Editor, PathSource {
         }
 
         public void commitProgress(IndexProgress indexProgress) {
+            // stop the parallel editors if the update failed before they were done
+            for (ParallelIndexEditor p : parallelEditors) {
+                p.cancel();
+            }
             for (IndexCommitCallback icc : indexCommitCallbacks) {
                 try {
                     icc.commitProgress(indexProgress);
@@ -651,7 +745,10 @@ public class IndexUpdate implements Editor, PathSource {
 
             @Override
             public void indexUpdate() throws CommitFailedException {
-               progressReporter.indexUpdate(indexPath);
+                // parallel editors call back from their own thread
+                synchronized (IndexUpdateRootState.this) {
+                    progressReporter.indexUpdate(indexPath);
+                }
             }
 
             //~------------------------------< ContextAwareCallback >
@@ -685,12 +782,16 @@ public class IndexUpdate implements Editor, PathSource {
 
             @Override
             public void indexUpdateFailed(Exception e) {
-                corruptIndexHandler.indexUpdateFailed(async, indexPath, e);
+                synchronized (IndexUpdateRootState.this) {
+                    corruptIndexHandler.indexUpdateFailed(async, indexPath, e);
+                }
             }
 
             @Override
             public void registerIndexCommitCallback(IndexCommitCallback callback) {
-                registerIndexCommitCallbackInternal(callback);
+                synchronized (IndexUpdateRootState.this) {
+                    registerIndexCommitCallbackInternal(callback);
+                }
             }
         }
     }
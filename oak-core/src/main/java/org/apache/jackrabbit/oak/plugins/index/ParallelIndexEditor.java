@@ -0,0 +1,488 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static com.google.common.base.Throwables.propagateIfPossible;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeBuilder;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.state.ApplyDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An editor that forwards the changes it sees to an index editor that runs in
+ * a separate thread, so that multiple indexes of the same async lane can be
+ * updated concurrently while the diff is only traversed once.
+ * <p>
+ * The changes are sent in batches over a bounded queue, so that the traversal
+ * is at most a few batches ahead of the slowest index editor. The index
+ * editor writes to a detached builder of the index definition; the changes
+ * are applied to the real index definition when the traversal leaves the
+ * root node. Blobs are still created by the real index definition, so that
+ * they are not kept in memory until then. Failures of the index editor are reported in the traversal
+ * thread, at the latest when leaving the root node.
+ * <p>
+ * Unlike for serial index editors, the traversal doesn't skip subtrees the
+ * index editor isn't interested in (the decision is made by the index editor
+ * in its own thread), so all changed nodes are traversed.
+ */
+class ParallelIndexEditor implements Editor {
+
+    /**
+     * The number of changes per batch.
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum number of batches that are queued per index.
+     */
+    static final int QUEUE_SIZE = Integer.getInteger("oak.async.parallelEditorQueueSize", 64);
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final List<Event> END = Collections.emptyList();
+
+    private enum Type {
+        ENTER, LEAVE, PROPERTY_ADDED, PROPERTY_CHANGED, PROPERTY_DELETED,
+        CHILD_ADDED, CHILD_CHANGED, CHILD_DELETED
+    }
+
+    private static final class Event {
+        final Type type;
+        final String name;
+        final Object before;
+        final Object after;
+
+        Event(Type type, String name, Object before, Object after) {
+            this.type = type;
+            this.name = name;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final Worker worker;
+
+    /** Parent editor, or {@code null} if this is the root editor. */
+    private final ParallelIndexEditor parent;
+
+    private ParallelIndexEditor(Worker worker, ParallelIndexEditor parent) {
+        this.worker = worker;
+        this.parent = parent;
+    }
+
+    /**
+     * Create a detached builder of the index definition, for an index editor
+     * that runs in parallel.
+     *
+     * @param definition the builder of the index definition
+     * @return the detached builder
+     */
+    static NodeBuilder detach(NodeBuilder definition) {
+        return new DetachedBuilder(definition);
+    }
+
+    /**
+     * Start the index editor in a thread of the given executor.
+     *
+     * @param executor the executor
+     * @param indexPath the path of the index definition
+     * @param editor the index editor, which writes to {@code detached}
+     * @param detached the detached builder of the index definition
+     * @param definition the builder of the index definition the changes are
+     *            applied to
+     * @return the editor that forwards the changes
+     */
+    static ParallelIndexEditor start(ExecutorService executor, String indexPath,
+            Editor editor, NodeBuilder detached, NodeBuilder definition) {
+        Worker worker = new Worker(indexPath, editor, detached, definition);
+        worker.future = executor.submit(worker);
+        return new ParallelIndexEditor(worker, null);
+    }
+
+    /**
+     * Stop the index editor thread, if it is still running. This is needed
+     * if the traversal failed before leaving the root node.
+     */
+    void cancel() {
+        worker.cancelled = true;
+    }
+
+    Statistics getStatistics() {
+        return new Statistics(worker);
+    }
+
+    @Override
+    public void enter(NodeState before, NodeState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.ENTER, null, before, after));
+    }
+
+    @Override
+    public void leave(NodeState before, NodeState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.LEAVE, null, before, after));
+        if (parent == null) {
+            worker.finish();
+        }
+    }
+
+    @Override
+    public void propertyAdded(PropertyState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.PROPERTY_ADDED, null, null, after));
+    }
+
+    @Override
+    public void propertyChanged(PropertyState before, PropertyState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.PROPERTY_CHANGED, null, before, after));
+    }
+
+    @Override
+    public void propertyDeleted(PropertyState before)
+            throws CommitFailedException {
+        worker.add(new Event(Type.PROPERTY_DELETED, null, before, null));
+    }
+
+    @Override @NotNull
+    public Editor childNodeAdded(String name, NodeState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.CHILD_ADDED, name, null, after));
+        return new ParallelIndexEditor(worker, this);
+    }
+
+    @Override @NotNull
+    public Editor childNodeChanged(String name, NodeState before, NodeState after)
+            throws CommitFailedException {
+        worker.add(new Event(Type.CHILD_CHANGED, name, before, after));
+        return new ParallelIndexEditor(worker, this);
+    }
+
+    @Override @NotNull
+    public Editor childNodeDeleted(String name, NodeState before)
+            throws CommitFailedException {
+        worker.add(new Event(Type.CHILD_DELETED, name, before, null));
+        return new ParallelIndexEditor(worker, this);
+    }
+
+    /**
+     * The state shared by the editors of one index. The batch and the
+     * counters of the traversal side are only used by the traversal thread,
+     * the editor stack only by the worker thread.
+     */
+    /**
+     * A detached builder that creates blobs with the builder of the index
+     * definition. A memory builder would keep the blobs in the heap (for
+     * example the files of a Lucene index, if no blob store is configured),
+     * while the builder of the node store writes them to the store. Creating
+     * a blob doesn't change the builder, so this is safe while the
+     * traversal thread uses the builder.
+     */
+    private static final class DetachedBuilder extends MemoryNodeBuilder {
+
+        private final NodeBuilder definition;
+
+        DetachedBuilder(NodeBuilder definition) {
+            super(definition.getNodeState());
+            this.definition = definition;
+        }
+
+        private DetachedBuilder(DetachedBuilder parent, String name) {
+            super(parent, name);
+            this.definition = parent.definition;
+        }
+
+        @Override
+        protected MemoryNodeBuilder createChildBuilder(String name) {
+            return new DetachedBuilder(this, name);
+        }
+
+        @Override
+        public Blob createBlob(InputStream stream) throws IOException {
+            return definition.createBlob(stream);
+        }
+
+    }
+
+    private static final class Worker implements Runnable {
+
+        final String indexPath;
+        final Editor editor;
+        final NodeBuilder detached;
+        final NodeBuilder definition;
+        final BlockingQueue<List<Event>> queue =
+                new ArrayBlockingQueue<List<Event>>(QUEUE_SIZE);
+        final long start = System.nanoTime();
+        Future<?> future;
+        volatile boolean cancelled;
+        volatile Throwable failure;
+
+        // traversal thread
+        List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+        long eventCount;
+        long maxLag;
+        long blockedNanos;
+        long elapsedNanos;
+
+        // worker thread
+        final List<Editor> editors = new ArrayList<Editor>();
+        volatile long processedCount;
+        volatile long busyNanos;
+
+        Worker(String indexPath, Editor editor, NodeBuilder detached, NodeBuilder definition) {
+            this.indexPath = indexPath;
+            this.editor = editor;
+            this.detached = detached;
+            this.definition = definition;
+        }
+
+        void add(Event event) throws CommitFailedException {
+            batch.add(event);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws CommitFailedException {
+            checkFailure();
+            eventCount += batch.size();
+            maxLag = Math.max(maxLag, eventCount - processedCount);
+            put(batch);
+            batch = new ArrayList<Event>(BATCH_SIZE);
+        }
+
+        private void put(List<Event> events) throws CommitFailedException {
+            long t = System.nanoTime();
+            try {
+                while (!queue.offer(events, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // the worker stops reading the queue when it is done
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw interrupted(e);
+            } finally {
+                blockedNanos += System.nanoTime() - t;
+            }
+        }
+
+        /**
+         * Wait until the index editor processed all changes, and apply the
+         * changes of the index editor to the index definition.
+         */
+        void finish() throws CommitFailedException {
+            flush();
+            put(END);
+            long t = System.nanoTime();
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw interrupted(e);
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } finally {
+                blockedNanos += System.nanoTime() - t;
+                elapsedNanos = System.nanoTime() - start;
+            }
+            checkFailure();
+            detached.getNodeState().compareAgainstBaseState(
+                    detached.getBaseState(), new ApplyDiff(definition));
+        }
+
+        private void checkFailure() throws CommitFailedException {
+            Throwable t = failure;
+            if (t != null) {
+                propagateIfPossible(t, CommitFailedException.class);
+                throw new IllegalStateException(t);
+            }
+        }
+
+        private CommitFailedException interrupted(InterruptedException e) {
+            return new CommitFailedException("IndexUpdate", 2,
+                    "Interrupted while updating index " + indexPath, e);
+        }
+
+        @Override
+        public void run() {
+            editors.add(editor);
+            try {
+                while (true) {
+                    List<Event> events = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (events == null) {
+                        if (cancelled) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (events == END) {
+                        return;
+                    }
+                    if (failure == null) {
+                        long t = System.nanoTime();
+                        try {
+                            for (Event e : events) {
+                                process(e);
+                            }
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                        busyNanos += System.nanoTime() - t;
+                    }
+                    processedCount += events.size();
+                }
+            } catch (InterruptedException e) {
+                failure = interrupted(e);
+            }
+        }
+
+        private void process(Event e) throws CommitFailedException {
+            Editor current = editors.get(editors.size() - 1);
+            switch (e.type) {
+            case ENTER:
+                if (current != null) {
+                    current.enter((NodeState) e.before, (NodeState) e.after);
+                }
+                break;
+            case LEAVE:
+                if (current != null) {
+                    current.leave((NodeState) e.before, (NodeState) e.after);
+                }
+                editors.remove(editors.size() - 1);
+                break;
+            case PROPERTY_ADDED:
+                if (current != null) {
+                    current.propertyAdded((PropertyState) e.after);
+                }
+                break;
+            case PROPERTY_CHANGED:
+                if (current != null) {
+                    current.propertyChanged((PropertyState) e.before, (PropertyState) e.after);
+                }
+                break;
+            case PROPERTY_DELETED:
+                if (current != null) {
+                    current.propertyDeleted((PropertyState) e.before);
+                }
+                break;
+            case CHILD_ADDED:
+                editors.add(current == null ? null
+                        : current.childNodeAdded(e.name, (NodeState) e.after));
+                break;
+            case CHILD_CHANGED:
+                editors.add(current == null ? null
+                        : current.childNodeChanged(e.name, (NodeState) e.before, (NodeState) e.after));
+                break;
+            case CHILD_DELETED:
+                editors.add(current == null ? null
+                        : current.childNodeDeleted(e.name, (NodeState) e.before));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Statistics about the parallel update of one index.
+     */
+    static final class Statistics {
+
+        private final String indexPath;
+        private final long eventCount;
+        private final long maxLag;
+        private final long blockedMillis;
+        private final long busyMillis;
+        private final long elapsedMillis;
+
+        Statistics(Worker worker) {
+            this.indexPath = worker.indexPath;
+            this.eventCount = worker.eventCount;
+            this.maxLag = worker.maxLag;
+            this.blockedMillis = TimeUnit.NANOSECONDS.toMillis(worker.blockedNanos);
+            this.busyMillis = TimeUnit.NANOSECONDS.toMillis(worker.busyNanos);
+            this.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(worker.elapsedNanos);
+        }
+
+        String getIndexPath() {
+            return indexPath;
+        }
+
+        /**
+         * The number of changes sent to the index editor.
+         */
+        long getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * The maximum number of changes the index editor was behind the
+         * traversal.
+         */
+        long getMaxLag() {
+            return maxLag;
+        }
+
+        /**
+         * The time the traversal waited for the index editor, in
+         * milliseconds.
+         */
+        long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        /**
+         * The time the index editor was busy processing changes, in
+         * milliseconds.
+         */
+        long getBusyMillis() {
+            return busyMillis;
+        }
+
+        /**
+         * The number of changes processed per second of busy time.
+         */
+        long getEventsPerSecond() {
+            return eventCount * 1000 / Math.max(1, busyMillis);
+        }
+
+        @Override
+        public String toString() {
+            return indexPath + ": " + eventCount + " changes in " + elapsedMillis
+                    + " ms (busy " + busyMillis + " ms, " + getEventsPerSecond()
+                    + " changes/s), max lag " + maxLag + " changes, traversal blocked "
+                    + blockedMillis + " ms";
+        }
+    }
+
+}
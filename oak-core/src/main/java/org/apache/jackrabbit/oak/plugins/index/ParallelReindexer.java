@@ -0,0 +1,474 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static com.google.common.base.Throwables.propagateIfPossible;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexBloomFilter.BLOOM_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.apache.jackrabbit.oak.spi.commit.CompositeEditor.compose;
+import static org.apache.jackrabbit.oak.spi.commit.EditorDiff.process;
+import static org.apache.jackrabbit.oak.spi.commit.VisibleEditor.wrap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
+import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexBloomFilter;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.state.ApplyDiff;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reindexes property indexes using multiple threads. The repository is split
+ * into partitions of subtrees, using the top-level nodes, and the estimates
+ * of the node counter index to further split large subtrees. Each partition
+ * is traversed in its own thread, and writes into its own (detached) builder
+ * of each index definition. The partial indexes are merged into the index
+ * definitions once all partitions are done.
+ * <p>
+ * The nodes that are not in any subtree (the root node, and the ancestors of
+ * the subtrees) are indexed by the first partition only. Only non-unique
+ * indexes are supported, as uniqueness can not be checked within a
+ * partition.
+ */
+class ParallelReindexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelReindexer.class);
+
+    /**
+     * The number of threads used to reindex property indexes. 0 or 1 means
+     * reindexing is done in the traversal thread.
+     */
+    static final int THREADS = Integer.getInteger("oak.indexUpdate.parallelReindexThreads", 0);
+
+    /**
+     * The number of subtrees per thread to aim for, so that the partitions
+     * can be balanced if the estimates are inaccurate.
+     */
+    private static final int SUBTREES_PER_THREAD = 4;
+
+    /**
+     * Subtrees with fewer (estimated) nodes are not split further.
+     */
+    static final long MIN_SPLIT_SIZE = 10000;
+
+    /**
+     * Subtrees with more child nodes are not split further.
+     */
+    private static final int MAX_SPLIT_CHILDREN = 1000;
+
+    private final IndexEditorProvider provider;
+
+    private final NodeState root;
+
+    private final int threads;
+
+    private final List<Index> indexes = new ArrayList<Index>();
+
+    private static final class Index {
+        final String path;
+        final String type;
+        final NodeBuilder definition;
+        final IndexUpdateCallback callback;
+
+        Index(String path, String type, NodeBuilder definition, IndexUpdateCallback callback) {
+            this.path = path;
+            this.type = type;
+            this.definition = definition;
+            this.callback = callback;
+        }
+    }
+
+    ParallelReindexer(IndexEditorProvider provider, NodeState root, int threads) {
+        this.provider = provider;
+        this.root = root;
+        this.threads = threads;
+    }
+
+    /**
+     * Add an index to reindex. The index state needs to be removed already.
+     *
+     * @param path the path of the index definition
+     * @param type the index type
+     * @param definition the builder of the index definition
+     * @param callback the callback for the index editors
+     */
+    void add(String path, String type, NodeBuilder definition, IndexUpdateCallback callback) {
+        indexes.add(new Index(path, type, definition, callback));
+    }
+
+    Set<String> getIndexPaths() {
+        Set<String> paths = new HashSet<String>();
+        for (Index index : indexes) {
+            paths.add(index.path);
+        }
+        return paths;
+    }
+
+    /**
+     * Reindex all indexes.
+     *
+     * @param after the root node state to index
+     * @param progressReporter the progress reporter
+     * @param lock the lock to hold when reporting progress
+     */
+    void reindex(NodeState after, IndexingProgressReporter progressReporter,
+            Object lock) throws CommitFailedException {
+        Partitions partitions = Partitions.create(after, threads);
+        log.info("Reindexing {} in {} partitions: {}", getIndexPaths(),
+                partitions.count, partitions);
+        // the editors are created in this thread, as the providers are not
+        // necessarily thread-safe
+        List<List<NodeBuilder>> builders = new ArrayList<List<NodeBuilder>>();
+        List<Editor> editors = new ArrayList<Editor>();
+        Failure failure = new Failure();
+        for (int i = 0; i < partitions.count; i++) {
+            List<NodeBuilder> partial = new ArrayList<NodeBuilder>();
+            List<Editor> list = new ArrayList<Editor>();
+            for (Index index : indexes) {
+                NodeBuilder builder = index.definition.getNodeState().builder();
+                partial.add(builder);
+                Editor editor = provider.getIndexEditor(index.type, builder, root, index.callback);
+                if (editor != null) {
+                    list.add(editor);
+                }
+            }
+            builders.add(partial);
+            Editor editor = new PartitionEditor(compose(list), partitions, i, "/", false);
+            editors.add(wrap(progressReporter.wrapProgress(editor, pathSource -> {
+                failure.check();
+                synchronized (lock) {
+                    progressReporter.traversedNode(pathSource);
+                }
+            })));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, partitions.count),
+                new ThreadFactoryBuilder().setNameFormat("index-reindex-%d").setDaemon(true).build());
+        try {
+            List<Future<CommitFailedException>> futures = new ArrayList<Future<CommitFailedException>>();
+            for (Editor editor : editors) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        CommitFailedException e = process(editor, MISSING_NODE, after);
+                        failure.set(e);
+                        return e;
+                    } catch (RuntimeException | Error e) {
+                        failure.set(e);
+                        throw e;
+                    }
+                }));
+            }
+            for (Future<CommitFailedException> f : futures) {
+                try {
+                    CommitFailedException e = f.get();
+                    if (e != null) {
+                        throw e;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure.set(e);
+                    throw new CommitFailedException("IndexUpdate", 3,
+                            "Interrupted while reindexing " + getIndexPaths(), e);
+                } catch (ExecutionException e) {
+                    propagateIfPossible(e.getCause(), CommitFailedException.class);
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < indexes.size(); i++) {
+            NodeBuilder definition = indexes.get(i).definition;
+            for (List<NodeBuilder> partial : builders) {
+                NodeBuilder builder = partial.get(i);
+                builder.getNodeState().compareAgainstBaseState(
+                        builder.getBaseState(), new MergeDiff(definition, true));
+            }
+        }
+    }
+
+    /**
+     * The first failure of any partition, so that the other partitions can
+     * stop early.
+     */
+    private static final class Failure {
+
+        private volatile Throwable failure;
+
+        void set(Throwable t) {
+            if (t != null && failure == null) {
+                failure = t;
+            }
+        }
+
+        void check() throws CommitFailedException {
+            if (failure != null) {
+                throw new CommitFailedException("IndexUpdate", 4,
+                        "Reindexing stopped as another partition failed", failure);
+            }
+        }
+    }
+
+    /**
+     * The split of the repository into subtrees, and the assignment of the
+     * subtrees to partitions.
+     */
+    static final class Partitions {
+
+        /**
+         * The number of partitions.
+         */
+        final int count;
+
+        /**
+         * The root paths of the subtrees, and the partition of each subtree.
+         */
+        final Map<String, Integer> subtrees;
+
+        /**
+         * The paths of all ancestors of the subtrees (including the root).
+         */
+        final Set<String> ancestors;
+
+        private Partitions(int count, Map<String, Integer> subtrees, Set<String> ancestors) {
+            this.count = count;
+            this.subtrees = subtrees;
+            this.ancestors = ancestors;
+        }
+
+        static Partitions create(NodeState root, int threads) {
+            PriorityQueue<Subtree> queue = new PriorityQueue<Subtree>(
+                    (a, b) -> Long.compare(b.estimate, a.estimate));
+            Set<String> ancestors = new HashSet<String>();
+            ancestors.add("/");
+            addChildren(root, "/", root, queue);
+            int target = threads * SUBTREES_PER_THREAD;
+            List<Subtree> done = new ArrayList<Subtree>();
+            while (!queue.isEmpty() && queue.size() + done.size() < target) {
+                Subtree s = queue.poll();
+                NodeState node = NodeStateUtils.getNode(root, s.path);
+                if (s.estimate < MIN_SPLIT_SIZE
+                        || node.getChildNodeCount(MAX_SPLIT_CHILDREN + 1) > MAX_SPLIT_CHILDREN) {
+                    done.add(s);
+                    continue;
+                }
+                // the node itself is then indexed by the first partition
+                ancestors.add(s.path);
+                addChildren(root, s.path, node, queue);
+            }
+            done.addAll(queue);
+
+            // assign the largest subtrees first, each to the partition
+            // with the fewest nodes so far
+            done.sort((a, b) -> Long.compare(b.estimate, a.estimate));
+            int count = Math.max(1, Math.min(threads, done.size()));
+            long[] sizes = new long[count];
+            Map<String, Integer> subtrees = new HashMap<String, Integer>();
+            for (Subtree s : done) {
+                int best = 0;
+                for (int i = 1; i < count; i++) {
+                    if (sizes[i] < sizes[best]) {
+                        best = i;
+                    }
+                }
+                sizes[best] += s.estimate;
+                subtrees.put(s.path, best);
+            }
+            return new Partitions(count, subtrees, ancestors);
+        }
+
+        private static void addChildren(NodeState root, String path, NodeState node,
+                PriorityQueue<Subtree> queue) {
+            for (ChildNodeEntry e : node.getChildNodeEntries()) {
+                if (NodeStateUtils.isHidden(e.getName())) {
+                    continue;
+                }
+                String p = concat(path, e.getName());
+                long estimate = NodeCounter.getEstimatedNodeCount(root, p, true);
+                // unknown: assume a small subtree
+                queue.add(new Subtree(p, Math.max(1, estimate)));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return subtrees.toString();
+        }
+    }
+
+    private static final class Subtree {
+        final String path;
+        final long estimate;
+
+        Subtree(String path, long estimate) {
+            this.path = path;
+            this.estimate = estimate;
+        }
+    }
+
+    /**
+     * An editor that only forwards the changes of one partition. Within a
+     * subtree of the partition, the changes are passed to the index editor
+     * directly.
+     */
+    private static final class PartitionEditor implements Editor {
+
+        private final Editor editor;
+        private final Partitions partitions;
+        private final int partition;
+        private final String path;
+
+        /**
+         * Whether the properties of this node are indexed.
+         */
+        private final boolean indexed;
+
+        PartitionEditor(Editor editor, Partitions partitions, int partition,
+                String path, boolean indexed) {
+            this.editor = editor;
+            this.partitions = partitions;
+            this.partition = partition;
+            this.path = path;
+            this.indexed = indexed || partition == 0;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after)
+                throws CommitFailedException {
+            editor.enter(before, after);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after)
+                throws CommitFailedException {
+            editor.leave(before, after);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after)
+                throws CommitFailedException {
+            if (indexed) {
+                editor.propertyAdded(after);
+            }
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after)
+                throws CommitFailedException {
+            if (indexed) {
+                editor.propertyChanged(before, after);
+            }
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before)
+                throws CommitFailedException {
+            if (indexed) {
+                editor.propertyDeleted(before);
+            }
+        }
+
+        @Override
+        public Editor childNodeAdded(String name, NodeState after)
+                throws CommitFailedException {
+            String p = concat(path, name);
+            Integer owner = partitions.subtrees.get(p);
+            if (owner != null) {
+                return owner == partition ? editor.childNodeAdded(name, after) : null;
+            }
+            if (partitions.ancestors.contains(p)) {
+                Editor child = editor.childNodeAdded(name, after);
+                return child == null ? null
+                        : new PartitionEditor(child, partitions, partition, p, false);
+            }
+            // not part of any subtree: indexed by the first partition
+            return partition == 0 ? editor.childNodeAdded(name, after) : null;
+        }
+
+        @Override
+        public Editor childNodeChanged(String name, NodeState before, NodeState after) {
+            // reindexing compares against MISSING_NODE, so it only adds nodes
+            throw new IllegalStateException("Node changed while reindexing: "
+                    + concat(path, name));
+        }
+
+        @Override
+        public Editor childNodeDeleted(String name, NodeState before) {
+            throw new IllegalStateException("Node deleted while reindexing: "
+                    + concat(path, name));
+        }
+    }
+
+    /**
+     * Applies the changes of a partition to the index definition. Unlike
+     * {@link ApplyDiff}, nodes that were added by multiple partitions are
+     * merged, and bloom filters are combined.
+     */
+    private static final class MergeDiff extends ApplyDiff {
+
+        private final boolean definition;
+
+        MergeDiff(NodeBuilder builder, boolean definition) {
+            super(builder);
+            this.definition = definition;
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            if (definition && BLOOM_NODE_NAME.equals(name)) {
+                PropertyIndexBloomFilter.merge(builder, after);
+            } else if (builder.hasChildNode(name)) {
+                after.compareAgainstBaseState(EMPTY_NODE,
+                        new MergeDiff(builder.getChildNode(name), false));
+            } else {
+                builder.setChildNode(name, after);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return after.compareAgainstBaseState(before,
+                    new MergeDiff(builder.getChildNode(name), false));
+        }
+    }
+
+}
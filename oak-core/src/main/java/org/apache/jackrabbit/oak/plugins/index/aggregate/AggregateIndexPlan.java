@@ -170,6 +170,17 @@ public class AggregateIndexPlan implements IndexPlan {
         return true;   
     }
 
+    /**
+     * The values of the base plans are the values of the nodes the base
+     * indexes found, not of the aggregated nodes returned.
+     * 
+     * @return false
+     */
+    @Override
+    public boolean includesStoredValues() {
+        return false;
+    }
+
     /**
      * An aggregated query can not sort, as it gets results from a number of
      * indexes.
@@ -63,6 +63,19 @@ public class IndexingProgressReporter implements NodeTraversalCallback {
         return ProgressTrackingEditor.wrap(editor, this);
     }
 
+    /**
+     * Wraps an editor that runs concurrently with other editors. The given
+     * callback is notified for each traversed node, and is expected to
+     * forward to {@link #traversedNode(PathSource)} in a thread-safe way.
+     *
+     * @param editor the editor
+     * @param callback the callback
+     * @return the wrapped editor
+     */
+    public Editor wrapProgress(Editor editor, NodeTraversalCallback callback) {
+        return ProgressTrackingEditor.wrap(editor, callback);
+    }
+
     /**
      * Invoked to indicate that reindexing phase has started in current
      * indexing cycle
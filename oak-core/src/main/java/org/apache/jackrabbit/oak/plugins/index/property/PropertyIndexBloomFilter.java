@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BLOOM_FILTER_ENTRIES;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+/**
+ * A bloom filter over the (encoded) values of a property index, stored in the
+ * hidden child node {@code :bloom} of the index definition.
+ * <p>
+ * The filter is a blocked bloom filter: all bits of a value are in the same
+ * block of 512 bits, and each block is stored as a separate property, so that
+ * adding a value changes one property only. Concurrent commits that add
+ * values only conflict if the values are in the same block.
+ * <p>
+ * The filter is only created when the index is (re)indexed, and from then on
+ * kept up to date by the {@link PropertyIndexEditor}, so that it never reports
+ * an indexed value as missing. Values are not removed from the filter (bloom
+ * filters don't support that), so the false positive rate grows with the
+ * number of removed values until the index is reindexed.
+ */
+public class PropertyIndexBloomFilter {
+
+    /**
+     * The name of the node that contains the filter.
+     */
+    public static final String BLOOM_NODE_NAME = ":bloom";
+
+    private static final String BLOCK_COUNT = "blockCount";
+
+    private static final int BITS_PER_ENTRY = 10;
+
+    private static final int HASHES = 7;
+
+    private static final int BITS_PER_BLOCK = 512;
+
+    private static final int BLOCKS_PER_NODE = 64;
+
+    private static final int MAX_BLOCKS = 1 << 16;
+
+    private static final AtomicLong NEGATIVE_COUNT = new AtomicLong();
+
+    private static final AtomicLong FALSE_POSITIVE_COUNT = new AtomicLong();
+
+    /**
+     * The filter node (when reading).
+     */
+    private final NodeState state;
+
+    /**
+     * The filter node (when writing), or null.
+     */
+    private final NodeBuilder builder;
+
+    private final int blockCount;
+
+    /**
+     * The blocks read so far.
+     */
+    private final Map<Integer, long[]> blocks = new HashMap<Integer, long[]>();
+
+    /**
+     * The blocks that were changed and need to be written.
+     */
+    private final Set<Integer> changed = new HashSet<Integer>();
+
+    private PropertyIndexBloomFilter(NodeState state, NodeBuilder builder, int blockCount) {
+        this.state = state;
+        this.builder = builder;
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * Get the filter of the given index, if the index has one.
+     *
+     * @param definition the index definition
+     * @return the filter, or null
+     */
+    @Nullable
+    public static PropertyIndexBloomFilter get(NodeState definition) {
+        if (!definition.hasProperty(BLOOM_FILTER_ENTRIES)) {
+            return null;
+        }
+        NodeState bloom = definition.getChildNode(BLOOM_NODE_NAME);
+        int blockCount = getBlockCount(bloom.getProperty(BLOCK_COUNT));
+        if (blockCount <= 0) {
+            return null;
+        }
+        return new PropertyIndexBloomFilter(bloom, null, blockCount);
+    }
+
+    /**
+     * Open the existing filter of the given index for writing. If the index
+     * definition doesn't enable the filter any longer, the filter is removed.
+     *
+     * @param definition the index definition
+     * @return the filter, or null
+     */
+    @Nullable
+    static PropertyIndexBloomFilter open(NodeBuilder definition) {
+        if (!definition.hasChildNode(BLOOM_NODE_NAME)) {
+            return null;
+        }
+        NodeBuilder bloom = definition.getChildNode(BLOOM_NODE_NAME);
+        int blockCount = getBlockCount(bloom.getProperty(BLOCK_COUNT));
+        if (!definition.hasProperty(BLOOM_FILTER_ENTRIES) || blockCount <= 0) {
+            bloom.remove();
+            return null;
+        }
+        return new PropertyIndexBloomFilter(bloom.getBaseState(), bloom, blockCount);
+    }
+
+    /**
+     * Create a new, empty filter for the given index, if the index definition
+     * enables the filter. An existing filter is replaced.
+     *
+     * @param definition the index definition
+     * @return the filter, or null
+     */
+    @Nullable
+    static PropertyIndexBloomFilter create(NodeBuilder definition) {
+        if (definition.hasChildNode(BLOOM_NODE_NAME)) {
+            definition.getChildNode(BLOOM_NODE_NAME).remove();
+        }
+        PropertyState entries = definition.getProperty(BLOOM_FILTER_ENTRIES);
+        if (entries == null || entries.isArray()) {
+            return null;
+        }
+        long bits = Math.max(1, entries.getValue(Type.LONG)) * BITS_PER_ENTRY;
+        int blockCount = (int) Math.min(MAX_BLOCKS, (bits + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK);
+        NodeBuilder bloom = definition.child(BLOOM_NODE_NAME);
+        bloom.setProperty(BLOCK_COUNT, (long) blockCount);
+        return new PropertyIndexBloomFilter(bloom.getBaseState(), bloom, blockCount);
+    }
+
+    /**
+     * Merge a filter that was built for a part of the repository into the
+     * filter of the given index. Both filters need to have the same number
+     * of blocks, which is the case if they were created from the same index
+     * definition.
+     *
+     * @param definition the index definition to merge into
+     * @param bloom the filter node ({@code :bloom}) to merge
+     */
+    public static void merge(NodeBuilder definition, NodeState bloom) {
+        if (!definition.hasChildNode(BLOOM_NODE_NAME)) {
+            definition.setChildNode(BLOOM_NODE_NAME, bloom);
+            return;
+        }
+        NodeBuilder target = definition.getChildNode(BLOOM_NODE_NAME);
+        for (ChildNodeEntry e : bloom.getChildNodeEntries()) {
+            NodeBuilder node = target.child(e.getName());
+            for (PropertyState p : e.getNodeState().getProperties()) {
+                PropertyState old = node.getProperty(p.getName());
+                long[] block = new long[p.count()];
+                for (int i = 0; i < block.length; i++) {
+                    block[i] = p.getValue(Type.LONG, i);
+                    if (old != null && i < old.count()) {
+                        block[i] |= old.getValue(Type.LONG, i);
+                    }
+                }
+                node.setProperty(p.getName(), Longs.asList(block), Type.LONGS);
+            }
+        }
+    }
+
+    /**
+     * Check whether the given value might be in the index.
+     *
+     * @param key the encoded value
+     * @return false if the value is not in the index, true if it might be
+     */
+    public boolean mightContain(String key) {
+        long[] hash = hash(key);
+        long[] block = getBlock(getBlockIndex(hash));
+        for (int i = 0; i < HASHES; i++) {
+            int bit = getBit(hash, i);
+            if ((block[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the values that might be in the index.
+     *
+     * @param keys the encoded values
+     * @return the subset of values that might be in the index
+     */
+    Set<String> retainMightContain(Set<String> keys) {
+        Set<String> result = new HashSet<String>(keys.size());
+        for (String k : keys) {
+            if (mightContain(k)) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add a value. The change is only persisted by {@link #flush()}.
+     *
+     * @param key the encoded value
+     */
+    void add(String key) {
+        long[] hash = hash(key);
+        int index = getBlockIndex(hash);
+        long[] block = getBlock(index);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = getBit(hash, i);
+            long mask = 1L << bit;
+            if ((block[bit >>> 6] & mask) == 0) {
+                block[bit >>> 6] |= mask;
+                changed.add(index);
+            }
+        }
+    }
+
+    /**
+     * Write the changed blocks.
+     */
+    void flush() {
+        for (int index : changed) {
+            builder.child(getNodeName(index)).setProperty(
+                    getPropertyName(index), Longs.asList(blocks.get(index)), Type.LONGS);
+        }
+        changed.clear();
+    }
+
+    /**
+     * Record that values were not looked up in the index, because the filter
+     * ruled them out. This is only recorded when the index would otherwise
+     * have been read, not when planning a query.
+     *
+     * @param count the number of values
+     */
+    static void negative(int count) {
+        NEGATIVE_COUNT.addAndGet(count);
+    }
+
+    /**
+     * Record that a value the filter reported as possibly contained was not
+     * found in the index.
+     */
+    static void falsePositive() {
+        FALSE_POSITIVE_COUNT.incrementAndGet();
+    }
+
+    /**
+     * The number of lookups in this process that the filters answered
+     * without reading the index, when executing a query or checking
+     * uniqueness. Checks while planning a query are not counted, as the plan
+     * might not be used.
+     *
+     * @return the number of negative lookups
+     */
+    public static long getNegativeCount() {
+        return NEGATIVE_COUNT.get();
+    }
+
+    /**
+     * The number of lookups in this process where a filter reported a value
+     * as possibly contained, but the index didn't contain it. This is only
+     * counted where the index is read anyway, for example in uniqueness
+     * checks.
+     *
+     * @return the number of false positives
+     */
+    public static long getFalsePositiveCount() {
+        return FALSE_POSITIVE_COUNT.get();
+    }
+
+    private long[] getBlock(int index) {
+        long[] block = blocks.get(index);
+        if (block == null) {
+            block = new long[BITS_PER_BLOCK / 64];
+            PropertyState p;
+            if (builder != null) {
+                p = builder.getChildNode(getNodeName(index)).getProperty(getPropertyName(index));
+            } else {
+                p = state.getChildNode(getNodeName(index)).getProperty(getPropertyName(index));
+            }
+            if (p != null) {
+                for (int i = 0; i < block.length && i < p.count(); i++) {
+                    block[i] = p.getValue(Type.LONG, i);
+                }
+            }
+            blocks.put(index, block);
+        }
+        return block;
+    }
+
+    private int getBlockIndex(long[] hash) {
+        return (int) ((hash[0] >>> 1) % blockCount);
+    }
+
+    private static int getBit(long[] hash, int i) {
+        // 7 hashes of 9 bits each
+        return (int) (hash[1] >>> (9 * i)) & (BITS_PER_BLOCK - 1);
+    }
+
+    private static long[] hash(String key) {
+        ByteBuffer buff = ByteBuffer.wrap(Hashing.murmur3_128().hashString(
+                key, Charsets.UTF_8).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        return new long[] { buff.getLong(0), buff.getLong(8) };
+    }
+
+    private static String getNodeName(int index) {
+        return Integer.toString(index / BLOCKS_PER_NODE);
+    }
+
+    private static String getPropertyName(int index) {
+        return Integer.toString(index % BLOCKS_PER_NODE);
+    }
+
+    private static int getBlockCount(PropertyState p) {
+        if (p == null || p.isArray()) {
+            return 0;
+        }
+        return p.getValue(Type.LONG).intValue();
+    }
+
+}
@@ -92,6 +92,12 @@ class PropertyIndexEditor implements IndexEditor {
      */
     private final Set<String> keysToCheckForUniqueness;
 
+    /**
+     * The bloom filter of the index, or {@code null} if the index doesn't
+     * have one. Set when entering the root node.
+     */
+    private PropertyIndexBloomFilter bloomFilter;
+
     /**
      * Flag to indicate whether the type of this node may have changed.
      */
@@ -166,6 +172,7 @@ class PropertyIndexEditor implements IndexEditor {
         this.valuePattern = parent.valuePattern;
         this.typePredicate = parent.typePredicate;
         this.keysToCheckForUniqueness = parent.keysToCheckForUniqueness;
+        this.bloomFilter = parent.bloomFilter;
         this.updateCallback = parent.updateCallback;
         this.pathFilter = parent.pathFilter;
         this.pathFilterResult = pathFilterResult;
@@ -234,6 +241,16 @@ class PropertyIndexEditor implements IndexEditor {
     public void enter(NodeState before, NodeState after) {
         // disables property name checks
         typeChanged = typePredicate == null; 
+
+        if (parent == null) {
+            // the filter is only created when (re)indexing,
+            // as it needs to contain all indexed values
+            if (before.exists()) {
+                bloomFilter = PropertyIndexBloomFilter.open(definition);
+            } else {
+                bloomFilter = PropertyIndexBloomFilter.create(definition);
+            }
+        }
         
         beforeKeys = null;
         afterKeys = null;
@@ -248,7 +265,9 @@ class PropertyIndexEditor implements IndexEditor {
             updateIndex(before, after);
         }
         checkUniquenessConstraints();
-        
+        if (parent == null && bloomFilter != null) {
+            bloomFilter.flush();
+        }
     }
     
     private void applyTypeRestrictions(NodeState before, NodeState after) {
@@ -308,6 +327,11 @@ class PropertyIndexEditor implements IndexEditor {
                     strategy.update(index, getPath(), properties, definition,
                             beforeKeys, afterKeys);
                 }
+                if (bloomFilter != null) {
+                    for (String key : afterKeys) {
+                        bloomFilter.add(key);
+                    }
+                }
             }
         }
 
@@ -347,11 +371,17 @@ class PropertyIndexEditor implements IndexEditor {
     private Set<String> getExistingKeys(Set<String> keys, Supplier<NodeBuilder> index, IndexStoreStrategy s) {
         Set<String> existing = null;
         for (String key : keys) {
+            if (bloomFilter != null && !bloomFilter.mightContain(key)) {
+                PropertyIndexBloomFilter.negative(1);
+                continue;
+            }
             if (s.exists(index, key)) {
                 if (existing == null) {
                     existing = newHashSet();
                 }
                 existing.add(key);
+            } else if (bloomFilter != null) {
+                PropertyIndexBloomFilter.falsePositive();
             }
         }
         if (existing == null) {
@@ -121,10 +121,12 @@ public class PropertyIndexLookup {
             throw new IllegalArgumentException("No index for " + propertyName);
         }
         List<Iterable<String>> iterables = Lists.newArrayList();
-        ValuePattern pattern = new ValuePattern(indexMeta);
+        Set<String> keys = getKeys(indexMeta, value, true);
+        if (keys != null && keys.isEmpty()) {
+            return Collections.emptySet();
+        }
         for (IndexStoreStrategy s : getStrategies(indexMeta)) {
-            iterables.add(s.query(filter, propertyName, indexMeta,
-                    encode(value, pattern)));
+            iterables.add(s.query(filter, propertyName, indexMeta, keys));
         }
         return Iterables.concat(iterables);
     }
@@ -142,14 +144,43 @@ public class PropertyIndexLookup {
             return Double.POSITIVE_INFINITY;
         }
         Set<IndexStoreStrategy> strategies = getStrategies(indexMeta);
-        ValuePattern pattern = new ValuePattern(indexMeta);
+        Set<String> keys = getKeys(indexMeta, value, false);
+        if (keys != null && keys.isEmpty()) {
+            return COST_OVERHEAD;
+        }
         double cost = strategies.isEmpty() ? MAX_COST : COST_OVERHEAD;
         for (IndexStoreStrategy s : strategies) {
-            cost += s.count(filter, root, indexMeta, encode(value, pattern), MAX_COST);
+            cost += s.count(filter, root, indexMeta, keys, MAX_COST);
         }
         return cost;
     }
 
+    /**
+     * Get the encoded values to look up, without the values that the bloom
+     * filter of the index (if any) rules out.
+     *
+     * @param indexMeta the index definition
+     * @param value the value, or null for "is not null"
+     * @param query whether the values are looked up (and not only used to
+     *            estimate the cost)
+     * @return the encoded values, or null for all values
+     */
+    @Nullable
+    private static Set<String> getKeys(NodeState indexMeta, PropertyValue value, boolean query) {
+        Set<String> keys = encode(value, new ValuePattern(indexMeta));
+        if (keys != null) {
+            PropertyIndexBloomFilter bloomFilter = PropertyIndexBloomFilter.get(indexMeta);
+            if (bloomFilter != null) {
+                Set<String> lookup = bloomFilter.retainMightContain(keys);
+                if (query) {
+                    PropertyIndexBloomFilter.negative(keys.size() - lookup.size());
+                }
+                keys = lookup;
+            }
+        }
+        return keys;
+    }
+
     /**
      * Get the node with the index definition for the given property, if there
      * is an applicable index with data.
@@ -80,6 +80,12 @@ public class PropertyIndexPlan {
 
     private final Set<String> values;
 
+    /**
+     * The values to look up: the values without those that the bloom filter
+     * rules out.
+     */
+    private final Set<String> lookupValues;
+
     private final int depth;
 
     private final PathFilter pathFilter;
@@ -111,9 +117,11 @@ public class PropertyIndexPlan {
                 matchesAllTypes || any(types, in(filter.getSupertypes()));
 
         ValuePattern valuePattern = new ValuePattern(definition);
+        PropertyIndexBloomFilter bloomFilter = PropertyIndexBloomFilter.get(definition);
 
         double bestCost = Double.POSITIVE_INFINITY;
         Set<String> bestValues = emptySet();
+        Set<String> bestLookupValues = emptySet();
         int bestDepth = 1;
 
         if (matchesNodeTypes &&
@@ -167,10 +175,19 @@ public class PropertyIndexPlan {
                         }
                     }
                     values = PropertyIndexUtil.encode(values);
+                    Set<String> lookupValues = values;
+                    if (values != null && bloomFilter != null) {
+                        lookupValues = bloomFilter.retainMightContain(values);
+                    }
                     double cost = strategies.isEmpty() ? MAX_COST : 0;
-                    for (IndexStoreStrategy strategy : strategies) {
-                        cost += strategy.count(filter, root, definition,
-                                values, MAX_COST);
+                    if (lookupValues != null && lookupValues.isEmpty()) {
+                        // none of the values is indexed
+                        cost = 0;
+                    } else {
+                        for (IndexStoreStrategy strategy : strategies) {
+                            cost += strategy.count(filter, root, definition,
+                                    lookupValues, MAX_COST);
+                        }
                     }
                     if (unique && cost <= 1) {
                         // for unique index, for the normal case
@@ -181,6 +198,7 @@ public class PropertyIndexPlan {
                     if (cost < bestCost) {
                         bestDepth = depth;
                         bestValues = values;
+                        bestLookupValues = lookupValues;
                         bestCost = cost;
                         if (bestCost == 0) {
                             // shortcut: not possible to top this
@@ -193,6 +211,7 @@ public class PropertyIndexPlan {
 
         this.depth = bestDepth;
         this.values = bestValues;
+        this.lookupValues = bestLookupValues;
         this.cost = COST_OVERHEAD + bestCost;
     }
 
@@ -211,8 +230,13 @@ public class PropertyIndexPlan {
         }
         QueryLimits settings = filter.getQueryLimits();
         List<Iterable<String>> iterables = Lists.newArrayList();
-        for (IndexStoreStrategy s : strategies) {
-            iterables.add(s.query(filter, name, definition, values));
+        if (values != null && lookupValues != null) {
+            PropertyIndexBloomFilter.negative(values.size() - lookupValues.size());
+        }
+        if (lookupValues == null || !lookupValues.isEmpty()) {
+            for (IndexStoreStrategy s : strategies) {
+                iterables.add(s.query(filter, name, definition, lookupValues));
+            }
         }
         Cursor cursor = Cursors.newPathCursor(Iterables.concat(iterables),
                 settings);
@@ -257,6 +281,12 @@ public class PropertyIndexPlan {
             }
             buffer.append(")");
         }
+        if (values != null && lookupValues != null
+                && lookupValues.size() < values.size()) {
+            buffer.append(" /* not indexed: ");
+            buffer.append(values.size() - lookupValues.size());
+            buffer.append(" */");
+        }
         return buffer.toString();
     }
 
@@ -21,6 +21,7 @@ package org.apache.jackrabbit.oak.plugins.index.property.jmx;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,6 +45,8 @@ import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexBloomFilter;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.tree.factories.TreeFactory;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -116,6 +119,49 @@ public class PropertyIndexStats extends AnnotatedStandardMBean implements Proper
         return getStatsForIndex(path, idx, maxValueCount, maxDepth, maxPathCount);
     }
 
+    @Override
+    public CompositeData getValueStatistics(String path) throws OpenDataException {
+        NodeState idx = NodeStateUtils.getNode(store.getRoot(), path);
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("path", path);
+        result.put("entryCount", -1L);
+        result.put("valueCount", -1L);
+        result.put("topValues", new String[0]);
+        result.put("topCounts", new Long[0]);
+        result.put("lastUpdated", -1L);
+        PropertyIndexStatistics stats = PropertyIndexStatistics.get(idx);
+        String status;
+        if (stats == null) {
+            status = "No statistics available for index at path " + path;
+        } else {
+            List<Map.Entry<String, Long>> top = stats.getTopValues();
+            String[] values = new String[top.size()];
+            Long[] counts = new Long[top.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = top.get(i).getKey();
+                counts[i] = top.get(i).getValue();
+            }
+            result.put("entryCount", stats.getEntryCount());
+            result.put("valueCount", stats.getKeyCount());
+            result.put("topValues", values);
+            result.put("topCounts", counts);
+            result.put("lastUpdated", stats.getLastUpdated());
+            status = "Statistics as of the last refresh by the async indexer";
+        }
+        result.put("status", status);
+        return new CompositeDataSupport(getValueStatisticsType(), result);
+    }
+
+    @Override
+    public long getBloomFilterNegativeCount() {
+        return PropertyIndexBloomFilter.getNegativeCount();
+    }
+
+    @Override
+    public long getBloomFilterFalsePositiveCount() {
+        return PropertyIndexBloomFilter.getFalsePositiveCount();
+    }
+
     private CompositeData getStatsForIndex(String path, NodeState idx, int maxValueCount, int maxDepth, int maxPathCount)
             throws OpenDataException {
         Map<String, Object> result = new HashMap<String, Object>();
@@ -218,6 +264,22 @@ public class PropertyIndexStats extends AnnotatedStandardMBean implements Proper
         return Iterables.toArray(result, String.class);
     }
 
+    private static CompositeType getValueStatisticsType() throws OpenDataException {
+        String[] names = new String[]{"path", "entryCount", "valueCount", "topValues", "topCounts",
+                "lastUpdated", "status"};
+        return new CompositeType("PropertyIndexValueStatistics", "Property index value statistics",
+                names, names,
+                new OpenType[]{
+                        SimpleType.STRING,
+                        SimpleType.LONG,
+                        SimpleType.LONG,
+                        new ArrayType(SimpleType.STRING, false),
+                        new ArrayType(SimpleType.LONG, false),
+                        SimpleType.LONG,
+                        SimpleType.STRING,
+                });
+    }
+
     @SuppressWarnings("unchecked")
     private static CompositeType getType() throws OpenDataException {
         return new CompositeType("PropertyIndexStats", "Property index related stats",
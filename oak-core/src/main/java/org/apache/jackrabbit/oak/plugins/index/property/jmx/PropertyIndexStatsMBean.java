@@ -73,5 +73,22 @@ public interface PropertyIndexStatsMBean {
                            int maxPathCount
     ) throws OpenDataException;
 
+    @Description("Returns the value statistics that the async indexer keeps for a property index with the " +
+            "property 'statistics' set to true: the number of entries, the number of distinct values, and the " +
+            "most frequent values with their number of entries")
+    CompositeData getValueStatistics(@Name("indexPath")
+                           @Description("Index path for which the statistics are to be returned")
+                           String path
+    ) throws OpenDataException;
+
+    @Description("Number of property index lookups (since the repository was started) that a bloom filter " +
+            "answered without reading the index content. Only counted when executing queries and checking " +
+            "uniqueness, not when planning queries")
+    long getBloomFilterNegativeCount();
+
+    @Description("Number of property index lookups (since the repository was started) where a bloom filter " +
+            "reported a value that was not in the index. Only counted for lookups that read the index anyway, " +
+            "such as uniqueness checks")
+    long getBloomFilterFalsePositiveCount();
 
 }
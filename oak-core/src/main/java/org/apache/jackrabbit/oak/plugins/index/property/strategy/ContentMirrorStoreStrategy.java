@@ -212,12 +212,18 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
             Set<String> values, int max) {
         NodeState index = indexMeta.getChildNode(indexStorageNodeName);
         long count = -1;
+        PropertyIndexStatistics stats = null;
+        if (INDEX_CONTENT_NODE_NAME.equals(indexStorageNodeName)) {
+            stats = PropertyIndexStatistics.get(indexMeta);
+        }
         if (values == null) {
             // property is not null
             PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
             if (ec != null) {
                 // negative value implies fall-back to counting
                 count = ec.getValue(Type.LONG);
+            } else if (stats != null) {
+                count = stats.getEntryCount();
             } else {
                 // negative value means that approximation isn't available
                 count = ApproximateCounter.getCountSync(index);
@@ -255,6 +261,14 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                     keyCount = Math.max(1, keyCount);
                     count = (long) ((double) count / keyCount) + size;
                 }
+            } else if (stats != null) {
+                // use the statistics of the values that exist
+                count = 0;
+                for (String p : values) {
+                    if (index.hasChildNode(p)) {
+                        count += stats.getEstimatedCount(p);
+                    }
+                }
             } else {
                 // for this index, property "entryCount" is not set
                 long approxMax = 0;
@@ -527,12 +541,18 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
          */
         long depthTotal;
 
+        /**
+         * The number of visited nodes.
+         */
+        long visited;
+
         CountingNodeVisitor(int maxCount) {
             this.maxCount = maxCount;
         }
 
         @Override
         public void visit(NodeState state) {
+            visited++;
             if (state.hasProperty("match")) {
                 count++;
                 depthTotal += depth;
@@ -558,6 +578,15 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
             return count;
         }
 
+        /**
+         * The number of nodes that were visited.
+         *
+         * @return the number of visited nodes
+         */
+        long getVisited() {
+            return visited;
+        }
+
         /**
          * The number of estimated matches. This value might be higher than the
          * number of counted matches, if the maximum number of matches has been
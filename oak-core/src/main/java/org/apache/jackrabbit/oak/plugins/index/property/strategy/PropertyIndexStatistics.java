@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.STATISTICS_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.NodeTraversalCallback;
+import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy.CountingNodeVisitor;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Value statistics of a property index (stored with the
+ * {@link ContentMirrorStoreStrategy}): the number of entries, the number of
+ * distinct values, and the most frequent values with their number of
+ * entries. The statistics are stored in the hidden child node {@code :stats}
+ * of the index definition, if the index definition has the property
+ * {@code statistics} set to true.
+ * <p>
+ * The statistics are refreshed by one lane of the async indexer (by default
+ * "async", see the system property {@code oak.indexStatistics.lane}), see
+ * {@link #refresh(NodeState, NodeBuilder, long, NodeTraversalCallback)}, one
+ * index per indexing cycle. They are used to estimate the number of entries of a value,
+ * instead of counting the entries when planning a query.
+ */
+public class PropertyIndexStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyIndexStatistics.class);
+
+    /**
+     * The name of the node that contains the statistics.
+     */
+    public static final String STATS_NODE_NAME = ":stats";
+
+    static final String ENTRY_COUNT = "entryCount";
+
+    static final String KEY_COUNT = "keyCount";
+
+    static final String TOP_VALUES = "topValues";
+
+    static final String TOP_COUNTS = "topCounts";
+
+    static final String LAST_UPDATED = "lastUpdated";
+
+    /**
+     * The minimum age of the statistics before they are refreshed.
+     */
+    static final long REFRESH_INTERVAL_MILLIS = Long.getLong(
+            "oak.indexStatistics.refreshIntervalMillis", 60 * 60 * 1000);
+
+    /**
+     * The maximum number of distinct values to read when refreshing.
+     */
+    static final int MAX_KEYS = Integer.getInteger(
+            "oak.indexStatistics.maxKeys", 100000);
+
+    /**
+     * The maximum number of index nodes to read when refreshing, so that a
+     * refresh does not hold up the indexing cycle for too long.
+     */
+    static final long MAX_NODES = Long.getLong(
+            "oak.indexStatistics.maxNodes", 1000000);
+
+    /**
+     * The maximum number of entries to count per value, if there is no
+     * (accurate) approximate count for the value.
+     */
+    static final int MAX_COUNT_PER_KEY = 10000;
+
+    /**
+     * Approximate counts below this value are not accurate enough, so the
+     * entries are counted instead.
+     */
+    static final long MIN_APPROXIMATE_COUNT = 10 * ApproximateCounter.COUNT_RESOLUTION;
+
+    /**
+     * The number of most frequent values to keep.
+     */
+    static final int TOP_SIZE = 20;
+
+    private final long entryCount;
+
+    private final long keyCount;
+
+    private final Map<String, Long> top;
+
+    private final long lastUpdated;
+
+    /**
+     * The number of entries of each value that is not in the top list.
+     */
+    private final long averageCount;
+
+    PropertyIndexStatistics(long entryCount, long keyCount, Map<String, Long> top, long lastUpdated) {
+        this.entryCount = entryCount;
+        this.keyCount = keyCount;
+        this.top = top;
+        this.lastUpdated = lastUpdated;
+        long topCount = 0;
+        for (long c : top.values()) {
+            topCount += c;
+        }
+        long rest = Math.max(1, keyCount - top.size());
+        this.averageCount = Math.max(1, (entryCount - topCount) / rest);
+    }
+
+    /**
+     * Get the statistics of the given index, if it has any.
+     *
+     * @param definition the index definition
+     * @return the statistics, or null
+     */
+    @Nullable
+    public static PropertyIndexStatistics get(NodeState definition) {
+        if (!definition.getBoolean(STATISTICS_PROPERTY_NAME)) {
+            return null;
+        }
+        NodeState stats = definition.getChildNode(STATS_NODE_NAME);
+        if (!stats.hasProperty(ENTRY_COUNT)) {
+            return null;
+        }
+        Map<String, Long> top = new HashMap<String, Long>();
+        PropertyState values = stats.getProperty(TOP_VALUES);
+        PropertyState counts = stats.getProperty(TOP_COUNTS);
+        if (values != null && counts != null) {
+            for (int i = 0; i < values.count() && i < counts.count(); i++) {
+                top.put(values.getValue(Type.STRING, i), counts.getValue(Type.LONG, i));
+            }
+        }
+        return new PropertyIndexStatistics(
+                stats.getLong(ENTRY_COUNT), stats.getLong(KEY_COUNT),
+                top, stats.getLong(LAST_UPDATED));
+    }
+
+    /**
+     * Refresh the statistics of the property index (below /oak:index) whose
+     * statistics are the oldest, if they are older than the refresh
+     * interval. Statistics of indexes that no longer have statistics enabled
+     * are removed.
+     *
+     * @param root the root node state to read the index content from
+     * @param builder the root node builder to write the statistics to
+     * @param now the current time in milliseconds
+     * @param callback the callback that is informed for each value that is
+     *            read (to renew the lease of the indexing lane, and to stop
+     *            early)
+     * @return the name of the index that was refreshed, or null
+     * @throws CommitFailedException if the callback failed
+     */
+    @Nullable
+    public static String refresh(NodeState root, NodeBuilder builder, long now,
+            NodeTraversalCallback callback) throws CommitFailedException {
+        NodeState definitions = root.getChildNode(INDEX_DEFINITIONS_NAME);
+        NodeBuilder definitionBuilders = builder.getChildNode(INDEX_DEFINITIONS_NAME);
+        String oldest = null;
+        long oldestTime = now - REFRESH_INTERVAL_MILLIS;
+        for (ChildNodeEntry e : definitions.getChildNodeEntries()) {
+            NodeState def = e.getNodeState();
+            if (!def.hasChildNode(STATS_NODE_NAME) && !def.getBoolean(STATISTICS_PROPERTY_NAME)) {
+                continue;
+            }
+            NodeBuilder defBuilder = definitionBuilders.getChildNode(e.getName());
+            if (!isApplicable(def)) {
+                if (defBuilder.hasChildNode(STATS_NODE_NAME)) {
+                    defBuilder.getChildNode(STATS_NODE_NAME).remove();
+                }
+                continue;
+            }
+            if (!defBuilder.exists() || !def.hasChildNode(INDEX_CONTENT_NODE_NAME)) {
+                continue;
+            }
+            long time = def.getChildNode(STATS_NODE_NAME).getLong(LAST_UPDATED);
+            if (time <= oldestTime) {
+                oldest = e.getName();
+                oldestTime = time;
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        NodeState index = definitions.getChildNode(oldest).getChildNode(INDEX_CONTENT_NODE_NAME);
+        String path = PathUtils.concat("/", INDEX_DEFINITIONS_NAME, oldest, INDEX_CONTENT_NODE_NAME);
+        PropertyIndexStatistics stats = collect(index, path, now, callback);
+        NodeBuilder target = definitionBuilders.getChildNode(oldest).child(STATS_NODE_NAME);
+        stats.write(target);
+        LOG.debug("Refreshed statistics of index {}: {}", oldest, stats);
+        return oldest;
+    }
+
+    /**
+     * Collect the statistics of the given index content node.
+     *
+     * @param index the index content node ({@code :index})
+     * @param path the path of the index content node
+     * @param now the current time in milliseconds
+     * @param callback the callback that is informed for each value
+     * @return the statistics
+     * @throws CommitFailedException if the callback failed
+     */
+    static PropertyIndexStatistics collect(NodeState index, String path, long now,
+            NodeTraversalCallback callback) throws CommitFailedException {
+        long entryCount = 0;
+        long keyCount = 0;
+        long nodeCount = 0;
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<Map.Entry<String, Long>>(
+                TOP_SIZE + 1, (a, b) -> Long.compare(a.getValue(), b.getValue()));
+        for (ChildNodeEntry e : index.getChildNodeEntries()) {
+            if (keyCount >= MAX_KEYS) {
+                LOG.info("Index {} has more than {} values; statistics are incomplete",
+                        path, MAX_KEYS);
+                break;
+            }
+            if (nodeCount >= MAX_NODES) {
+                LOG.info("Index {} has more than {} nodes; statistics are incomplete",
+                        path, MAX_NODES);
+                break;
+            }
+            callback.traversedNode(() -> PathUtils.concat(path, e.getName()));
+            long count = ApproximateCounter.getCountSync(e.getNodeState());
+            nodeCount++;
+            if (count < MIN_APPROXIMATE_COUNT) {
+                CountingNodeVisitor v = new CountingNodeVisitor(MAX_COUNT_PER_KEY);
+                v.visit(e.getNodeState());
+                count = v.getEstimatedCount();
+                nodeCount += v.getVisited();
+            }
+            keyCount++;
+            entryCount += count;
+            top.add(new SimpleImmutableEntry<String, Long>(e.getName(), count));
+            if (top.size() > TOP_SIZE) {
+                top.poll();
+            }
+        }
+        Map<String, Long> topMap = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> e : top) {
+            topMap.put(e.getKey(), e.getValue());
+        }
+        return new PropertyIndexStatistics(entryCount, keyCount, topMap, now);
+    }
+
+    /**
+     * The estimated number of entries for the given value, assuming the
+     * value is in the index.
+     *
+     * @param key the encoded value
+     * @return the estimated number of entries (at least 1)
+     */
+    public long getEstimatedCount(String key) {
+        Long c = top.get(key);
+        return c == null ? averageCount : Math.max(1, c);
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * The most frequent values, with the most frequent value first.
+     *
+     * @return the values and their number of entries
+     */
+    @NotNull
+    public List<Map.Entry<String, Long>> getTopValues() {
+        List<Map.Entry<String, Long>> list = new ArrayList<Map.Entry<String, Long>>(top.entrySet());
+        Collections.sort(list, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return list;
+    }
+
+    private void write(NodeBuilder builder) {
+        List<String> values = new ArrayList<String>();
+        List<Long> counts = new ArrayList<Long>();
+        for (Map.Entry<String, Long> e : getTopValues()) {
+            values.add(e.getKey());
+            counts.add(e.getValue());
+        }
+        builder.setProperty(ENTRY_COUNT, entryCount);
+        builder.setProperty(KEY_COUNT, keyCount);
+        builder.setProperty(TOP_VALUES, values, Type.STRINGS);
+        builder.setProperty(TOP_COUNTS, counts, Type.LONGS);
+        builder.setProperty(LAST_UPDATED, lastUpdated);
+    }
+
+    private static boolean isApplicable(NodeState definition) {
+        return definition.getBoolean(STATISTICS_PROPERTY_NAME)
+                && "property".equals(definition.getString(TYPE_PROPERTY_NAME))
+                && !definition.getBoolean(UNIQUE_PROPERTY_NAME);
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + entryCount + ", values: " + keyCount + ", top: " + getTopValues();
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.ArrayList;
+
+import org.apache.jackrabbit.oak.api.Root;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Returns the tree for a path, re-using the trees of the ancestors of the
+ * previous path. Index rows are often sorted or grouped by path, so that
+ * consecutive rows share most ancestors. As each tree keeps the permissions
+ * evaluated for its node, the permissions of the shared ancestors are then
+ * evaluated once instead of once per row.
+ */
+class AncestorTrees {
+
+    private final Root root;
+
+    /**
+     * The names of the nodes of the previous path.
+     */
+    private final ArrayList<String> names = new ArrayList<String>();
+
+    /**
+     * The trees of the previous path, starting with the root (so that the
+     * tree at index i is the tree of the first i names).
+     */
+    private final ArrayList<Tree> trees = new ArrayList<Tree>();
+
+    AncestorTrees(@NotNull Root root) {
+        this.root = root;
+    }
+
+    /**
+     * Get the tree at the given path.
+     *
+     * @param path the absolute path
+     * @return the tree
+     */
+    @NotNull
+    Tree getTree(@NotNull String path) {
+        if (trees.isEmpty()) {
+            trees.add(root.getTree(PathUtils.ROOT_PATH));
+        }
+        int depth = 0;
+        for (String name : PathUtils.elements(path)) {
+            if (depth < names.size()) {
+                if (names.get(depth).equals(name)) {
+                    depth++;
+                    continue;
+                }
+                // a different subtree: forget the rest of the previous path
+                for (int i = names.size() - 1; i >= depth; i--) {
+                    names.remove(i);
+                    trees.remove(i + 1);
+                }
+            }
+            trees.add(trees.get(depth).getChild(name));
+            names.add(name);
+            depth++;
+        }
+        return trees.get(depth);
+    }
+
+}
@@ -13,14 +13,35 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.common.base.FinalizablePhantomReference;
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,9 +53,49 @@ public class FilterIterators {
     
     private static final Logger LOG = LoggerFactory.getLogger(FilterIterators.class);
 
+    /**
+     * Whether rows of an "order by" query without limit are sorted on disk
+     * once there are too many to sort in memory.
+     */
+    static final boolean SPILL_TO_DISK = Boolean.getBoolean("oak.query.sortSpillToDisk");
+
+    /**
+     * The number of rows sorted in memory before they are written to disk,
+     * if sorting on disk is enabled.
+     */
+    static final int SPILL_BATCH_SIZE = Integer.getInteger("oak.query.sortSpillBatchSize", 100000);
+
     private FilterIterators() {
     }
 
+    /**
+     * Converts rows to a single line of text and back, so that they can be
+     * sorted on disk.
+     *
+     * @param <K> the row type
+     */
+    public interface RowSerializer<K> {
+
+        /**
+         * Serialize a row.
+         *
+         * @param row the row
+         * @return the text (without line breaks), or null if the row can not
+         *         be serialized
+         */
+        @Nullable
+        String serialize(@NotNull K row);
+
+        /**
+         * Read a row that was serialized before.
+         *
+         * @param s the text
+         * @return the row
+         */
+        @NotNull
+        K deserialize(@NotNull String s);
+    }
+
     /**
      * Verify the number of in-memory nodes is below the limit.
      * 
@@ -78,6 +139,13 @@ public class FilterIterators {
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null, null);
+    }
+
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset,
+            Comparator<K> orderBy, QueryLimits settings,
+            @Nullable RowSerializer<K> serializer, @Nullable QueryExecutionStats stats) {
         if (distinct) {
             it = FilterIterators.newDistinct(it, settings);
         }
@@ -86,7 +154,8 @@ public class FilterIterators {
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            it = new SortIterator<K>(it, orderBy, max, settings,
+                    SPILL_TO_DISK ? serializer : null, stats);
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -180,7 +249,9 @@ public class FilterIterators {
     /**
      * An iterator that returns entries in sorted order. The internal list of
      * sorted entries can be limited to a given number of entries, and the
-     * entries are only read when needed (on demand).
+     * entries are only read when needed (on demand). If the number of entries
+     * is not limited, and a serializer is available, entries can be sorted on
+     * disk.
      * 
      * @param <K> the entry type
      */
@@ -189,39 +260,221 @@ public class FilterIterators {
         private final Iterator<K> source;
         private final QueryLimits settings;
         private final Comparator<K> orderBy;
+        private final Comparator<SortEntry<K>> entryOrder;
+        private final RowSerializer<K> serializer;
+        private final QueryExecutionStats stats;
         private Iterator<K> result;
         private final int max;
+        private long rowCount;
+        private long spillBytes;
 
         SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+            this(source, orderBy, max, settings, null, null);
+        }
+
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                @Nullable RowSerializer<K> serializer, @Nullable QueryExecutionStats stats) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.serializer = serializer;
+            this.stats = stats;
+            // entries that compare equal keep the order in which they were read
+            this.entryOrder = new Comparator<SortEntry<K>>() {
+                @Override
+                public int compare(SortEntry<K> o1, SortEntry<K> o2) {
+                    int comp = orderBy.compare(o1.value, o2.value);
+                    if (comp == 0) {
+                        comp = Long.compare(o1.seq, o2.seq);
+                    }
+                    return comp;
+                }
+            };
         }
         
         private void init() {
             if (result != null) {
                 return;
             }
-            ArrayList<K> list = new ArrayList<K>();
+            long start = System.nanoTime();
+            if (max < Integer.MAX_VALUE && max <= settings.getLimitInMemory()) {
+                result = sortTopK();
+            } else {
+                result = sortAll();
+            }
+            if (stats != null) {
+                stats.sort(rowCount, spillBytes, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Keep the first entries in a bounded heap, with the last of them on
+         * top. This needs O(n*log(keep)) operations.
+         */
+        private Iterator<K> sortTopK() {
+            ArrayList<SortEntry<K>> list = new ArrayList<SortEntry<K>>();
+            PriorityQueue<SortEntry<K>> heap = null;
             while (source.hasNext()) {
-                K x = source.next();
-                list.add(x);
-                checkMemoryLimit(list.size(), settings);
-                // from time to time, sort and truncate
-                // this should need less than O(n*log(3*keep)) operations,
-                // which is close to the optimum O(n*log(keep))
-                if (list.size() > (long) max * 2) {
-                    // remove tail entries right now, to save memory
-                    Collections.sort(list, orderBy);
+                SortEntry<K> x = new SortEntry<K>(source.next(), rowCount++);
+                if (max == 0) {
+                    continue;
+                }
+                if (heap == null) {
+                    list.add(x);
+                    checkMemoryLimit(list.size(), settings);
+                    if (list.size() > max) {
+                        heap = new PriorityQueue<SortEntry<K>>(
+                                max + 1, Collections.reverseOrder(entryOrder));
+                        heap.addAll(list);
+                        heap.poll();
+                        list = null;
+                    }
+                } else if (entryOrder.compare(x, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(x);
+                }
+            }
+            if (heap != null) {
+                list = new ArrayList<SortEntry<K>>(heap);
+            }
+            Collections.sort(list, entryOrder);
+            return values(list.iterator());
+        }
+
+        private Iterator<K> sortAll() {
+            ArrayList<SortEntry<K>> list = new ArrayList<SortEntry<K>>();
+            ArrayList<File> spilled = new ArrayList<File>();
+            boolean spill = serializer != null;
+            long spillAt = Math.min(SPILL_BATCH_SIZE, settings.getLimitInMemory());
+            try {
+                while (source.hasNext()) {
+                    list.add(new SortEntry<K>(source.next(), rowCount++));
+                    if (spill && list.size() >= spillAt) {
+                        spill = spill(list, spilled);
+                        if (!spill) {
+                            readBack(list, spilled);
+                        }
+                    }
+                    checkMemoryLimit(list.size(), settings);
+                    // from time to time, sort and truncate
+                    // this should need less than O(n*log(3*keep)) operations,
+                    // which is close to the optimum O(n*log(keep))
+                    if (list.size() > (long) max * 2) {
+                        // remove tail entries right now, to save memory
+                        Collections.sort(list, entryOrder);
+                        keepFirst(list, max);
+                    }
+                }
+                if (spilled.isEmpty()) {
+                    Collections.sort(list, entryOrder);
                     keepFirst(list, max);
+                    return values(list.iterator());
+                }
+                if (list.isEmpty() || spill(list, spilled)) {
+                    return merge(spilled);
+                }
+                readBack(list, spilled);
+                Collections.sort(list, entryOrder);
+                keepFirst(list, max);
+                return values(list.iterator());
+            } catch (IOException e) {
+                throw new IllegalStateException("Sorting on disk failed", e);
+            } finally {
+                for (File f : spilled) {
+                    f.delete();
                 }
             }
-            Collections.sort(list, orderBy);
-            keepFirst(list, max);
-            result = list.iterator();
         }
-        
+
+        /**
+         * Sort the entries and write them to a temporary file.
+         *
+         * @return whether the entries were written, false if one of the
+         *         entries can not be serialized
+         */
+        private boolean spill(ArrayList<SortEntry<K>> list, List<File> spilled) throws IOException {
+            Collections.sort(list, entryOrder);
+            File file = File.createTempFile("querySort", ".txt");
+            boolean success = false;
+            try (BufferedWriter writer = Files.newWriter(file, UTF_8)) {
+                for (SortEntry<K> e : list) {
+                    String s = toLine(e);
+                    if (s == null) {
+                        LOG.debug("Row can not be serialized, sorting in memory: {}", e.value);
+                        return false;
+                    }
+                    writer.write(s);
+                    writer.newLine();
+                }
+                success = true;
+            } finally {
+                if (success) {
+                    spilled.add(file);
+                    spillBytes += file.length();
+                } else {
+                    file.delete();
+                }
+            }
+            list.clear();
+            return true;
+        }
+
+        /**
+         * Read the entries that were written to disk back into memory, and
+         * delete the files.
+         */
+        private void readBack(ArrayList<SortEntry<K>> list, List<File> spilled) throws IOException {
+            for (File f : spilled) {
+                try (BufferedReader reader = Files.newReader(f, UTF_8)) {
+                    for (String line; (line = reader.readLine()) != null;) {
+                        list.add(fromLine(line));
+                        checkMemoryLimit(list.size(), settings);
+                    }
+                }
+                f.delete();
+            }
+            spilled.clear();
+        }
+
+        private Iterator<K> merge(List<File> spilled) throws IOException {
+            File out = File.createTempFile("querySort", ".txt");
+            boolean success = false;
+            try {
+                ExternalSort.mergeSortedFiles(new ArrayList<File>(spilled), out, entryOrder,
+                        UTF_8, false, false, false, this::toLine, this::fromLine);
+                spilled.clear();
+                spillBytes += out.length();
+                SpilledIterator it = new SpilledIterator(out);
+                success = true;
+                return it;
+            } finally {
+                if (!success) {
+                    out.delete();
+                }
+            }
+        }
+
+        @Nullable
+        private String toLine(SortEntry<K> e) {
+            String s = serializer.serialize(e.value);
+            return s == null ? null : e.seq + " " + s;
+        }
+
+        @Nullable
+        private SortEntry<K> fromLine(@Nullable String line) {
+            if (line == null) {
+                return null;
+            }
+            int sep = line.indexOf(' ');
+            return new SortEntry<K>(serializer.deserialize(line.substring(sep + 1)),
+                    Long.parseLong(line.substring(0, sep)));
+        }
+
+        private Iterator<K> values(Iterator<SortEntry<K>> it) {
+            return Iterators.transform(it, e -> e.value);
+        }
+
         /**
          * Truncate a list.
          * 
@@ -252,7 +505,113 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
-        
+
+        /**
+         * Reads the first entries of the merged file. The file is deleted
+         * once all entries are read, or when the iterator is garbage
+         * collected before that.
+         */
+        private class SpilledIterator extends AbstractIterator<K> {
+
+            private final SpillFile file;
+            private long count;
+
+            SpilledIterator(File file) throws IOException {
+                this.file = new SpillFile(this, file);
+            }
+
+            @Override
+            protected K computeNext() {
+                if (!file.isClosed() && count++ < max) {
+                    try {
+                        SortEntry<K> e = fromLine(file.readLine());
+                        if (e != null) {
+                            return e.value;
+                        }
+                    } catch (IOException e) {
+                        file.close();
+                        throw new IllegalStateException("Reading the sorted rows failed", e);
+                    }
+                }
+                file.close();
+                return endOfData();
+            }
+        }
+
+    }
+
+    /**
+     * A file of sorted rows that is open for reading. The file is deleted
+     * when it is closed, or at the latest once its owner is garbage
+     * collected, so that query results that are not read to the end do not
+     * leave files behind.
+     */
+    static final class SpillFile extends FinalizablePhantomReference<Object>
+            implements Closeable {
+
+        private static final FinalizableReferenceQueue QUEUE = new FinalizableReferenceQueue();
+
+        /**
+         * The files that are still open. The references need to be reachable
+         * until they are enqueued.
+         */
+        private static final Set<SpillFile> OPEN = Sets.newConcurrentHashSet();
+
+        private final File file;
+        private BufferedReader reader;
+
+        SpillFile(Object owner, File file) throws IOException {
+            super(owner, QUEUE);
+            this.file = file;
+            this.reader = Files.newReader(file, UTF_8);
+            OPEN.add(this);
+        }
+
+        synchronized boolean isClosed() {
+            return reader == null;
+        }
+
+        @Nullable
+        synchronized String readLine() throws IOException {
+            return reader == null ? null : reader.readLine();
+        }
+
+        @Override
+        public void finalizeReferent() {
+            close();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (reader == null) {
+                return;
+            }
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.debug("Closing {} failed", file, e);
+            }
+            reader = null;
+            file.delete();
+            OPEN.remove(this);
+        }
+
+    }
+
+    /**
+     * An entry to sort, with the position at which it was read.
+     *
+     * @param <K> the entry type
+     */
+    private static final class SortEntry<K> {
+
+        final K value;
+        final long seq;
+
+        SortEntry(K value, long seq) {
+            this.value = value;
+            this.seq = seq;
+        }
     }
     
     /**
@@ -35,7 +35,6 @@ import org.apache.jackrabbit.oak.namepath.NamePathMapper;
 import org.apache.jackrabbit.oak.namepath.impl.NamePathMapperImpl;
 import org.apache.jackrabbit.oak.query.ast.NodeTypeInfoProvider;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
-import org.apache.jackrabbit.oak.query.xpath.XPathToSQL2Converter;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -178,8 +177,7 @@ public abstract class QueryEngineImpl implements QueryEngine {
             parser.setSupportSQL1(true);
             q = parser.parse(statement, false);
         } else if (XPATH.equals(language)) {
-            XPathToSQL2Converter converter = new XPathToSQL2Converter();
-            String sql2 = converter.convert(statement);
+            String sql2 = settings.getQueryPlanCache().convertXPath(statement);
             LOG.debug("XPath > SQL2: {}", sql2);
             try {
                 // OAK-874: No artificial XPath selector name in wildcards
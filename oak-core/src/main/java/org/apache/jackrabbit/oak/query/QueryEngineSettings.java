@@ -88,6 +88,8 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryValidator queryValidator = new QueryValidator();
 
+    private QueryPlanCache queryPlanCache = new QueryPlanCache();
+
     public QueryEngineSettings() {
         statisticsProvider = StatisticsProvider.NOOP;
     }
@@ -165,6 +167,14 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return queryStats;
     }
 
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
+    void setQueryPlanCache(QueryPlanCache queryPlanCache) {
+        this.queryPlanCache = queryPlanCache;
+    }
+
     public StatisticsProvider getStatisticsProvider() {
         return statisticsProvider;
     }
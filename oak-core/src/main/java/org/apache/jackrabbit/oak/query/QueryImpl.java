@@ -28,7 +28,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
@@ -39,6 +41,7 @@ import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.plugins.observation.filter.UniversalFilter.Selector;
 import org.apache.jackrabbit.oak.query.QueryOptions.Traversal;
+import org.apache.jackrabbit.oak.query.QueryPlanCache.PlanSelection;
 import org.apache.jackrabbit.oak.query.ast.AndImpl;
 import org.apache.jackrabbit.oak.query.ast.AstVisitorBase;
 import org.apache.jackrabbit.oak.query.ast.BindVariableValueImpl;
@@ -98,6 +101,7 @@ import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -191,6 +195,11 @@ public class QueryImpl implements Query {
 
     private boolean warnedHidden;
 
+    /**
+     * The trees of the ancestors of the last returned tree.
+     */
+    private AncestorTrees ancestorTrees;
+
     private boolean isInternal;
 
     private boolean potentiallySlowTraversalQuery;
@@ -568,7 +577,8 @@ public class QueryImpl implements Query {
             orderBy = ResultRowImpl.getComparator(orderings);
         }
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings,
+                        ResultRowImpl.getSerializer(this, distinctColumns), stats);
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -1015,8 +1025,140 @@ public class QueryImpl implements Query {
     }
 
     public SelectorExecutionPlan getBestSelectorExecutionPlan(FilterImpl filter) {
-        return getBestSelectorExecutionPlan(context.getBaseState(), filter,
-                context.getIndexProvider(), traversalEnabled);
+        NodeState rootState = context.getBaseState();
+        QueryIndexProvider indexProvider = context.getIndexProvider();
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        if (!cache.isPlanCacheEnabled() || selectors.size() != 1) {
+            // the filters of a join depend on the join order
+            return getBestSelectorExecutionPlan(rootState, filter,
+                    indexProvider, traversalEnabled);
+        }
+        String key = getPlanCacheKey(filter);
+        PlanSelection selection = cache.getPlan(key);
+        if (selection != null) {
+            SelectorExecutionPlan plan = getCachedSelectorExecutionPlan(
+                    rootState, filter, indexProvider, selection);
+            if (plan != null) {
+                potentiallySlowTraversalQuery = false;
+                return plan;
+            }
+            cache.removePlan(key);
+        }
+        SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                indexProvider, traversalEnabled);
+        QueryIndex index = plan.getIndex();
+        if (index != null && !(index instanceof TraversingIndex)
+                && plan.getEstimatedCost() < Double.POSITIVE_INFINITY) {
+            IndexPlan indexPlan = plan.getIndexPlan();
+            cache.putPlan(key, index.getIndexName(),
+                    indexPlan == null ? null : indexPlan.getPlanName());
+        }
+        return plan;
+    }
+
+    /**
+     * Get the best plan for the given filter that uses an index, without
+     * changing whether this query is considered potentially slow. This is
+     * used to compare alternative plans, for example for a hash join.
+     *
+     * @param filter the filter
+     * @return the plan (the index is null if no index can be used)
+     */
+    public SelectorExecutionPlan getBestIndexedSelectorExecutionPlan(FilterImpl filter) {
+        boolean old = potentiallySlowTraversalQuery;
+        try {
+            return getBestSelectorExecutionPlan(context.getBaseState(), filter,
+                    context.getIndexProvider(), false);
+        } finally {
+            potentiallySlowTraversalQuery = old;
+        }
+    }
+
+    /**
+     * Get the key of the plan selection for this query. Besides the
+     * statement, the plan depends on the types of the bound values, the
+     * limit and offset (which cap the estimated entry count), and whether
+     * traversal is allowed.
+     */
+    private String getPlanCacheKey(FilterImpl filter) {
+        StringBuilder buff = new StringBuilder(statement);
+        buff.append('\n').append(filter.getSelector().getSelectorName());
+        for (Map.Entry<String, PropertyValue> e : new TreeMap<>(bindVariableMap).entrySet()) {
+            PropertyValue v = e.getValue();
+            buff.append('\n').append(e.getKey()).append(':')
+                    .append(v == null ? "null" : v.getType().toString());
+        }
+        buff.append('\n').append(limit).append('/').append(offset)
+                .append('/').append(traversalEnabled);
+        return buff.toString();
+    }
+
+    /**
+     * Get the plan of the index selected by an earlier execution.
+     *
+     * @return the plan, or null if the index is not available or does not
+     *         return the selected plan any longer
+     */
+    @Nullable
+    private SelectorExecutionPlan getCachedSelectorExecutionPlan(
+            NodeState rootState, FilterImpl filter,
+            QueryIndexProvider indexProvider, PlanSelection selection) {
+        for (QueryIndex index : indexProvider.getQueryIndexes(rootState)) {
+            if (!selection.indexName.equals(index.getIndexName())) {
+                continue;
+            }
+            if (index instanceof AdvancedQueryIndex) {
+                List<OrderEntry> sortOrder = getSortOrder(filter);
+                double bestCost = Double.POSITIVE_INFINITY;
+                IndexPlan bestPlan = null;
+                for (IndexPlan p : ((AdvancedQueryIndex) index).getPlans(
+                        filter, sortOrder, rootState)) {
+                    if (!Objects.equals(selection.planName, p.getPlanName())) {
+                        continue;
+                    }
+                    double c = getCost(rootState, filter, sortOrder, p);
+                    if (c < bestCost) {
+                        bestCost = c;
+                        bestPlan = p;
+                    }
+                }
+                if (bestPlan != null) {
+                    return new SelectorExecutionPlan(filter.getSelector(),
+                            index, bestPlan, bestCost);
+                }
+            } else if (selection.planName == null) {
+                double cost = index.getCost(filter, rootState);
+                if (cost < Double.POSITIVE_INFINITY) {
+                    return new SelectorExecutionPlan(filter.getSelector(),
+                            index, null, cost);
+                }
+            }
+        }
+        return null;
+    }
+
+    private double getCost(NodeState rootState, FilterImpl filter,
+                           List<OrderEntry> sortOrder, IndexPlan p) {
+        long maxEntryCount = limit;
+        if (offset > 0) {
+            if (offset + limit < 0) {
+                // long overflow
+                maxEntryCount = Long.MAX_VALUE;
+            } else {
+                maxEntryCount = offset + limit;
+            }
+        }
+        long entryCount = p.getEstimatedEntryCount();
+        if (p.getSupportsPathRestriction()) {
+            entryCount = scaleEntryCount(rootState, filter, entryCount);
+        }
+        if (sortOrder == null || p.getSortOrder() != null) {
+            // if the query is unordered, or
+            // if the query contains "order by" and the index can sort on that,
+            // then we don't need to read all entries from the index
+            entryCount = Math.min(maxEntryCount, entryCount);
+        }
+        return p.getCostPerExecution() + entryCount * p.getCostPerEntry();
     }
 
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
@@ -1053,31 +1195,11 @@ public class QueryImpl implements Query {
             IndexPlan indexPlan = null;
             if (index instanceof AdvancedQueryIndex) {
                 AdvancedQueryIndex advIndex = (AdvancedQueryIndex) index;
-                long maxEntryCount = limit;
-                if (offset > 0) {
-                    if (offset + limit < 0) {
-                        // long overflow
-                        maxEntryCount = Long.MAX_VALUE;
-                    } else {
-                        maxEntryCount = offset + limit;
-                    }
-                }
                 List<IndexPlan> ipList = advIndex.getPlans(
                         filter, sortOrder, rootState);
                 cost = Double.POSITIVE_INFINITY;
                 for (IndexPlan p : ipList) {
-                    
-                    long entryCount = p.getEstimatedEntryCount();
-                    if (p.getSupportsPathRestriction()) {
-                        entryCount = scaleEntryCount(rootState, filter, entryCount);
-                    }
-                    if (sortOrder == null || p.getSortOrder() != null) {
-                        // if the query is unordered, or
-                        // if the query contains "order by" and the index can sort on that,
-                        // then we don't need to read all entries from the index
-                        entryCount = Math.min(maxEntryCount, entryCount);
-                    }
-                    double c = p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+                    double c = getCost(rootState, filter, sortOrder, p);
 
                     if (LOG.isDebugEnabled()) {
                         String plan = advIndex.getPlanDescription(p, rootState);
@@ -1266,6 +1388,7 @@ public class QueryImpl implements Query {
     @Override
     public void setExecutionContext(ExecutionContext context) {
         this.context = context;
+        this.ancestorTrees = null;
     }
 
     @Override
@@ -1286,7 +1409,10 @@ public class QueryImpl implements Query {
             }
             return null;
         }
-        return context.getRoot().getTree(path);
+        if (ancestorTrees == null) {
+            ancestorTrees = new AncestorTrees(context.getRoot());
+        }
+        return ancestorTrees.getTree(path);
     }
 
     @Override
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.text.ParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.jackrabbit.oak.query.xpath.XPathToSQL2Converter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the work the query engine does before executing a query, for
+ * statements that are executed repeatedly.
+ * <p>
+ * Two kinds of entries are kept in LRU caches. Statements are converted from
+ * XPath to SQL-2 only once. For each statement and shape of the bind
+ * variables, the index and plan selected for its selector are remembered, and
+ * later executions only ask that index for a plan. The parsed query trees are
+ * not cached: they are mutable and bound to the namespace mappings of a
+ * session.
+ * <p>
+ * A cached plan selection is only a hint: if the index is gone or no
+ * longer returns the plan, the query is planned from scratch. However, a new
+ * or changed index that would be cheaper is only considered once the
+ * selection expired or was discarded with {@link #invalidate()}. For this
+ * reason caching of plan selections is disabled by default.
+ */
+public class QueryPlanCache {
+
+    /**
+     * The maximum number of converted statements. Zero disables caching.
+     */
+    static final int STATEMENT_CACHE_SIZE = Integer.getInteger("oak.query.statementCacheSize", 1000);
+
+    /**
+     * The maximum number of plan selections. Zero disables caching.
+     */
+    static final int PLAN_CACHE_SIZE = Integer.getInteger("oak.query.planCacheSize", 0);
+
+    /**
+     * The number of seconds a plan selection is used before the query is
+     * planned again.
+     */
+    static final long PLAN_EXPIRY_SECONDS = Long.getLong("oak.query.planCacheExpirySeconds", 60);
+
+    private final boolean statementsEnabled;
+
+    private final boolean plansEnabled;
+
+    private final Cache<String, String> statements;
+
+    private final Cache<String, PlanSelection> plans;
+
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong planHits = new AtomicLong();
+    private final AtomicLong planMisses = new AtomicLong();
+    private final AtomicLong planInvalid = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+
+    public QueryPlanCache() {
+        this(STATEMENT_CACHE_SIZE, PLAN_CACHE_SIZE, PLAN_EXPIRY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    QueryPlanCache(int statementCacheSize, int planCacheSize,
+                   long planExpiry, TimeUnit unit) {
+        this.statementsEnabled = statementCacheSize > 0;
+        this.plansEnabled = planCacheSize > 0;
+        this.statements = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(statementCacheSize, 0)).build();
+        this.plans = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(planCacheSize, 0))
+                .expireAfterWrite(planExpiry, unit).build();
+    }
+
+    /**
+     * Whether plan selections are cached.
+     *
+     * @return true if enabled
+     */
+    public boolean isPlanCacheEnabled() {
+        return plansEnabled;
+    }
+
+    /**
+     * Convert an XPath statement to SQL-2, using the cached result if the
+     * statement was converted before.
+     *
+     * @param xpath the XPath statement
+     * @return the SQL-2 statement
+     * @throws ParseException if the statement is invalid
+     */
+    @NotNull
+    String convertXPath(@NotNull final String xpath) throws ParseException {
+        if (!statementsEnabled) {
+            return new XPathToSQL2Converter().convert(xpath);
+        }
+        String sql2 = statements.getIfPresent(xpath);
+        if (sql2 != null) {
+            statementHits.incrementAndGet();
+            return sql2;
+        }
+        statementMisses.incrementAndGet();
+        try {
+            return statements.get(xpath, new Callable<String>() {
+                @Override
+                public String call() throws ParseException {
+                    return new XPathToSQL2Converter().convert(xpath);
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the plan selection for the given key.
+     *
+     * @param key the key, which includes the statement and the shape of the
+     *            bind variables
+     * @return the selection, or null if not cached
+     */
+    @Nullable
+    PlanSelection getPlan(@NotNull String key) {
+        if (!plansEnabled) {
+            return null;
+        }
+        PlanSelection p = plans.getIfPresent(key);
+        if (p != null && p.generation == generation.get()) {
+            planHits.incrementAndGet();
+            return p;
+        }
+        planMisses.incrementAndGet();
+        return null;
+    }
+
+    void putPlan(@NotNull String key, @NotNull String indexName, @Nullable String planName) {
+        if (plansEnabled) {
+            plans.put(key, new PlanSelection(indexName, planName, generation.get()));
+        }
+    }
+
+    /**
+     * Remove a plan selection that turned out to be no longer usable.
+     *
+     * @param key the key
+     */
+    void removePlan(@NotNull String key) {
+        planInvalid.incrementAndGet();
+        plans.invalidate(key);
+    }
+
+    /**
+     * Discard all plan selections, for example after index definitions
+     * changed. Plan selections that are computed concurrently with this call
+     * are not used either.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        plans.invalidateAll();
+    }
+
+    public long getStatementHitCount() {
+        return statementHits.get();
+    }
+
+    public long getStatementMissCount() {
+        return statementMisses.get();
+    }
+
+    public long getPlanHitCount() {
+        return planHits.get();
+    }
+
+    public long getPlanMissCount() {
+        return planMisses.get();
+    }
+
+    public long getPlanInvalidCount() {
+        return planInvalid.get();
+    }
+
+    @Override
+    public String toString() {
+        return "{\"statementHits\":" + statementHits.get() +
+                ",\"statementMisses\":" + statementMisses.get() +
+                ",\"statementHitRate\":" + hitRate(statementHits.get(), statementMisses.get()) +
+                ",\"planHits\":" + planHits.get() +
+                ",\"planMisses\":" + planMisses.get() +
+                ",\"planHitRate\":" + hitRate(planHits.get(), planMisses.get()) +
+                ",\"planInvalid\":" + planInvalid.get() +
+                ",\"statements\":" + statements.size() +
+                ",\"plans\":" + plans.size() + "}";
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * The index and plan selected for a query.
+     */
+    static final class PlanSelection {
+
+        final String indexName;
+
+        final String planName;
+
+        final long generation;
+
+        PlanSelection(String indexName, String planName, long generation) {
+            this.indexName = indexName;
+            this.planName = planName;
+            this.generation = generation;
+        }
+    }
+}
@@ -16,18 +16,27 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.ResultRow;
 import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.query.ast.ColumnImpl;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * A query result row that keeps all data (for this row only) in memory.
@@ -277,4 +286,116 @@ public class ResultRowImpl implements ResultRow {
         return new ResultRowImpl(delegate.query, delegate.trees, mappedVals,
                 delegate.distinctValues, delegate.orderValues);
     }
-}
\ No newline at end of file
+
+    /**
+     * Get a serializer for the rows of the given query, used to sort rows on
+     * disk. Rows with binary values can not be serialized.
+     *
+     * @param query the query
+     * @param distinctValues the distinct columns of the rows
+     * @return the serializer
+     */
+    static FilterIterators.RowSerializer<ResultRowImpl> getSerializer(
+            final Query query, final boolean[] distinctValues) {
+        return new FilterIterators.RowSerializer<ResultRowImpl>() {
+
+            @Override
+            public String serialize(@NotNull ResultRowImpl row) {
+                JsopBuilder buff = new JsopBuilder().array().array();
+                for (Tree t : row.trees) {
+                    buff.value(t == null ? null : t.getPath());
+                }
+                buff.endArray();
+                if (!writeValues(buff, row.values)
+                        || !writeValues(buff, row.orderValues)) {
+                    return null;
+                }
+                return buff.endArray().toString();
+            }
+
+            @NotNull
+            @Override
+            public ResultRowImpl deserialize(@NotNull String s) {
+                JsopTokenizer t = new JsopTokenizer(s);
+                t.read('[');
+                t.read('[');
+                ArrayList<Tree> trees = new ArrayList<Tree>();
+                if (!t.matches(']')) {
+                    do {
+                        trees.add(t.matches(JsopReader.NULL) ? null : query.getTree(t.readString()));
+                    } while (t.matches(','));
+                    t.read(']');
+                }
+                t.read(',');
+                PropertyValue[] values = readValues(t);
+                t.read(',');
+                PropertyValue[] orderValues = readValues(t);
+                t.read(']');
+                return new ResultRowImpl(query, trees.toArray(Tree.EMPTY_ARRAY),
+                        values, distinctValues, orderValues);
+            }
+        };
+    }
+
+    private static boolean writeValues(JsopBuilder buff, PropertyValue[] values) {
+        if (values == null) {
+            buff.value(null);
+            return true;
+        }
+        buff.array();
+        for (PropertyValue v : values) {
+            if (v == null) {
+                buff.value(null);
+                continue;
+            }
+            Type<?> type = v.getType();
+            if (type.tag() == PropertyType.BINARY) {
+                return false;
+            }
+            buff.array().value(type.tag()).value(type.isArray());
+            for (String s : v.getValue(Type.STRINGS)) {
+                buff.value(s);
+            }
+            buff.endArray();
+        }
+        buff.endArray();
+        return true;
+    }
+
+    private static PropertyValue[] readValues(JsopTokenizer t) {
+        if (t.matches(JsopReader.NULL)) {
+            return null;
+        }
+        t.read('[');
+        ArrayList<PropertyValue> values = new ArrayList<PropertyValue>();
+        if (!t.matches(']')) {
+            do {
+                values.add(readValue(t));
+            } while (t.matches(','));
+            t.read(']');
+        }
+        return values.toArray(new PropertyValue[0]);
+    }
+
+    private static PropertyValue readValue(JsopTokenizer t) {
+        if (t.matches(JsopReader.NULL)) {
+            return null;
+        }
+        t.read('[');
+        int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+        t.read(',');
+        boolean isArray = t.matches(JsopReader.TRUE);
+        if (!isArray) {
+            t.read(JsopReader.FALSE);
+        }
+        ArrayList<Object> list = new ArrayList<Object>();
+        Type<?> baseType = Type.fromTag(tag, false);
+        while (t.matches(',')) {
+            list.add(PropertyStates.createProperty("", t.readString(), tag).getValue(baseType));
+        }
+        t.read(']');
+        Object value = isArray ? list : list.get(0);
+        return PropertyValues.create(
+                PropertyStates.createProperty("", value, Type.fromTag(tag, isArray)));
+    }
+}
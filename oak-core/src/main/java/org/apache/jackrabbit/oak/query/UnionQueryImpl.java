@@ -308,6 +308,27 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
+        if (!measure && !FacetMerger.hasFacets(getColumns())) {
+            // merge the rows of all branches (including nested unions) at once,
+            // so that duplicates are only filtered once, and each row is
+            // compared with the rows of the other branches using a heap
+            List<Query> branches = new ArrayList<Query>();
+            addBranches(branches);
+            Iterator<ResultRowImpl> it;
+            if (orderBy == null) {
+                // a branch is only executed once all rows of the previous
+                // branches were read (if the limit is not reached before)
+                it = Iterators.concat(Iterators.transform(branches.iterator(), Query::getRows));
+            } else {
+                List<Iterator<ResultRowImpl>> list = new ArrayList<Iterator<ResultRowImpl>>();
+                for (Query q : branches) {
+                    list.add(q.getRows());
+                }
+                it = Iterators.mergeSorted(list, orderBy);
+            }
+            return FilterIterators.newCombinedFilter(it, distinct, limit, offset, null, settings);
+        }
+
         FacetMerger facetMerger = new FacetMerger(left, right);
 
         Iterator<ResultRowImpl> it;
@@ -370,6 +391,23 @@ public class UnionQueryImpl implements Query {
         return it;     
     }
 
+    /**
+     * Add the branches of this union. Nested unions are merged into this
+     * union if the result is the same, that is, if either this union removes
+     * duplicates, or both keep them.
+     *
+     * @param list the list of branches
+     */
+    private void addBranches(List<Query> list) {
+        for (Query q : new Query[] { left, right }) {
+            if (q instanceof UnionQueryImpl && (!unionAll || ((UnionQueryImpl) q).unionAll)) {
+                ((UnionQueryImpl) q).addBranches(list);
+            } else {
+                list.add(q);
+            }
+        }
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
@@ -481,7 +519,13 @@ public class UnionQueryImpl implements Query {
             return rightIterator;
         }
 
-        private boolean hasFacets(String[] columnNames) {
+        static boolean hasFacets(ColumnImpl[] columns) {
+            String[] columnNames = new String[columns.length];
+            Arrays.setAll(columnNames, i -> columns[i].getColumnName());
+            return hasFacets(columnNames);
+        }
+
+        private static boolean hasFacets(String[] columnNames) {
             for (String c : columnNames) {
                 if (c.startsWith(QueryConstants.REP_FACET + "(")) {
                     return true;
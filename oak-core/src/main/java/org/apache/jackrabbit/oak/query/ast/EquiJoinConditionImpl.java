@@ -60,6 +60,38 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
         selector2 = source.getExistingSelector(selector2Name);
     }
 
+    /**
+     * Get the name of the property of the given selector.
+     *
+     * @param s the selector
+     * @return the property name, or null if the selector is not part of this
+     *         condition
+     */
+    String getPropertyName(SelectorImpl s) {
+        if (s == selector1) {
+            return property1Name;
+        } else if (s == selector2) {
+            return property2Name;
+        }
+        return null;
+    }
+
+    /**
+     * Get the selector that is joined with the given selector.
+     *
+     * @param s the selector
+     * @return the other selector, or null if the selector is not part of this
+     *         condition
+     */
+    SelectorImpl getJoinedSelector(SelectorImpl s) {
+        if (s == selector1) {
+            return selector2;
+        } else if (s == selector2) {
+            return selector1;
+        }
+        return null;
+    }
+
     @Override
     public boolean evaluate() {
         // 6.7.8 EquiJoinCondition
@@ -16,19 +16,43 @@ package org.apache.jackrabbit.oak.query.ast;
 import static org.apache.jackrabbit.oak.query.ast.AstElementFactory.copyElementAndCheckReference;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Strategy;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A join. This object contains the left hand side source, the right hand side
  * source, the join type, and the join condition.
  */
 public class JoinImpl extends SourceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JoinImpl.class);
+
+    /**
+     * The maximum number of rows of the right hand side that are kept in
+     * memory for a hash join. If there are more rows, the join falls back to
+     * a nested loop. Set to 0 to disable hash joins.
+     */
+    static final long HASH_JOIN_MAX_ROWS = Long.getLong("oak.query.hashJoinMaxRows", 10000);
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +66,14 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    /**
+     * The rows of the right hand side, for a hash join (null if not yet read,
+     * or if the join falls back to a nested loop).
+     */
+    private HashTable hashTable;
+    private boolean hashJoinFailed;
+    private Iterator<IndexRow> hashMatches;
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +139,9 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (isHashJoin()) {
+            buff.append(" /* hash join */");
+        }
         return buff.toString();
     }
 
@@ -176,6 +211,10 @@ public class JoinImpl extends SourceImpl {
         applyJoinConditions();
         left.prepare(joinPlan.getLeftPlan());
         right.prepare(joinPlan.getRightPlan());
+        if (joinPlan.getStrategy() == Strategy.HASH) {
+            ((SelectorImpl) right).prepareHashJoin(
+                    (SelectorExecutionPlan) joinPlan.getRightPlan());
+        }
     }
 
     @Override
@@ -191,10 +230,61 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan leftPlan = left.prepare();
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
-        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        SelectorExecutionPlan hashPlan = getHashJoinPlan(leftPlan, rightPlan);
+        if (hashPlan != null) {
+            ((SelectorImpl) right).prepareHashJoin(hashPlan);
+            cost = leftPlan.getEstimatedCost() + hashPlan.getEstimatedCost();
+            plan = new JoinExecutionPlan(this, leftPlan, hashPlan, cost, Strategy.HASH);
+        } else {
+            plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        }
         return plan;
     }
 
+    /**
+     * Get the plan to read the right hand side once, if a hash join is
+     * possible and cheaper than querying the right hand side for each row of
+     * the left hand side.
+     *
+     * @param leftPlan the plan of the left hand side
+     * @param rightPlan the plan of the right hand side, for a nested loop
+     * @return the plan for the right hand side, or null to use a nested loop
+     */
+    private SelectorExecutionPlan getHashJoinPlan(ExecutionPlan leftPlan, ExecutionPlan rightPlan) {
+        if (HASH_JOIN_MAX_ROWS <= 0 || !(right instanceof SelectorImpl)
+                || !(joinCondition instanceof EquiJoinConditionImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        if (((EquiJoinConditionImpl) joinCondition).getPropertyName(s) == null) {
+            return null;
+        }
+        SelectorExecutionPlan p = s.getUnrestrictedPlan();
+        if (p.getIndex() == null || p.getEstimatedCost() == Double.POSITIVE_INFINITY
+                || getEstimatedRowCount(p) > HASH_JOIN_MAX_ROWS) {
+            return null;
+        }
+        double leftCost = leftPlan.getEstimatedCost();
+        double nestedLoopCost = leftCost + 
+                getEstimatedRowCount(leftPlan) * rightPlan.getEstimatedCost();
+        double hashCost = leftCost + p.getEstimatedCost();
+        return hashCost < nestedLoopCost ? p : null;
+    }
+
+    private static double getEstimatedRowCount(ExecutionPlan p) {
+        if (p instanceof SelectorExecutionPlan) {
+            IndexPlan indexPlan = ((SelectorExecutionPlan) p).getIndexPlan();
+            if (indexPlan != null) {
+                return indexPlan.getEstimatedEntryCount();
+            }
+        }
+        return p.getEstimatedCost();
+    }
+
+    private boolean isHashJoin() {
+        return plan != null && plan.getStrategy() == Strategy.HASH;
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -209,6 +299,12 @@ public class JoinImpl extends SourceImpl {
         this.rootState = rootState;
         leftNeedExecute = true;
         end = false;
+        hashTable = null;
+        hashJoinFailed = false;
+        hashMatches = null;
+        if (isHashJoin()) {
+            ((SelectorImpl) right).setJoinConditionDeferred(true);
+        }
     }
 
     @Override
@@ -255,11 +351,11 @@ public class JoinImpl extends SourceImpl {
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                executeRight();
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
-            if (!right.next()) {
+            if (!nextRight()) {
                 leftNeedNext = true;
             } else {
                 if (joinCondition.evaluate()) {
@@ -275,6 +371,135 @@ public class JoinImpl extends SourceImpl {
         }
     }
     
+    private void executeRight() {
+        if (!isHashJoin() || hashJoinFailed) {
+            right.execute(rootState);
+            return;
+        }
+        if (hashTable == null) {
+            hashTable = readHashTable();
+            if (hashTable == null) {
+                // too many rows: query the right hand side for each row
+                hashJoinFailed = true;
+                ((SelectorImpl) right).setJoinConditionDeferred(false);
+                right.execute(rootState);
+                return;
+            }
+        }
+        hashMatches = hashTable.getMatches().iterator();
+    }
+
+    private boolean nextRight() {
+        if (hashMatches == null) {
+            return right.next();
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        if (!hashMatches.hasNext()) {
+            s.setCurrentRow(null);
+            return false;
+        }
+        s.setCurrentRow(hashMatches.next());
+        return true;
+    }
+
+    /**
+     * Read all rows of the right hand side.
+     *
+     * @return the rows, or null if there are too many
+     */
+    private HashTable readHashTable() {
+        SelectorImpl s = (SelectorImpl) right;
+        EquiJoinConditionImpl c = (EquiJoinConditionImpl) joinCondition;
+        long max = Math.min(HASH_JOIN_MAX_ROWS, s.getQuery().getSettings().getLimitInMemory());
+        HashTable table = new HashTable(
+                c.getJoinedSelector(s), c.getPropertyName(c.getJoinedSelector(s)));
+        String propertyName = c.getPropertyName(s);
+        s.execute(rootState);
+        while (s.next()) {
+            if (table.size() >= max) {
+                LOG.debug("More than {} rows for {}, using a nested loop join", max, s);
+                s.setCurrentRow(null);
+                return null;
+            }
+            table.add(s.currentProperty(propertyName), s.getCurrentRow());
+        }
+        return table;
+    }
+
+    /**
+     * The rows of the right hand side of a hash join, grouped by the value of
+     * the join property. Only rows with a single string, reference, or weak
+     * reference value are grouped, because converting such values does not
+     * change them. Candidate rows are still checked with the join condition.
+     */
+    private static class HashTable {
+
+        private final SelectorImpl joined;
+        private final String joinedPropertyName;
+        private final List<IndexRow> rows = new ArrayList<IndexRow>();
+        private final Map<String, List<IndexRow>> rowsByValue = new HashMap<String, List<IndexRow>>();
+        private boolean allGrouped = true;
+
+        HashTable(SelectorImpl joined, String joinedPropertyName) {
+            this.joined = joined;
+            this.joinedPropertyName = joinedPropertyName;
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        void add(PropertyValue value, IndexRow row) {
+            if (value == null) {
+                // can not match
+                return;
+            }
+            rows.add(row);
+            String key = getKey(value);
+            if (key == null) {
+                allGrouped = false;
+                return;
+            }
+            List<IndexRow> list = rowsByValue.get(key);
+            if (list == null) {
+                list = new ArrayList<IndexRow>(1);
+                rowsByValue.put(key, list);
+            }
+            list.add(row);
+        }
+
+        /**
+         * Get the rows that may match the current row of the joined selector.
+         */
+        List<IndexRow> getMatches() {
+            PropertyValue value = joined.currentProperty(joinedPropertyName);
+            if (value == null) {
+                return Collections.emptyList();
+            }
+            String key = getKey(value);
+            if (key == null || !allGrouped) {
+                return rows;
+            }
+            List<IndexRow> list = rowsByValue.get(key);
+            return list == null ? Collections.<IndexRow>emptyList() : list;
+        }
+
+        private static String getKey(PropertyValue value) {
+            if (value.isArray()) {
+                return null;
+            }
+            switch (value.getType().tag()) {
+            case PropertyType.STRING:
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+                return value.getValue(Type.STRING);
+            default:
+                return null;
+            }
+        }
+
+    }
+
     @Override
     public boolean isOuterJoinRightHandSide() {
         return left.isOuterJoinRightHandSide() || right.isOuterJoinRightHandSide();
@@ -22,7 +22,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -75,6 +78,13 @@ public class SelectorImpl extends SourceImpl {
     private static final Logger LOG = LoggerFactory.getLogger(SelectorImpl.class);
     
     private static final Boolean TIMER_DISABLED = Boolean.getBoolean("oak.query.timerDisabled");
+
+    /**
+     * The number of rows read ahead from the index to check access, if the
+     * index returns the stored property values.
+     */
+    private static final int ACCESS_CHECK_BATCH_SIZE =
+            Integer.getInteger("oak.query.accessCheckBatchSize", 100);
     
     // The sample rate. Must be a power of 2.
     private static final Long TIMER_SAMPLE_RATE = Long.getLong("oak.query.timerSampleRate", 0x100);
@@ -170,6 +180,26 @@ public class SelectorImpl extends SourceImpl {
      * These constraints are collected during the prepare phase.
      */
     private final List<ConstraintImpl> selectorConstraints = newArrayList();
+
+    /**
+     * Whether the join condition is evaluated by the join only, and not used
+     * to restrict and filter the rows of this selector. This is the case if
+     * the rows are read once, for a hash join.
+     */
+    private boolean joinConditionDeferred;
+
+    /**
+     * Whether the index returns the stored property values of the nodes, so
+     * that they don't need to be read from the node (see
+     * {@link IndexPlan#includesStoredValues()}).
+     */
+    private boolean includesStoredValues;
+
+    /**
+     * The trees of the rows read ahead by the {@link AccessCheckCursor}, by
+     * path.
+     */
+    private final HashMap<String, CachedTree> checkedTrees = new HashMap<String, CachedTree>();
     
     private Cursor cursor;
     private IndexRow currentRow;
@@ -272,6 +302,7 @@ public class SelectorImpl extends SourceImpl {
         selectorConstraints.clear();
         isParent = false;
         joinCondition = null;
+        joinConditionDeferred = false;
         allJoinConditions.clear();
     }
     
@@ -308,6 +339,43 @@ public class SelectorImpl extends SourceImpl {
         plan = query.getBestSelectorExecutionPlan(createFilter(true));
         return plan;
     }
+
+    /**
+     * Get the best plan to read the rows of this selector using an index,
+     * independent of the current row of the joined selector. The plan of
+     * this selector is not changed.
+     *
+     * @return the plan
+     */
+    SelectorExecutionPlan getUnrestrictedPlan() {
+        boolean old = joinConditionDeferred;
+        joinConditionDeferred = true;
+        try {
+            return query.getBestIndexedSelectorExecutionPlan(createFilter(true));
+        } finally {
+            joinConditionDeferred = old;
+        }
+    }
+
+    /**
+     * Use a plan that reads the rows of this selector independent of the
+     * joined selector. The join condition is then only evaluated by the join.
+     *
+     * @param p the plan, as returned by {@link #getUnrestrictedPlan()}
+     */
+    void prepareHashJoin(SelectorExecutionPlan p) {
+        joinConditionDeferred = true;
+        plan = p;
+    }
+
+    /**
+     * Set whether the join condition is evaluated by the join only.
+     *
+     * @param deferred the new value
+     */
+    void setJoinConditionDeferred(boolean deferred) {
+        joinConditionDeferred = deferred;
+    }
     
     public SelectorExecutionPlan getExecutionPlan() {
         return plan;
@@ -348,6 +416,8 @@ public class SelectorImpl extends SourceImpl {
     private void executeInternal(NodeState rootState) {
         QueryIndex index = plan.getIndex();
         timerDuration = null;
+        includesStoredValues = false;
+        checkedTrees.clear();
         if (index == null) {
             cursor = Cursors.newPathCursor(new ArrayList<String>(), query.getSettings());
             planIndexName = "traverse";
@@ -356,9 +426,15 @@ public class SelectorImpl extends SourceImpl {
         IndexPlan p = plan.getIndexPlan();
         if (p != null) {
             planIndexName = p.getPlanName();
+            includesStoredValues = p.includesStoredValues();
             p.setFilter(createFilter(false));
             AdvancedQueryIndex adv = (AdvancedQueryIndex) index;
             cursor = adv.query(p, rootState);
+            if (includesStoredValues && !isParent) {
+                // the nodes are not read for the property values,
+                // so the access checks are the main cost per row
+                cursor = new AccessCheckCursor(cursor);
+            }
         } else {
             FilterImpl f = createFilter(false);
             planIndexName = index.getIndexName(f, rootState);
@@ -451,7 +527,7 @@ public class SelectorImpl extends SourceImpl {
     public FilterImpl createFilter(boolean preparing) {
         FilterImpl f = new FilterImpl(this, query.getStatement(), query.getSettings());
         f.setPreparing(preparing);
-        if (joinCondition != null) {
+        if (joinCondition != null && !joinConditionDeferred) {
             joinCondition.restrict(f);
         }
         // rep:excerpt handling: create a (fake) restriction
@@ -547,6 +623,7 @@ public class SelectorImpl extends SourceImpl {
                 // because not checking would reveal existence
                 // of the child node
                 if (!getCachedTree(currentRow.getPath()).exists()) {
+                    query.getQueryExecutionStats().notReadable(1);
                     continue;
                 }
             }
@@ -591,7 +668,7 @@ public class SelectorImpl extends SourceImpl {
                 return false;
             }
         }
-        if (joinCondition != null && !joinCondition.evaluate()) {
+        if (joinCondition != null && !joinConditionDeferred && !joinCondition.evaluate()) {
             return false;
         }
         return true;
@@ -625,7 +702,26 @@ public class SelectorImpl extends SourceImpl {
      * @return the path
      */
     public String currentPath() {
-        return cursor == null ? null : currentRow.getPath();
+        return currentRow == null ? null : currentRow.getPath();
+    }
+
+    /**
+     * Get the current row, so that it can be set again later.
+     *
+     * @return the current row, or null
+     */
+    @Nullable
+    IndexRow getCurrentRow() {
+        return currentRow;
+    }
+
+    /**
+     * Set the current row to a row that was returned by this selector before.
+     *
+     * @param row the row, or null
+     */
+    void setCurrentRow(@Nullable IndexRow row) {
+        currentRow = row;
     }
     
     /**
@@ -656,7 +752,8 @@ public class SelectorImpl extends SourceImpl {
     @NotNull
     private CachedTree getCachedTree(@NotNull  String path) {
         if (cachedTree == null || !cachedTree.denotes(path)) {
-            cachedTree = new CachedTree(path, query);
+            CachedTree checked = checkedTrees.get(path);
+            cachedTree = checked != null ? checked : new CachedTree(path, query);
         }
         return cachedTree;
     }
@@ -761,6 +858,15 @@ public class SelectorImpl extends SourceImpl {
                 }
             }
             oakPropertyName = PathUtils.getName(oakPropertyName);
+        } else if (includesStoredValues && t != null && currentRow != null) {
+            PropertyValue v = currentRow.getValue(oakPropertyName);
+            // the value is only used if the property is readable
+            if (v != null && t.hasProperty(oakPropertyName)) {
+                if (propertyType != null && v.getType().tag() != propertyType) {
+                    return null;
+                }
+                return v;
+            }
         }
         return currentOakProperty(t, oakPropertyName, propertyType);
     }
@@ -922,6 +1028,61 @@ public class SelectorImpl extends SourceImpl {
         return new SelectorImpl(nodeTypeInfo, selectorName);
     }
 
+    /**
+     * A cursor that reads the rows in batches, and checks access to the nodes
+     * of a batch in the order of their paths. That way, nodes with the same
+     * ancestors are checked one after the other, and the ancestors are only
+     * checked once per batch, even if the index returns the rows in another
+     * order (for example sorted by a property). The rows are still returned
+     * in the order of the index.
+     */
+    private final class AccessCheckCursor extends Cursors.AbstractCursor {
+
+        private final Cursor base;
+        private final ArrayDeque<IndexRow> rows = new ArrayDeque<IndexRow>();
+
+        AccessCheckCursor(Cursor base) {
+            this.base = base;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !rows.isEmpty() || base.hasNext();
+        }
+
+        @Override
+        public IndexRow next() {
+            if (rows.isEmpty()) {
+                readBatch();
+            }
+            return rows.remove();
+        }
+
+        private void readBatch() {
+            ArrayList<String> paths = new ArrayList<String>();
+            while (rows.size() < ACCESS_CHECK_BATCH_SIZE && base.hasNext()) {
+                IndexRow row = base.next();
+                rows.add(row);
+                if (!row.isVirtualRow()) {
+                    paths.add(row.getPath());
+                }
+            }
+            Collections.sort(paths);
+            checkedTrees.clear();
+            for (String path : paths) {
+                if (!checkedTrees.containsKey(path)) {
+                    checkedTrees.put(path, new CachedTree(path, query));
+                }
+            }
+        }
+
+        @Override
+        public long getSize(SizePrecision precision, long max) {
+            return base.getSize(precision, max);
+        }
+
+    }
+
     private static final class CachedTree {
 
         private final String path;
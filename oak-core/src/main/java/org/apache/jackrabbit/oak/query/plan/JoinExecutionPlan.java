@@ -24,15 +24,40 @@ import org.apache.jackrabbit.oak.query.ast.JoinImpl;
  */
 public class JoinExecutionPlan implements ExecutionPlan {
 
+    /**
+     * How the rows of the right hand side are found.
+     */
+    public enum Strategy {
+
+        /**
+         * The right hand side is queried for each row of the left hand side,
+         * restricted by the join condition.
+         */
+        NESTED_LOOP,
+
+        /**
+         * The right hand side is read once, and the rows are grouped by the
+         * value of the join property.
+         */
+        HASH
+    }
+
     private final JoinImpl join;
     private final ExecutionPlan leftPlan, rightPlan;
     private final double estimatedCost;
+    private final Strategy strategy;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, estimatedCost, Strategy.NESTED_LOOP);
+    }
+
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan,
+            double estimatedCost, Strategy strategy) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
         this.estimatedCost = estimatedCost;
+        this.strategy = strategy;
     }
     
     @Override
@@ -52,4 +77,8 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
 }
@@ -39,6 +39,20 @@ public class QueryStatsData {
      */
     private long totalRowsScanned;
     private long maxRowsScanned;
+
+    /**
+     * Rows returned by the index, but skipped because the node is not
+     * readable (or does not exist any more).
+     */
+    private long totalRowsNotReadable;
+
+    /**
+     * Rows sorted in memory or on disk.
+     */
+    private long totalRowsSorted;
+    private long maxRowsSorted;
+    private long sortSpillBytes;
+    private long sortNanos;
     private long planNanos;
     private long readNanos;
     private long maxTimeNanos;
@@ -91,6 +105,22 @@ public class QueryStatsData {
         return totalRowsScanned;
     }
 
+    public long getTotalRowsSorted() {
+        return totalRowsSorted;
+    }
+
+    public long getTotalRowsNotReadable() {
+        return totalRowsNotReadable;
+    }
+
+    public long getSortSpillBytes() {
+        return sortSpillBytes;
+    }
+
+    public long getSortNanos() {
+        return sortNanos;
+    }
+
     public String getLanguage() {
         return language;
     }
@@ -121,6 +151,11 @@ public class QueryStatsData {
             key("maxRowsRead").value(maxRowsRead).
             key("totalRowsScanned").value(totalRowsScanned).
             key("maxRowsScanned").value(maxRowsScanned).
+            key("totalRowsNotReadable").value(totalRowsNotReadable).
+            key("totalRowsSorted").value(totalRowsSorted).
+            key("maxRowsSorted").value(maxRowsSorted).
+            key("sortSpillBytes").value(sortSpillBytes).
+            key("sortNanos").value(sortNanos).
             key("planNanos").value(planNanos).
             key("readNanos").value(readNanos).
             key("maxTimeNanos").value(maxTimeNanos).
@@ -181,6 +216,17 @@ public class QueryStatsData {
             totalRowsScanned += count;
             maxRowsScanned = Math.max(maxRowsScanned, max);
         }
+
+        public void notReadable(long count) {
+            totalRowsNotReadable += count;
+        }
+
+        public void sort(long count, long spillBytes, long nanos) {
+            totalRowsSorted += count;
+            maxRowsSorted = Math.max(maxRowsSorted, count);
+            sortSpillBytes += spillBytes;
+            sortNanos += nanos;
+        }
     }
 
 }
\ No newline at end of file
@@ -54,5 +54,17 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    /**
+     * Get the number of hits and misses of the cache of converted statements
+     * and of the cache of plan selections.
+     *
+     * @return the cache statistics as Json
+     */
+    @Description("Get the hit rates of the statement and plan caches as Json.")
+    String getQueryCacheStats();
+
+    @Description("Discard the cached plan selections, so that queries are planned again.")
+    void invalidatePlanCache();
     
 }
@@ -105,6 +105,16 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         return captureStackTraces;
     }
     
+    @Override
+    public String getQueryCacheStats() {
+        return settings.getQueryPlanCache().toString();
+    }
+
+    @Override
+    public void invalidatePlanCache() {
+        settings.getQueryPlanCache().invalidate();
+    }
+
     @Override
     public String asJson() {
         ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>(statistics.values());
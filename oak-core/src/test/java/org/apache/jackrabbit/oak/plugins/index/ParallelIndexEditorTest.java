@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeBuilder;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.DefaultEditor;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class ParallelIndexEditorTest {
+
+    private static final String[] INDEXES = {"foo", "bar", "baz"};
+
+    @Test
+    public void sameResultAsSerial() throws Exception {
+        NodeStore serial = new MemoryNodeStore();
+        NodeStore parallel = new MemoryNodeStore();
+        AsyncIndexUpdate serialAsync = new AsyncIndexUpdate("async", serial, new PropertyIndexEditorProvider());
+        AsyncIndexUpdate parallelAsync = new AsyncIndexUpdate("async", parallel, new PropertyIndexEditorProvider());
+        parallelAsync.setParallelEditors(2);
+        for (int round = 0; round < 4; round++) {
+            for (NodeStore store : new NodeStore[] {serial, parallel}) {
+                NodeBuilder builder = store.getRoot().builder();
+                if (round == 0) {
+                    for (String name : INDEXES) {
+                        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                                name, true, false, ImmutableSet.of(name), null)
+                                .setProperty(ASYNC_PROPERTY_NAME, "async");
+                    }
+                }
+                change(builder, round);
+                store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            }
+            serialAsync.run();
+            parallelAsync.run();
+            assertFalse(parallelAsync.getIndexStats().isFailing());
+            for (String name : INDEXES) {
+                Set<String> expected = getEntries(getIndex(serial, name), "");
+                assertFalse(expected.isEmpty());
+                assertEquals("round " + round + " index " + name,
+                        expected, getEntries(getIndex(parallel, name), ""));
+            }
+        }
+        serialAsync.close();
+        parallelAsync.close();
+    }
+
+    @Test
+    public void failure() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        builder.child("a").setProperty("foo", "x");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, new CompositeIndexEditorProvider(
+                new PropertyIndexEditorProvider(), new FailingEditorProvider()));
+        async.setParallelEditors(2);
+        async.run();
+        assertFalse(async.getIndexStats().isFailing());
+
+        builder = store.getRoot().builder();
+        for (int i = 0; i < ParallelIndexEditor.BATCH_SIZE * 4; i++) {
+            builder.child("b" + i).setProperty("foo", "y");
+        }
+        builder.child("c").setProperty("fail", true);
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        NodeState before = getIndex(store, "foo");
+        async.run();
+        assertTrue(async.getIndexStats().isFailing());
+        // nothing is written if one of the editors failed
+        assertEquals(before, getIndex(store, "foo"));
+        async.close();
+    }
+
+    @Test
+    public void blobsCreatedByDefinition() throws Exception {
+        final Blob blob = new ArrayBasedBlob(new byte[0]);
+        NodeBuilder definition = new MemoryNodeBuilder(EMPTY_NODE) {
+            @Override
+            public Blob createBlob(InputStream stream) {
+                return blob;
+            }
+        };
+        NodeBuilder detached = ParallelIndexEditor.detach(definition);
+        assertSame(blob, detached.createBlob(new ByteArrayInputStream(new byte[1])));
+        NodeBuilder data = detached.child(":data").child("file");
+        assertSame(blob, data.createBlob(new ByteArrayInputStream(new byte[1])));
+        // the changes are only applied to the definition when merging
+        assertFalse(definition.hasChildNode(":data"));
+    }
+
+    private static void change(NodeBuilder builder, int round) {
+        for (int i = 0; i < 200; i++) {
+            NodeBuilder n = builder.child("n" + (i % 10)).child("c" + i);
+            switch ((i + round) % 4) {
+            case 0:
+                n.setProperty("foo", "v" + (i % 7));
+                n.setProperty("bar", "w" + round);
+                break;
+            case 1:
+                n.removeProperty("foo");
+                n.setProperty("baz", "z" + (i % 3));
+                break;
+            case 2:
+                n.remove();
+                break;
+            default:
+                n.setProperty("bar", "w" + i);
+                n.child("d").setProperty("foo", "v" + round);
+            }
+        }
+    }
+
+    private static NodeState getIndex(NodeStore store, String name) {
+        return store.getRoot().getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode(name).getChildNode(INDEX_CONTENT_NODE_NAME);
+    }
+
+    /**
+     * The indexed paths of all values (ignoring the approximate counters,
+     * which contain random property names).
+     */
+    private static Set<String> getEntries(NodeState node, String path) {
+        Set<String> entries = new TreeSet<String>();
+        if (node.getBoolean("match")) {
+            entries.add(path);
+        }
+        for (ChildNodeEntry e : node.getChildNodeEntries()) {
+            entries.addAll(getEntries(e.getNodeState(), path + "/" + e.getName()));
+        }
+        return entries;
+    }
+
+    private static class FailingEditorProvider implements IndexEditorProvider {
+
+        @Override
+        public Editor getIndexEditor(@NotNull String type, @NotNull NodeBuilder definition,
+                @NotNull NodeState root, @NotNull IndexUpdateCallback callback) {
+            if (!"property".equals(type)) {
+                return null;
+            }
+            return new DefaultEditor() {
+                @Override
+                public void propertyAdded(PropertyState after) throws CommitFailedException {
+                    if ("fail".equals(after.getName())) {
+                        throw new CommitFailedException("Test", 1, "Failed");
+                    }
+                }
+
+                @Override
+                public Editor childNodeAdded(String name, NodeState after) {
+                    return this;
+                }
+            };
+        }
+    }
+
+}
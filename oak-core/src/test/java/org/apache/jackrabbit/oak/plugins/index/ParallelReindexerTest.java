@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BLOOM_FILTER_ENTRIES;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback.NOOP;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.index.ParallelReindexer.Partitions;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexBloomFilter;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class ParallelReindexerTest {
+
+    private static final EditorHook SERIAL = createHook(0);
+
+    private static final EditorHook PARALLEL = createHook(3);
+
+    @Test
+    public void sameResultAsSerial() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, false, ImmutableSet.of("foo"), null);
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "bar", true, false, ImmutableSet.of("bar"), null)
+                .setProperty(BLOOM_FILTER_ENTRIES, 1000L);
+        builder.setProperty("foo", "root");
+        for (int i = 0; i < 7; i++) {
+            NodeBuilder top = builder.child("t" + i);
+            top.setProperty("foo", "top");
+            for (int j = 0; j < 50 * (i + 1); j++) {
+                NodeBuilder n = top.child("n" + j);
+                n.setProperty("foo", "v" + (j % 5));
+                n.child("c").setProperty("bar", "w" + (i * j % 11));
+            }
+        }
+        NodeState before = builder.getBaseState();
+        NodeState after = builder.getNodeState();
+        NodeState serial = SERIAL.processCommit(before, after, CommitInfo.EMPTY);
+        NodeState parallel = PARALLEL.processCommit(before, after, CommitInfo.EMPTY);
+        for (String name : new String[] {"foo", "bar"}) {
+            Set<String> expected = getEntries(getIndex(serial, name), "");
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, getEntries(getIndex(parallel, name), ""));
+        }
+
+        // the root node is indexed once
+        assertTrue(getEntries(getIndex(parallel, "foo"), "").contains("/root"));
+
+        // the bloom filters of the partitions are merged
+        PropertyIndexBloomFilter filter = PropertyIndexBloomFilter.get(
+                parallel.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("bar"));
+        assertNotNull(filter);
+        for (int i = 0; i < 11; i++) {
+            assertTrue(filter.mightContain("w" + i));
+        }
+
+        // reindexing with the reindex flag
+        builder = parallel.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").setProperty(REINDEX_PROPERTY_NAME, true);
+        builder.child("t0").child("n0").setProperty("foo", "changed");
+        NodeState reindexed = PARALLEL.processCommit(parallel, builder.getNodeState(), CommitInfo.EMPTY);
+        Set<String> entries = getEntries(getIndex(reindexed, "foo"), "");
+        assertTrue(entries.contains("/changed/t0/n0"));
+        assertFalse(entries.contains("/v0/t0/n0"));
+        assertEquals(getEntries(getIndex(parallel, "foo"), "").size(), entries.size());
+    }
+
+    @Test
+    public void uniqueIndexIsReindexedSerially() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, true, ImmutableSet.of("foo"), null);
+        builder.child("a").child("x").setProperty("foo", "same");
+        builder.child("b").child("x").setProperty("foo", "same");
+        try {
+            PARALLEL.processCommit(builder.getBaseState(), builder.getNodeState(), CommitInfo.EMPTY);
+            fail();
+        } catch (CommitFailedException e) {
+            assertEquals(30, e.getCode());
+        }
+    }
+
+    @Test
+    public void partitions() {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 10; i++) {
+            builder.child("t" + i);
+        }
+        builder.child(":hidden");
+        Partitions partitions = Partitions.create(builder.getNodeState(), 4);
+        assertEquals(4, partitions.count);
+        assertEquals(10, partitions.subtrees.size());
+        int[] sizes = new int[partitions.count];
+        for (int p : partitions.subtrees.values()) {
+            sizes[p]++;
+        }
+        for (int size : sizes) {
+            assertTrue(size >= 2);
+        }
+        assertEquals(ImmutableSet.of("/"), partitions.ancestors);
+
+        // fewer subtrees than threads
+        partitions = Partitions.create(EMPTY_NODE.builder().child("a").getNodeState(), 4);
+        assertEquals(1, partitions.count);
+    }
+
+    private static EditorHook createHook(int threads) {
+        return new EditorHook((before, after, builder, info) -> {
+            IndexUpdate update = new IndexUpdate(new PropertyIndexEditorProvider(),
+                    null, after, builder, NOOP);
+            update.setParallelReindexThreads(threads);
+            return update;
+        });
+    }
+
+    private static NodeState getIndex(NodeState root, String name) {
+        return root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode(name)
+                .getChildNode(INDEX_CONTENT_NODE_NAME);
+    }
+
+    /**
+     * The indexed paths of all values (ignoring the approximate counters,
+     * which contain random property names).
+     */
+    private static Set<String> getEntries(NodeState node, String path) {
+        Set<String> entries = new TreeSet<String>();
+        if (node.getBoolean("match")) {
+            entries.add(path);
+        }
+        for (ChildNodeEntry e : node.getChildNodeEntries()) {
+            entries.addAll(getEntries(e.getNodeState(), path + "/" + e.getName()));
+        }
+        return entries;
+    }
+
+}
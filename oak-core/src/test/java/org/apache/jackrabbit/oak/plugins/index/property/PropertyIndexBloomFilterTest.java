@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.JcrConstants.NT_BASE;
+import static org.apache.jackrabbit.oak.InitialContentHelper.INITIAL_CONTENT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BLOOM_FILTER_ENTRIES;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexBloomFilter.BLOOM_NODE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.NodeStateNodeTypeInfoProvider;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.ast.NodeTypeInfo;
+import org.apache.jackrabbit.oak.query.ast.Operator;
+import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests property indexes with a bloom filter.
+ */
+public class PropertyIndexBloomFilterTest {
+
+    private static final int MANY = 100;
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    @Test
+    public void lookup() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(BLOOM_FILTER_ENTRIES, 1000L);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).setProperty("foo", "x" + i);
+        }
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertTrue(definition.getChildNode(BLOOM_NODE_NAME).exists());
+
+        FilterImpl f = createFilter(indexed);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(ImmutableSet.of("n" + i), find(lookup, "x" + i, f));
+        }
+        assertEquals(MANY, find(lookup, null, f).size());
+
+        long negative = PropertyIndexBloomFilter.getNegativeCount();
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(ImmutableSet.of(), find(lookup, "y" + i, f));
+        }
+        int missing = (int) (PropertyIndexBloomFilter.getNegativeCount() - negative);
+        // with 10 bits per entry, the false positive rate is about 1%
+        assertTrue("missing: " + missing, missing > MANY * 9 / 10);
+
+        // values added later are added to the filter
+        builder = indexed.builder();
+        for (int i = 0; i < MANY; i++) {
+            builder.child("m" + i).setProperty("foo", "y" + i);
+        }
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        lookup = new PropertyIndexLookup(indexed);
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(ImmutableSet.of("m" + i), find(lookup, "y" + i, f));
+        }
+    }
+
+    @Test
+    public void plan() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(BLOOM_FILTER_ENTRIES, 1000L);
+        NodeState before = builder.getNodeState();
+        builder.child("a").setProperty("foo", "abc");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+
+        FilterImpl f = createFilter(indexed);
+        f.restrictProperty("foo", Operator.EQUAL, PropertyValues.newString("abc"));
+        PropertyIndexPlan plan = new PropertyIndexPlan("foo", indexed, definition, f);
+        assertEquals("property foo = abc", plan.toString());
+        assertTrue(plan.execute().hasNext());
+
+        f = createFilter(indexed);
+        f.restrictProperty("foo", Operator.EQUAL, PropertyValues.newString("def"));
+        long negative = PropertyIndexBloomFilter.getNegativeCount();
+        plan = new PropertyIndexPlan("foo", indexed, definition, f);
+        assertEquals("property foo = def /* not indexed: 1 */", plan.toString());
+        assertEquals(PropertyIndexPlan.COST_OVERHEAD, plan.getCost(), 0);
+        // planning alone doesn't count as a lookup
+        assertEquals(negative, PropertyIndexBloomFilter.getNegativeCount());
+        Cursor c = plan.execute();
+        assertFalse(c.hasNext());
+        assertEquals(negative + 1, PropertyIndexBloomFilter.getNegativeCount());
+    }
+
+    @Test
+    public void unique() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, true, ImmutableSet.of("foo"), null)
+                .setProperty(BLOOM_FILTER_ENTRIES, 1000L);
+        NodeState before = builder.getNodeState();
+        builder.child("a").setProperty("foo", "abc");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+
+        builder = indexed.builder();
+        builder.child("b").setProperty("foo", "def");
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+
+        // duplicates of values from earlier commits
+        builder = indexed.builder();
+        builder.child("c").setProperty("foo", "def");
+        try {
+            HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+            fail();
+        } catch (CommitFailedException e) {
+            assertEquals(30, e.getCode());
+        }
+
+        // duplicates within the same commit
+        builder = indexed.builder();
+        builder.child("d").setProperty("foo", "ghi");
+        builder.child("e").setProperty("foo", ImmutableSet.of("jkl", "ghi"), Type.STRINGS);
+        try {
+            HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+            fail();
+        } catch (CommitFailedException e) {
+            assertEquals(30, e.getCode());
+        }
+    }
+
+    @Test
+    public void disable() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        NodeBuilder index = createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState before = builder.getNodeState();
+        builder.child("a").setProperty("foo", "abc");
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertFalse(definition.getChildNode(BLOOM_NODE_NAME).exists());
+
+        // enabling the filter requires a reindex
+        builder = indexed.builder();
+        index = builder.child(INDEX_DEFINITIONS_NAME).child("foo");
+        index.setProperty(BLOOM_FILTER_ENTRIES, 1000L);
+        builder.child("b").setProperty("foo", "def");
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertFalse(definition.getChildNode(BLOOM_NODE_NAME).exists());
+
+        builder = indexed.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").setProperty("reindex", true);
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        PropertyIndexBloomFilter filter = PropertyIndexBloomFilter.get(definition);
+        assertNotNull(filter);
+        assertTrue(filter.mightContain("abc"));
+        assertTrue(filter.mightContain("def"));
+
+        // the filter is removed when it is disabled
+        builder = indexed.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").removeProperty(BLOOM_FILTER_ENTRIES);
+        builder.child("c").setProperty("foo", "ghi");
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertFalse(definition.getChildNode(BLOOM_NODE_NAME).exists());
+    }
+
+    private static Set<String> find(PropertyIndexLookup lookup, String value, FilterImpl filter) {
+        return Sets.newHashSet(lookup.query(filter, "foo", value == null ? null
+                : PropertyValues.newString(value)));
+    }
+
+    private static FilterImpl createFilter(NodeState root) {
+        NodeTypeInfo type = new NodeStateNodeTypeInfoProvider(root).getNodeTypeInfo(NT_BASE);
+        SelectorImpl selector = new SelectorImpl(type, NT_BASE);
+        return new FilterImpl(selector, "SELECT * FROM [" + NT_BASE + "]", new QueryEngineSettings());
+    }
+
+}
@@ -28,7 +28,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate;
+import org.apache.jackrabbit.oak.plugins.index.CompositeIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
 import org.apache.jackrabbit.oak.InitialContent;
@@ -44,6 +47,7 @@ import org.junit.Test;
 
 import static java.util.Arrays.asList;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.STATISTICS_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
 import static org.junit.Assert.*;
 
@@ -114,6 +118,31 @@ public class PropertyIndexStatsTest {
         assertArray(cd, "paths", asList("/a/b/c"));
     }
 
+    @Test
+    public void valueStatistics() throws Exception{
+        prepareStore();
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        for (int i = 0; i < 10; i++) {
+            setProperty(builder, "/a/b" + i, "foo", i < 8 ? "x" : "y");
+        }
+        store.merge(builder, HOOK, CommitInfo.EMPTY);
+
+        CompositeData cd = mbean.getValueStatistics("/oak:index/foo");
+        assertEquals(-1L, cd.get("entryCount"));
+
+        new AsyncIndexUpdate("async", store, new CompositeIndexEditorProvider(
+                new PropertyIndexEditorProvider(), new NodeCounterEditorProvider())).run();
+        cd = mbean.getValueStatistics("/oak:index/foo");
+        assertEquals(10L, cd.get("entryCount"));
+        assertEquals(2L, cd.get("valueCount"));
+        assertArrayEquals(new String[] {"x", "y"}, (String[]) cd.get("topValues"));
+        assertArrayEquals(new Long[] {8L, 2L}, (Long[]) cd.get("topCounts"));
+    }
+
     private static void assertArray(CompositeData cd, String prop, List<String> values){
         String[] a = (String[])cd.get(prop);
         assertEquals(new HashSet<String>(values), new HashSet<String>(Lists.newArrayList(a)));
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.STATISTICS_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.index.NodeTraversalCallback.NOOP;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics.STATS_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class PropertyIndexStatisticsTest {
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    @Test
+    public void refreshedByAsyncIndexer() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        for (int i = 0; i < 50; i++) {
+            builder.child("common" + i).setProperty("foo", "common");
+        }
+        for (int i = 0; i < 10; i++) {
+            builder.child("rare" + i).setProperty("foo", "v" + i);
+        }
+        store.merge(builder, HOOK, CommitInfo.EMPTY);
+        NodeState definition = getDefinition(store.getRoot());
+        assertNull(PropertyIndexStatistics.get(definition));
+
+        new AsyncIndexUpdate("async", store, new PropertyIndexEditorProvider()).run();
+        definition = getDefinition(store.getRoot());
+        PropertyIndexStatistics stats = PropertyIndexStatistics.get(definition);
+        assertNotNull(stats);
+        assertEquals(60, stats.getEntryCount());
+        assertEquals(11, stats.getKeyCount());
+        assertEquals("common", stats.getTopValues().get(0).getKey());
+        assertEquals(50, stats.getEstimatedCount("common"));
+        assertEquals(1, stats.getEstimatedCount("v1"));
+
+        // the cost estimation uses the statistics
+        ContentMirrorStoreStrategy strategy = new ContentMirrorStoreStrategy();
+        NodeState root = store.getRoot();
+        assertEquals(50, strategy.count(root, definition, Collections.singleton("common"), 100));
+        assertEquals(51, strategy.count(root, definition, ImmutableSet.of("common", "v1"), 100));
+        assertEquals(0, strategy.count(root, definition, Collections.singleton("missing"), 100));
+        assertEquals(60, strategy.count(root, definition, null, 100));
+    }
+
+    @Test
+    public void notRefreshedByOtherLanes() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        builder.child("a").setProperty("foo", "x");
+        store.merge(builder, HOOK, CommitInfo.EMPTY);
+
+        // the lane that refreshes the statistics is "async" by default
+        new AsyncIndexUpdate("fulltext-async", store, new PropertyIndexEditorProvider()).run();
+        assertNull(PropertyIndexStatistics.get(getDefinition(store.getRoot())));
+        new AsyncIndexUpdate("async", store, new PropertyIndexEditorProvider()).run();
+        assertNotNull(PropertyIndexStatistics.get(getDefinition(store.getRoot())));
+    }
+
+    @Test
+    public void refreshOldest() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        NodeBuilder builder = store.getRoot().builder();
+        for (String name : new String[] {"a", "b"}) {
+            createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                    name, true, false, ImmutableSet.of(name), null)
+                    .setProperty(STATISTICS_PROPERTY_NAME, true);
+            builder.child("n").setProperty(name, "x");
+        }
+        NodeState root = HOOK.processCommit(builder.getBaseState(), builder.getNodeState(), CommitInfo.EMPTY);
+
+        // one index per call
+        long now = PropertyIndexStatistics.REFRESH_INTERVAL_MILLIS * 10;
+        builder = root.builder();
+        String first = PropertyIndexStatistics.refresh(root, builder, now, NOOP);
+        assertNotNull(first);
+        root = builder.getNodeState();
+        builder = root.builder();
+        String second = PropertyIndexStatistics.refresh(root, builder, now, NOOP);
+        assertNotNull(second);
+        assertFalse(first.equals(second));
+        root = builder.getNodeState();
+
+        // all statistics are up to date
+        assertNull(PropertyIndexStatistics.refresh(root, root.builder(), now + 1, NOOP));
+        // the oldest is refreshed first
+        builder = root.builder();
+        assertEquals(first, PropertyIndexStatistics.refresh(root, builder,
+                now + PropertyIndexStatistics.REFRESH_INTERVAL_MILLIS, NOOP));
+
+        // statistics are removed when disabled
+        builder.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("a")
+                .removeProperty(STATISTICS_PROPERTY_NAME);
+        root = builder.getNodeState();
+        builder = root.builder();
+        PropertyIndexStatistics.refresh(root, builder, now, NOOP);
+        assertFalse(builder.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("a")
+                .hasChildNode(STATS_NODE_NAME));
+    }
+
+    @Test
+    public void refreshCallback() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "foo", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(STATISTICS_PROPERTY_NAME, true);
+        for (int i = 0; i < 10; i++) {
+            builder.child("n" + i).setProperty("foo", "v" + i);
+        }
+        NodeState root = HOOK.processCommit(builder.getBaseState(), builder.getNodeState(), CommitInfo.EMPTY);
+
+        // the callback is informed once per value
+        List<String> paths = new ArrayList<String>();
+        long now = PropertyIndexStatistics.REFRESH_INTERVAL_MILLIS * 10;
+        builder = root.builder();
+        assertEquals("foo", PropertyIndexStatistics.refresh(root, builder, now,
+                pathSource -> paths.add(pathSource.getPath())));
+        assertEquals(10, paths.size());
+        assertTrue(paths.contains("/oak:index/foo/:index/v0"));
+
+        // the refresh stops if the callback fails
+        CommitFailedException stop = new CommitFailedException("Async", 1, "Stopped");
+        builder = root.builder();
+        try {
+            PropertyIndexStatistics.refresh(root, builder, now, pathSource -> {
+                throw stop;
+            });
+            fail();
+        } catch (CommitFailedException e) {
+            assertSame(stop, e);
+        }
+        assertFalse(builder.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo")
+                .hasChildNode(STATS_NODE_NAME));
+    }
+
+    private static NodeState getDefinition(NodeState root) {
+        return root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+    }
+
+}
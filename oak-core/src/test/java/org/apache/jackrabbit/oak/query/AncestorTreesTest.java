@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentSession;
+import org.apache.jackrabbit.oak.api.Root;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Test;
+
+public class AncestorTreesTest {
+
+    @Test
+    public void getTree() throws Exception {
+        ContentSession session = new Oak().with(new OpenSecurityProvider())
+                .createContentRepository().login(null, null);
+        Root root = session.getLatestRoot();
+        Tree a = root.getTree("/").addChild("a");
+        a.addChild("b").addChild("c");
+        a.addChild("d");
+        root.commit();
+
+        AncestorTrees trees = new AncestorTrees(root);
+        for (String path : new String[] {
+                "/a/b/c", "/a/b", "/a/d", "/", "/a/b/c", "/x/y", "/a"}) {
+            Tree t = trees.getTree(path);
+            assertEquals(path, t.getPath());
+            assertEquals(root.getTree(path).exists(), t.exists());
+        }
+        assertFalse(trees.getTree("/x/y").exists());
+        assertTrue(trees.getTree("/a/b/c").exists());
+
+        // siblings share the parent tree
+        Tree b = trees.getTree("/a/b");
+        Tree d = trees.getTree("/a/d");
+        assertSame(b.getParent(), d.getParent());
+        session.close();
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+/**
+ * Tests equi joins that read the right hand side only once.
+ */
+public class HashJoinTest extends AbstractQueryTest {
+
+    private static final int PAGES = 50;
+
+    private static final int REFS = 200;
+
+    private static final String JOIN = "select [a].[jcr:path], [b].[jcr:path] " +
+            "from [nt:base] as [a] %s join [nt:base] as [b] on [a].[ref] = [b].[id] " +
+            "where isdescendantnode([a], '/content/refs')";
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new PropertyIndexEditorProvider())
+                .with(new PropertyIndexProvider())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/oak:index");
+        IndexUtils.createIndexDefinition(index, "id", false, new String[] {"id"});
+        IndexUtils.createIndexDefinition(index, "ref", false, new String[] {"ref"});
+        Tree content = root.getTree("/").addChild("content");
+        Tree pages = content.addChild("pages");
+        for (int i = 0; i < PAGES; i++) {
+            pages.addChild("p" + i).setProperty("id", "id" + i);
+        }
+        Tree refs = content.addChild("refs");
+        for (int i = 0; i < REFS; i++) {
+            refs.addChild("r" + i).setProperty("ref", "id" + (i % (PAGES + 10)));
+        }
+        root.commit();
+    }
+
+    @Test
+    public void innerJoin() throws Exception {
+        assertTrue(explain("inner").contains("/* hash join */"));
+        assertJoin("inner", false);
+    }
+
+    @Test
+    public void leftOuterJoin() throws Exception {
+        assertJoin("left outer", true);
+    }
+
+    @Test
+    public void tooManyRows() throws Exception {
+        // the join falls back to a nested loop
+        settings.setLimitInMemory(PAGES / 2);
+        assertJoin("inner", false);
+        assertJoin("left outer", true);
+    }
+
+    @Test
+    public void singleRow() throws Exception {
+        String explain = executeQuery("explain select [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on [a].[ref] = [b].[id] " +
+                "where [a].[jcr:path] = '/content/refs/r1'", SQL2).get(0);
+        assertFalse(explain, explain.contains("/* hash join */"));
+    }
+
+    private void assertJoin(String joinType, boolean outer) {
+        assertResult(expected(outer), executeQuery(String.format(JOIN, joinType), SQL2, false));
+    }
+
+    private String explain(String joinType) {
+        return executeQuery("explain " + String.format(JOIN, joinType), SQL2).get(0);
+    }
+
+    private static List<String> expected(boolean outer) {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < REFS; i++) {
+            int page = i % (PAGES + 10);
+            if (page < PAGES) {
+                list.add("/content/refs/r" + i + ", /content/pages/p" + page);
+            } else if (outer) {
+                list.add("/content/refs/r" + i + ", null");
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.Cursors.AbstractCursor;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+/**
+ * Tests indexes that return the stored property values of the nodes.
+ */
+public class IndexStoredValuesTest extends AbstractQueryTest {
+
+    private static final String QUERY = "select [jcr:path], [title], [other] from [nt:base] " +
+            "where [title] is not null and isdescendantnode('/content')";
+
+    private final TestIndex index = new TestIndex();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak()
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new QueryIndexProvider() {
+                    @NotNull
+                    @Override
+                    public List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return ImmutableList.of(index);
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree content = root.getTree("/").addChild("content");
+        Tree a = content.addChild("a");
+        a.setProperty("title", "node");
+        a.setProperty("other", "x");
+        a.setProperty("tags", ImmutableList.of("t1", "t2"), Type.STRINGS);
+        content.addChild("b");
+        root.commit();
+        index.paths = ImmutableList.of("/content/a", "/content/b");
+    }
+
+    @Test
+    public void storedValues() throws Exception {
+        index.includesStoredValues = true;
+        index.values.put("title", PropertyValues.newString("index"));
+        // the node "b" doesn't have a title, so the value from the index is not used
+        assertEquals(ImmutableList.of("/content/a, index, x"), executeQuery(QUERY, SQL2, false));
+    }
+
+    @Test
+    public void valuesFromNode() throws Exception {
+        index.values.put("title", PropertyValues.newString("index"));
+        assertEquals(ImmutableList.of("/content/a, node, x"), executeQuery(QUERY, SQL2, false));
+    }
+
+    @Test
+    public void typedStoredValues() throws Exception {
+        index.includesStoredValues = true;
+        index.values.put("tags", PropertyValues.newString(ImmutableList.of("t1", "t2")));
+        assertEquals(ImmutableList.of("/content/a"), executeQuery(
+                "select [jcr:path] from [nt:base] where [tags] = 't2'", SQL2, false));
+    }
+
+    @Test
+    public void stringifiedNodeData() throws Exception {
+        // like the Solr index: the node data is returned, but converted to
+        // a string, so the values must be read from the node
+        index.includesNodeData = true;
+        index.values.put("tags", PropertyValues.newString("[t1, t2]"));
+        assertEquals(ImmutableList.of("/content/a"), executeQuery(
+                "select [jcr:path] from [nt:base] where [tags] = 't2'", SQL2, false));
+    }
+
+    @Test
+    public void batchedAccessChecks() throws Exception {
+        Tree content = root.getTree("/content");
+        List<String> paths = Lists.newArrayList();
+        List<String> expected = Lists.newArrayList();
+        for (int i = 0; i < 250; i++) {
+            Tree folder = content.addChild("f" + i % 7);
+            folder.addChild("n" + i).setProperty("title", "node");
+            // the index returns the rows in reverse order, not sorted by path
+            paths.add(0, folder.getPath() + "/n" + i);
+            expected.add(0, folder.getPath() + "/n" + i + ", index, null");
+            if (i % 50 == 0) {
+                // the index returns a node that doesn't exist
+                paths.add(0, folder.getPath() + "/missing" + i);
+            }
+        }
+        root.commit();
+        index.includesStoredValues = true;
+        index.paths = paths;
+        index.values.put("title", PropertyValues.newString("index"));
+        assertEquals(expected, executeQuery(QUERY, SQL2, false, true));
+    }
+
+    private static class TestIndex implements QueryIndex, AdvancedQueryIndex {
+
+        boolean includesNodeData;
+        boolean includesStoredValues;
+        List<String> paths;
+        final Map<String, PropertyValue> values = Maps.newHashMap();
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return null;
+        }
+
+        @Override
+        public String getIndexName() {
+            return "test";
+        }
+
+        @Override
+        public List<IndexPlan> getPlans(Filter filter, List<OrderEntry> sortOrder, NodeState rootState) {
+            return ImmutableList.of(new IndexPlan.Builder()
+                    .setCostPerEntry(1)
+                    .setCostPerExecution(1)
+                    .setEstimatedEntryCount(1)
+                    .setFilter(filter)
+                    .setIncludesNodeData(includesNodeData)
+                    .setIncludesStoredValues(includesStoredValues)
+                    .setPlanName("test")
+                    .build());
+        }
+
+        @Override
+        public String getPlanDescription(IndexPlan plan, NodeState root) {
+            return "test";
+        }
+
+        @Override
+        public Cursor query(IndexPlan plan, NodeState rootState) {
+            final Iterator<String> it = paths.iterator();
+            return new AbstractCursor() {
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public IndexRow next() {
+                    final String path = it.next();
+                    return new IndexRow() {
+
+                        @Override
+                        public boolean isVirtualRow() {
+                            return false;
+                        }
+
+                        @Override
+                        public String getPath() {
+                            return path;
+                        }
+
+                        @Override
+                        public PropertyValue getValue(String columnName) {
+                            return values.get(columnName);
+                        }
+
+                    };
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -20,7 +20,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -28,6 +31,9 @@ import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.jackrabbit.oak.query.FilterIterators.RowSerializer;
+import org.apache.jackrabbit.oak.query.FilterIterators.SpillFile;
+import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
@@ -48,6 +54,21 @@ public class IteratorsTest {
         
     };
 
+    private static final RowSerializer<Integer> INT_SERIALIZER = new RowSerializer<Integer>() {
+
+        @Override
+        public String serialize(@NotNull Integer row) {
+            return row.toString();
+        }
+
+        @NotNull
+        @Override
+        public Integer deserialize(@NotNull String s) {
+            return Integer.parseInt(s);
+        }
+
+    };
+
     @Test
     public void distinct() {
         assertEquals("", toString(FilterIterators.newDistinct(it(), settings)));
@@ -99,6 +120,118 @@ public class IteratorsTest {
         assertEquals("1, 1, 2", toString(FilterIterators.newSort(it(3, 3, 2, 1, 1), INT_COMP, 3, settings)));
     }
 
+    @Test
+    public void sortStable() {
+        // only the first character is compared
+        Comparator<String> comp = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.substring(0, 1).compareTo(o2.substring(0, 1));
+            }
+        };
+        assertEquals("a1, a2, b1, b2", toString(FilterIterators.newSort(
+                it("b1", "a1", "b2", "a2", "c1"), comp, 4, settings)));
+        assertEquals("a1, a2, a3", toString(FilterIterators.newSort(
+                it("b1", "a1", "b2", "a2", "a3"), comp, 3, settings)));
+        assertEquals("a1, a2, b1, b2, c1", toString(FilterIterators.newSort(
+                it("b1", "a1", "b2", "a2", "c1"), comp, Integer.MAX_VALUE, settings)));
+    }
+
+    @Test
+    public void sortOnDisk() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(10);
+        Random r = new Random(1);
+        Integer[] list = new Integer[1000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = r.nextInt(100);
+        }
+        Iterator<Integer> it = new FilterIterators.SortIterator<Integer>(
+                it(list), INT_COMP, Integer.MAX_VALUE, s, INT_SERIALIZER, null);
+        int old = Integer.MIN_VALUE;
+        int count = 0;
+        while (it.hasNext()) {
+            int x = it.next();
+            assertTrue(x >= old);
+            old = x;
+            count++;
+        }
+        assertEquals(list.length, count);
+        assertEquals("1, 2, 3", toString(new FilterIterators.SortIterator<Integer>(
+                it(3, 2, 1), INT_COMP, Integer.MAX_VALUE, s, INT_SERIALIZER, null)));
+    }
+
+    @Test
+    public void spillFileClose() throws Exception {
+        File f = File.createTempFile("querySort", ".txt");
+        Object owner = new Object();
+        SpillFile file = new SpillFile(owner, f);
+        assertFalse(file.isClosed());
+        file.close();
+        assertTrue(file.isClosed());
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void spillFileFinalized() throws Exception {
+        File f = File.createTempFile("querySort", ".txt");
+        Object owner = new Object();
+        SpillFile file = new SpillFile(owner, f);
+        // called once the owner is garbage collected
+        file.finalizeReferent();
+        assertTrue(file.isClosed());
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void spillFileAbandoned() throws Exception {
+        File f = File.createTempFile("querySort", ".txt");
+        Object owner = new Object();
+        WeakReference<Object> ref = new WeakReference<Object>(owner);
+        new SpillFile(owner, f);
+        owner = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // the JVM does not guarantee that System.gc() collects the owner
+        assumeTrue(ref.get() == null);
+        for (int i = 0; i < 100 && f.exists(); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void sortOnDiskNotSerializable() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(4);
+        // negative values can not be serialized, so sorting falls back to
+        // memory, and fails once the limit is reached
+        RowSerializer<Integer> serializer = new RowSerializer<Integer>() {
+            @Override
+            public String serialize(@NotNull Integer row) {
+                return row < 0 ? null : row.toString();
+            }
+
+            @NotNull
+            @Override
+            public Integer deserialize(@NotNull String x) {
+                return Integer.parseInt(x);
+            }
+        };
+        assertEquals("-1, 1, 2, 3", toString(new FilterIterators.SortIterator<Integer>(
+                it(3, 2, 1, -1), INT_COMP, Integer.MAX_VALUE, s, serializer, null)));
+        try {
+            toString(new FilterIterators.SortIterator<Integer>(
+                    it(3, 2, 1, 4, 5, -1), INT_COMP, Integer.MAX_VALUE, s, serializer, null));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     @Test
     public void sortCompareCalls() {
         sortCompareCalls(10000, 0);
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryPlanCacheTest extends AbstractQueryTest {
+
+    private static final String QUERY = "explain select [jcr:path] from [nt:base] where [foo] = $v";
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    private final QueryPlanCache cache = new QueryPlanCache(100, 100, 1, TimeUnit.HOURS);
+
+    @Override
+    protected ContentRepository createRepository() {
+        settings.setQueryPlanCache(cache);
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new PropertyIndexEditorProvider())
+                .with(new PropertyIndexProvider())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        IndexUtils.createIndexDefinition(root.getTree("/oak:index"), "foo",
+                false, new String[] {"foo"});
+        Tree content = root.getTree("/").addChild("content");
+        for (int i = 0; i < 10; i++) {
+            content.addChild("n" + i).setProperty("foo", i);
+        }
+        root.commit();
+    }
+
+    @Test
+    public void planSelection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(explain(i).contains("/* property foo"));
+        }
+        assertEquals(1, cache.getPlanMissCount());
+        assertEquals(4, cache.getPlanHitCount());
+
+        // a different type of the bound value is a different shape
+        explain("1");
+        assertEquals(2, cache.getPlanMissCount());
+
+        cache.invalidate();
+        assertTrue(explain(1).contains("/* property foo"));
+        assertEquals(3, cache.getPlanMissCount());
+        assertEquals(4, cache.getPlanHitCount());
+    }
+
+    @Test
+    public void removedIndex() throws Exception {
+        assertTrue(explain(1).contains("/* property foo"));
+        root.getTree("/oak:index/foo").remove();
+        root.commit();
+
+        assertTrue(explain(1).contains("/* traverse"));
+        assertEquals(1, cache.getPlanInvalidCount());
+        List<String> paths = executeQuery(
+                "select [jcr:path] from [nt:base] where [foo] = 3", SQL2);
+        assertEquals(ImmutableList.of("/content/n3"), paths);
+    }
+
+    @Test
+    public void xpathStatement() throws Exception {
+        String xpath = "/jcr:root/content//*[@foo = 3]";
+        assertEquals(ImmutableList.of("/content/n3"), executeQuery(xpath, XPATH));
+        assertEquals(ImmutableList.of("/content/n3"), executeQuery(xpath, XPATH));
+        assertEquals(1, cache.getStatementMissCount());
+        assertEquals(1, cache.getStatementHitCount());
+        assertTrue(settings.getQueryStats().getQueryCacheStats().contains("\"statementHits\":1"));
+    }
+
+    private String explain(Object value) throws Exception {
+        Map<String, PropertyValue> bindings = ImmutableMap.of("v",
+                value instanceof String ? PropertyValues.newString((String) value)
+                        : PropertyValues.newLong(((Integer) value).longValue()));
+        Result result = executeQuery(QUERY, SQL2, bindings);
+        ResultRow row = result.getRows().iterator().next();
+        return row.getValue("plan").getValue(Type.STRING);
+    }
+}
@@ -235,6 +235,42 @@ public class UnionQueryTest extends AbstractQueryTest {
         }
     }
 
+    @Test
+    public void testNestedUnions() throws Exception {
+        String a = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest2')";
+        String b = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest/a/b/c')";
+        String c = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest/a')";
+
+        String[] expected = {
+                "/UnionQueryTest/a/b",
+                "/UnionQueryTest/a/b/c",
+                "/UnionQueryTest/a/b/c/d",
+                "/UnionQueryTest/a/b/c/d/e",
+                "/UnionQueryTest2/a"
+        };
+        String union = String.format("%s UNION %s UNION %s ORDER BY [jcr:path]", a, b, c);
+        Result result = qe.executeQuery(union, QueryEngineImpl.SQL2,
+                QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+        List<String> paths = Lists.newArrayList();
+        for (ResultRow rr : result.getRows()) {
+            paths.add(rr.getPath());
+        }
+        assertEquals(Arrays.asList(expected), paths);
+
+        // duplicates are kept, and only the first branch is needed
+        union = String.format("%s UNION ALL %s UNION ALL %s", a, b, c);
+        result = qe.executeQuery(union, QueryEngineImpl.SQL2,
+                QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+        assertEquals(7, Lists.newArrayList(result.getRows()).size());
+        result = qe.executeQuery(union, QueryEngineImpl.SQL2, 1, 0,
+                QueryEngine.NO_BINDINGS, QueryEngine.NO_MAPPINGS);
+        paths = Lists.newArrayList();
+        for (ResultRow rr : result.getRows()) {
+            paths.add(rr.getPath());
+        }
+        assertEquals(Arrays.asList("/UnionQueryTest2/a"), paths);
+    }
+
     @Test
     public void testExplainStatement() throws Exception {
         final String left = "SELECT [jcr:path] FROM [nt:base] AS a WHERE ISDESCENDANTNODE(a, '/UnionQueryTest')";
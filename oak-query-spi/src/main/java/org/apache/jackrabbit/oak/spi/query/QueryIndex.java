@@ -279,6 +279,24 @@ public interface QueryIndex {
          */
         boolean includesNodeData();
 
+        /**
+         * Whether the cursor returns the stored property values of the nodes.
+         * If yes, then {@link IndexRow#getValue(String)}, called with the name
+         * of a property of the node, returns the value with the same type and
+         * the same values as the property stored in the node, or null if the
+         * row does not contain the property. The query engine then uses this
+         * value instead of reading the property from the node, after
+         * checking that the property is readable.
+         * <p>
+         * This is a stronger promise than {@link #includesNodeData()}: an
+         * index that only returns values converted to strings must not set it.
+         *
+         * @return whether stored property values are returned
+         */
+        default boolean includesStoredValues() {
+            return false;
+        }
+
         /**
          * The sort order of the returned entries, or null if unsorted.
          *
@@ -365,6 +383,7 @@ public interface QueryIndex {
             protected boolean isDelayed;
             protected boolean isFulltextIndex;
             protected boolean includesNodeData;
+            protected boolean includesStoredValues;
             protected List<OrderEntry> sortOrder;
             protected NodeState definition;
             protected PropertyRestriction propRestriction;
@@ -415,6 +434,11 @@ public interface QueryIndex {
                 return this;
             }
 
+            public Builder setIncludesStoredValues(boolean includesStoredValues) {
+                this.includesStoredValues = includesStoredValues;
+                return this;
+            }
+
             public Builder setSortOrder(List<OrderEntry> sortOrder) {
                 this.sortOrder = sortOrder;
                 return this;
@@ -473,6 +497,8 @@ public interface QueryIndex {
                             Builder.this.isFulltextIndex;
                     private final boolean includesNodeData =
                             Builder.this.includesNodeData;
+                    private final boolean includesStoredValues =
+                            Builder.this.includesStoredValues;
                     private final List<OrderEntry> sortOrder =
                             Builder.this.sortOrder == null ?
                             null : new ArrayList<OrderEntry>(
@@ -502,6 +528,7 @@ public interface QueryIndex {
                             + " isDelayed : %s,"
                             + " isFulltextIndex : %s,"
                             + " includesNodeData : %s,"
+                            + " includesStoredValues : %s,"
                             + " sortOrder : %s,"
                             + " definition : %s,"
                             + " propertyRestriction : %s,"
@@ -516,6 +543,7 @@ public interface QueryIndex {
                             isDelayed,
                             isFulltextIndex,
                             includesNodeData,
+                            includesStoredValues,
                             sortOrder,
                             definition,
                             propRestriction,
@@ -566,6 +594,11 @@ public interface QueryIndex {
                         return includesNodeData;
                     }
 
+                    @Override
+                    public boolean includesStoredValues() {
+                        return includesStoredValues;
+                    }
+
                     @Override
                     public List<OrderEntry> getSortOrder() {
                         return sortOrder;
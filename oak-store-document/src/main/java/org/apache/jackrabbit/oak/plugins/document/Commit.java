@@ -16,8 +16,11 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -25,6 +28,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Function;
@@ -79,6 +84,11 @@ public class Commit {
     private final HashSet<Path> nodesWithBinaries = new HashSet<>();
     private final HashMap<Path, Path> bundledNodes = new HashMap<>();
 
+    /** Time spent in the phases of this commit. **/
+    private final CommitStats stats = new CommitStats();
+    private final long created = System.nanoTime();
+    private long conflictCheckNanos;
+
     /**
      * Create a new Commit.
      *  
@@ -161,6 +171,18 @@ public class Commit {
         return baseRevision;
     }
 
+    /**
+     * @return the time spent so far in the phases of this commit.
+     */
+    @NotNull
+    CommitStats getStats() {
+        stats.conflictCheck = TimeUnit.NANOSECONDS.toMicros(conflictCheckNanos);
+        stats.total = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - created);
+        stats.numUpdateOps = operations.size();
+        stats.numPaths = modifiedNodes.size();
+        return stats;
+    }
+
     /**
      * @return all modified paths, including ancestors without explicit
      *          modifications.
@@ -283,8 +305,9 @@ public class Commit {
         try {
             applyToDocumentStore(baseBranchRevision);
         } finally {
-            nodeStore.getStatsCollector().doneChangesApplied(
-                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            long time = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            stats.changesApplied += time;
+            nodeStore.getStatsCollector().doneChangesApplied(time);
         }
     }
 
@@ -352,7 +375,9 @@ public class Commit {
             JournalEntry doc = JOURNAL.newDocument(store);
             doc.modified(modifiedNodes);
             Revision r = revision.asBranchRevision();
+            long start = System.nanoTime();
             store.create(JOURNAL, singletonList(doc.asUpdateOp(r)));
+            stats.journalPush += TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
         }
 
         int commitRootDepth = commitRootPath.getDepth();
@@ -373,10 +398,14 @@ public class Commit {
                 success = true;
             } else {
                 int batchSize = nodeStore.getCreateOrUpdateBatchSize();
-                for (List<UpdateOp> updates : partition(changedNodes, batchSize)) {
-                    List<NodeDocument> oldDocs = store.createOrUpdate(NODES, updates);
-                    checkConflicts(oldDocs, updates);
-                    checkSplitCandidate(oldDocs);
+                if (baseBranchRevision != null && changedNodes.size() > batchSize) {
+                    applyBranchChanges(store, changedNodes);
+                } else {
+                    for (List<UpdateOp> updates : partition(changedNodes, batchSize)) {
+                        List<NodeDocument> oldDocs = store.createOrUpdate(NODES, updates);
+                        checkConflicts(oldDocs, updates);
+                        checkSplitCandidate(oldDocs);
+                    }
                 }
 
                 // finally write the commit root (the commit root might be written
@@ -398,7 +427,7 @@ public class Commit {
                     // only set revision on commit root when there is
                     // no collision for this commit revision
                     commit.containsMapEntry(COLLISIONS, revision, false);
-                    NodeDocument before = nodeStore.updateCommitRoot(commit, revision);
+                    NodeDocument before = updateCommitRoot(commit);
                     if (before == null) {
                         String msg = "Conflicting concurrent change. " +
                                 "Update operation failed: " + commit;
@@ -445,6 +474,67 @@ public class Commit {
         }
     }
 
+    /**
+     * Writes the changes of a branch commit in batches. The batches modify
+     * distinct documents and are submitted to the write executor of the node
+     * store, with at most {@link DocumentNodeStore#getBranchCommitInFlightBatches()}
+     * of them in flight at the same time. The results are checked for
+     * conflicts in submission order on the calling thread.
+     *
+     * @param store the document store.
+     * @param changedNodes the update operations to apply.
+     * @throws ConflictException if a conflict is detected with another commit.
+     * @throws DocumentStoreException if an error occurs while writing to the
+     *          underlying store.
+     */
+    private void applyBranchChanges(final DocumentStore store,
+                                    List<UpdateOp> changedNodes)
+            throws ConflictException, DocumentStoreException {
+        int batchSize = nodeStore.getCreateOrUpdateBatchSize();
+        int maxInFlight = Math.max(1, nodeStore.getBranchCommitInFlightBatches());
+        Deque<Map.Entry<List<UpdateOp>, FutureTask<List<NodeDocument>>>> inFlight = new ArrayDeque<>();
+        try {
+            for (final List<UpdateOp> updates : partition(changedNodes, batchSize)) {
+                if (inFlight.size() >= maxInFlight) {
+                    checkBatch(inFlight.poll());
+                }
+                FutureTask<List<NodeDocument>> task = new FutureTask<>(
+                        () -> store.createOrUpdate(NODES, updates));
+                nodeStore.getWriteExecutor().execute(task);
+                inFlight.add(new SimpleImmutableEntry<>(updates, task));
+            }
+            while (!inFlight.isEmpty()) {
+                checkBatch(inFlight.poll());
+            }
+        } finally {
+            // wait for outstanding batches before a potential rollback
+            for (Map.Entry<List<UpdateOp>, FutureTask<List<NodeDocument>>> e : inFlight) {
+                try {
+                    e.getValue().get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    LOG.debug("Batch failed after preceding failure", ex.getCause());
+                }
+            }
+        }
+    }
+
+    private void checkBatch(Map.Entry<List<UpdateOp>, FutureTask<List<NodeDocument>>> batch)
+            throws ConflictException, DocumentStoreException {
+        List<NodeDocument> oldDocs;
+        try {
+            oldDocs = batch.getValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw DocumentStoreException.convert(e);
+        } catch (ExecutionException e) {
+            throw DocumentStoreException.convert(e.getCause());
+        }
+        checkConflicts(oldDocs, batch.getKey());
+        checkSplitCandidate(oldDocs);
+    }
+
     private boolean conditionalCommit(List<UpdateOp> changedNodes,
                                       String commitValue)
             throws DocumentStoreException {
@@ -475,13 +565,24 @@ public class Commit {
         NodeDocument.setRevision(commit, revision, commitValue);
         // make the update conditional on the modCount
         commit.equals(MOD_COUNT, doc.getModCount());
-        NodeDocument before = nodeStore.updateCommitRoot(commit, revision);
+        NodeDocument before = updateCommitRoot(commit);
         if (before != null) {
             checkSplitCandidate(before);
         }
         return before != null;
     }
 
+    @Nullable
+    private NodeDocument updateCommitRoot(UpdateOp commit)
+            throws DocumentStoreException {
+        long start = System.nanoTime();
+        try {
+            return nodeStore.updateCommitRoot(commit, revision);
+        } finally {
+            stats.commitRoot += TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        }
+    }
+
     private void removeCollisionMarker(String id) {
         UpdateOp removeCollision = new UpdateOp(id, false);
         NodeDocument.removeCollision(removeCollision, revision);
@@ -556,6 +657,17 @@ public class Commit {
     private void checkConflicts(@NotNull UpdateOp op,
                                 @Nullable NodeDocument before)
             throws ConflictException {
+        long start = System.nanoTime();
+        try {
+            doCheckConflicts(op, before);
+        } finally {
+            conflictCheckNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void doCheckConflicts(@NotNull UpdateOp op,
+                                  @Nullable NodeDocument before)
+            throws ConflictException {
         DocumentStore store = nodeStore.getDocumentStore();
         collisions.clear();
         if (baseRevision != null) {
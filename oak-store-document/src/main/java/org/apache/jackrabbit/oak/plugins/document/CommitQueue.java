@@ -23,13 +23,15 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.collect.Maps;
 
@@ -41,6 +43,14 @@ import org.slf4j.LoggerFactory;
 /**
  * <code>CommitQueue</code> ensures a sequence of commits consistent with the
  * commit revision even if commits did not complete in this sequence.
+ * <p>
+ * Commits are kept in a concurrent sorted map. Only the creation of commit
+ * revisions is serialized, because a revision must be in the queue before a
+ * newer revision is created. Completing, canceling and checking for commits
+ * does not acquire a lock. Whenever a commit is removed from the queue, the
+ * commit that is then at the head of the queue is released. Releasing a
+ * commit more than once is harmless, which means concurrent removals cannot
+ * miss the release of the new head.
  */
 final class CommitQueue {
 
@@ -51,12 +61,20 @@ final class CommitQueue {
      */
     static final long DEFAULT_SUSPEND_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
 
-    private final SortedMap<Revision, Entry> commits = new TreeMap<Revision, Entry>(StableRevisionComparator.INSTANCE);
+    private final ConcurrentNavigableMap<Revision, Entry> commits
+            = new ConcurrentSkipListMap<Revision, Entry>(StableRevisionComparator.INSTANCE);
+
+    /**
+     * Serializes the creation of revisions and adding them to the queue.
+     */
+    private final Lock createLock = new ReentrantLock();
 
     /**
      * Map of currently suspended commits until a given Revision is visible.
+     * Modifications happen while holding the monitor of this map. Reading
+     * whether the map is empty does not require the monitor.
      */
-    private final Map<Semaphore, SuspendedCommit> suspendedCommits = Maps.newIdentityHashMap();
+    private final Map<Semaphore, SuspendedCommit> suspendedCommits = Maps.newConcurrentMap();
 
     private final RevisionContext context;
 
@@ -86,12 +104,15 @@ final class CommitQueue {
         checkArgument(num > 0);
         SortedSet<Revision> revs = new TreeSet<Revision>(StableRevisionComparator.INSTANCE);
         Revision rev = null;
-        synchronized (this) {
+        createLock.lock();
+        try {
             for (int i = 0; i < num; i++) {
                 rev = context.newRevision();
                 revs.add(rev);
             }
             commits.put(rev, new Entry(rev));
+        } finally {
+            createLock.unlock();
         }
         LOG.debug("created commit {}", rev);
         return revs;
@@ -108,9 +129,7 @@ final class CommitQueue {
     }
 
     boolean contains(@NotNull Revision revision) {
-        synchronized (this) {
-            return commits.containsKey(checkNotNull(revision));
-        }
+        return commits.containsKey(checkNotNull(revision));
     }
 
     /**
@@ -161,8 +180,13 @@ final class CommitQueue {
             }
 
             s = new Semaphore(0);
-            suspendedCommits.put(s, new SuspendedCommit(s, afterHead));
+            SuspendedCommit suspended = new SuspendedCommit(s, afterHead);
+            suspendedCommits.put(s, suspended);
             addedRevisions = afterHead.size();
+            // notifySuspendedCommits() may have skipped the monitor when
+            // it saw an empty map before this commit was added. Check
+            // again against the current head revision
+            suspended.removeRevisionsVisibleFrom(context.getHeadRevision());
         }
         try {
             s.tryAcquire(addedRevisions, suspendTimeoutMillis, TimeUnit.MILLISECONDS);
@@ -208,10 +232,10 @@ final class CommitQueue {
     //------------------------< internal >--------------------------------------
 
     private void notifySuspendedCommits() {
+        if (suspendedCommits.isEmpty()) {
+            return;
+        }
         synchronized (suspendedCommits) {
-            if (suspendedCommits.isEmpty()) {
-                return;
-            }
             RevisionVector headRevision = context.getHeadRevision();
             Iterator<SuspendedCommit> it = suspendedCommits.values().iterator();
             while (it.hasNext()) {
@@ -225,10 +249,10 @@ final class CommitQueue {
 
     private void notifySuspendedCommits(@NotNull Revision revision) {
         checkNotNull(revision);
+        if (suspendedCommits.isEmpty()) {
+            return;
+        }
         synchronized (suspendedCommits) {
-            if (suspendedCommits.isEmpty()) {
-                return;
-            }
             Iterator<SuspendedCommit> it = suspendedCommits.values().iterator();
             while (it.hasNext()) {
                 SuspendedCommit suspended = it.next();
@@ -240,27 +264,20 @@ final class CommitQueue {
     }
 
     private void removeCommit(@NotNull Revision rev) {
-        // simply remove and notify next head if any
-        synchronized (this) {
-            boolean wasHead = commits.firstKey().equals(rev);
-            commits.remove(rev);
-            LOG.debug("removed commit {}, wasHead={}", rev, wasHead);
-            if (wasHead) {
-                notifyHead();
-            }
-        }
+        // simply remove and notify next head if any. the head is
+        // notified unconditionally, because a concurrent removal of
+        // the head may have released this commit before it was removed
+        commits.remove(rev);
+        LOG.debug("removed commit {}", rev);
+        notifyHead();
     }
 
     private void waitUntilHeadOfQueue(@NotNull Revision rev,
                                       @NotNull Callback c) {
         assert !commits.isEmpty();
 
-        boolean isHead;
-        Entry commitEntry;
-        synchronized (this) {
-            isHead = commits.firstKey().equals(rev);
-            commitEntry = commits.get(rev);
-        }
+        Entry commitEntry = commits.get(rev);
+        boolean isHead = rev.equals(firstRevision());
         if (isHead) {
             statsCollector.doneWaitUntilHead(0);
         } else {
@@ -270,25 +287,26 @@ final class CommitQueue {
         try {
             c.headOfQueue(rev);
         } finally {
-            synchronized (this) {
-                commits.remove(rev);
-                try {
-                    LOG.debug("removed {}, head is now {}", rev, commits.isEmpty() ? null : commits.firstKey());
-                } finally {
-                    // notify next if there is any
-                    notifyHead();
-                }
-            }
+            commits.remove(rev);
+            LOG.debug("removed {}", rev);
+            // notify next if there is any
+            notifyHead();
         }
     }
 
     private void notifyHead() {
-        if (!commits.isEmpty()) {
-            LOG.debug("release {}", commits.firstKey());
-            commits.get(commits.firstKey()).release();
+        Map.Entry<Revision, Entry> head = commits.firstEntry();
+        if (head != null) {
+            LOG.debug("release {}", head.getKey());
+            head.getValue().release();
         }
     }
 
+    private Revision firstRevision() {
+        Map.Entry<Revision, Entry> head = commits.firstEntry();
+        return head != null ? head.getKey() : null;
+    }
+
     /**
      * An entry in the commit queue.
      */
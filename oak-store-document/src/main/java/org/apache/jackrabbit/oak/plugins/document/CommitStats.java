@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+/**
+ * Breakdown of the time spent in the phases of a commit. All times are in
+ * microseconds. A phase that was not executed by the commit reports zero.
+ */
+public class CommitStats {
+
+    /**
+     * Time spent checking the documents returned by the store for conflicts.
+     */
+    long conflictCheck;
+
+    /**
+     * Time spent applying the changes to the DocumentStore, including
+     * {@link #conflictCheck} and {@link #commitRoot}.
+     */
+    long changesApplied;
+
+    /**
+     * Time spent updating the commit root, including the time the update
+     * waited in the {@link BatchCommitQueue}.
+     */
+    long commitRoot;
+
+    /**
+     * Time spent waiting to become the head of the {@link CommitQueue}.
+     */
+    long waitUntilHead;
+
+    /**
+     * Time spent writing journal entries on behalf of the commit.
+     */
+    long journalPush;
+
+    /**
+     * Time spent updating the in-memory state and the head revision once the
+     * commit is at the head of the {@link CommitQueue}.
+     */
+    long headUpdate;
+
+    /**
+     * Total time from the creation of the commit until it was done.
+     */
+    long total;
+
+    /**
+     * Number of update operations in the commit.
+     */
+    int numUpdateOps;
+
+    /**
+     * Number of paths modified by the commit, including parents of changed
+     * nodes.
+     */
+    int numPaths;
+
+    CommitStats() {
+    }
+
+    /**
+     * @return the time in microseconds spent checking for conflicts.
+     */
+    public long getConflictCheckTime() {
+        return conflictCheck;
+    }
+
+    /**
+     * @return the time in microseconds spent applying the changes.
+     */
+    public long getChangesAppliedTime() {
+        return changesApplied;
+    }
+
+    /**
+     * @return the time in microseconds spent updating the commit root.
+     */
+    public long getCommitRootTime() {
+        return commitRoot;
+    }
+
+    /**
+     * @return the time in microseconds spent waiting to become the
+     *          head of the commit queue.
+     */
+    public long getWaitUntilHeadTime() {
+        return waitUntilHead;
+    }
+
+    /**
+     * @return the time in microseconds spent writing journal entries.
+     */
+    public long getJournalPushTime() {
+        return journalPush;
+    }
+
+    /**
+     * @return the time in microseconds spent updating the head revision.
+     */
+    public long getHeadUpdateTime() {
+        return headUpdate;
+    }
+
+    /**
+     * @return the total time of the commit in microseconds.
+     */
+    public long getTotalTime() {
+        return total;
+    }
+
+    /**
+     * @return the number of update operations in the commit.
+     */
+    public int getNumUpdateOps() {
+        return numUpdateOps;
+    }
+
+    /**
+     * @return the number of paths modified by the commit.
+     */
+    public int getNumPaths() {
+        return numPaths;
+    }
+
+    @Override
+    public String toString() {
+        return "conflictCheck:" + conflictCheck +
+                ", changesApplied:" + changesApplied +
+                ", commitRoot:" + commitRoot +
+                ", waitUntilHead:" + waitUntilHead +
+                ", journalPush:" + journalPush +
+                ", headUpdate:" + headUpdate +
+                ", total:" + total +
+                ", numUpdateOps:" + numUpdateOps +
+                ", numPaths:" + numPaths;
+    }
+}
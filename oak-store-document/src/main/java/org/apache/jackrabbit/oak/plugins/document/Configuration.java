@@ -67,6 +67,15 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     "overridden via framework property 'oak.mongo.socketKeepAlive'")
     boolean socketKeepAlive() default DocumentNodeStoreService.DEFAULT_SO_KEEP_ALIVE;
 
+    @AttributeDefinition(
+            name = "MongoDB collection compressor",
+            description = "Block compressor for collections created in MongoDB " +
+                    "by the DocumentNodeStore. Supported values are 'snappy', " +
+                    "'zlib' and 'zstd' (MongoDB 4.2 and newer). Existing " +
+                    "collections are not changed. When empty, the server " +
+                    "default (usually 'snappy') is used.")
+    String collectionCompressor() default DocumentNodeStoreService.DEFAULT_COLLECTION_COMPRESSOR;
+
     @AttributeDefinition(
             name = "Cache Size (in MB)",
             description = "Cache size in MB. This is distributed among various caches used in DocumentNodeStore")
@@ -151,6 +160,13 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     "be pre-fetched in a background thread.")
     boolean prefetchExternalChanges() default DocumentNodeStoreService.DEFAULT_PREFETCH_EXTERNAL_CHANGES;
 
+    @AttributeDefinition(
+            name = "Pre-fetch child nodes",
+            description = "Boolean value indicating if the next batch of child " +
+                    "nodes should be pre-fetched in a background thread while " +
+                    "iterating over child nodes.")
+    boolean prefetchChildren() default DocumentNodeStoreService.DEFAULT_PREFETCH_CHILDREN;
+
     @AttributeDefinition(
             name = "NodeStoreProvider role",
             description = "Property indicating that this component will not register as a NodeStore but as a " +
@@ -34,6 +34,7 @@ import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
 import org.apache.jackrabbit.oak.json.JsonSerializer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlorUtils;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.Matcher;
@@ -269,6 +270,13 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
             checkValidName(name);
             return EmptyNodeState.MISSING_NODE;
         } else {
+            BundlingAnalyzer analyzer = store.getBundlingAnalyzer();
+            if (analyzer.isEnabled()) {
+                // decide on the parent side: a bundle root also has a
+                // matching matcher, but lives in its own document
+                boolean bundled = bundlingContext.matcher.next(name).isMatch();
+                analyzer.childRead(this, name, child, bundled);
+            }
             return child.withRootRevision(rootRevision, fromExternalChange);
         }
     }
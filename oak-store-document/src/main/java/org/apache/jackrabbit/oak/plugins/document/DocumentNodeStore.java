@@ -25,6 +25,7 @@ import static com.google.common.collect.Lists.reverse;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.jackrabbit.oak.api.CommitFailedException.OAK;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.JOURNAL;
@@ -56,9 +57,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -73,12 +78,14 @@ import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -87,12 +94,14 @@ import org.apache.jackrabbit.oak.plugins.blob.MarkSweepGarbageCollector;
 import org.apache.jackrabbit.oak.plugins.blob.ReferencedBlob;
 import org.apache.jackrabbit.oak.plugins.document.Branch.BranchCommit;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundledDocumentDiffer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCache;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.broadcast.DynamicBroadcastConfig;
 import org.apache.jackrabbit.oak.plugins.document.util.ReadOnlyDocumentStoreWrapperFactory;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
 import org.apache.jackrabbit.oak.commons.json.JsopStream;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
 import org.apache.jackrabbit.oak.api.Blob;
@@ -189,6 +198,23 @@ public final class DocumentNodeStore
      */
     private int journalPushThreshold = Integer.getInteger("oak.journalPushThreshold", 100000);
 
+    /**
+     * Commits that take longer than this number of milliseconds are logged
+     * with a breakdown of the time spent in the commit phases.
+     */
+    private final long slowCommitMillis = Long.getLong("oak.documentMK.slowCommitMillis", 10000);
+
+    /**
+     * Minimum interval in milliseconds between two slow commit log messages.
+     * Slow commits within the interval are only counted and reported with the
+     * next message.
+     */
+    private final long slowCommitLogIntervalMillis = Long.getLong("oak.documentMK.slowCommitLogIntervalMillis", 60000);
+
+    private final AtomicLong lastSlowCommitLog = new AtomicLong();
+
+    private final AtomicInteger slowCommitsSinceLastLog = new AtomicInteger();
+
     /**
      * How many collision entries to collect in a single call.
      */
@@ -201,6 +227,27 @@ public final class DocumentNodeStore
     private final int createOrUpdateBatchSize =
             Integer.getInteger("oak.documentMK.createOrUpdateBatchSize", 1000);
 
+    /**
+     * The maximum number of threads of the {@link #writeExecutor}.
+     */
+    private final int writeThreads =
+            Integer.getInteger("oak.documentMK.writeThreads", 4);
+
+    /**
+     * Bounded executor for concurrent writes to the document store. This is
+     * separate from the {@link #executor} passed in the builder, which may
+     * be shared with other tasks. When all threads are busy, a write runs in
+     * the calling thread.
+     */
+    private final ThreadPoolExecutor writeExecutor;
+
+    /**
+     * The maximum number of {@link DocumentStore#createOrUpdate(Collection, List)}
+     * batches of a branch commit in flight at the same time.
+     */
+    private final int branchCommitInFlightBatches =
+            Integer.getInteger("oak.documentMK.branchCommitInFlightBatches", 4);
+
     /**
      * The document store without potentially lease checking wrapper.
      */
@@ -498,6 +545,15 @@ public final class DocumentNodeStore
 
     private final BundlingConfigHandler bundlingConfigHandler = new BundlingConfigHandler();
 
+    /**
+     * Records child node reads for bundling recommendations. Disabled unless
+     * the system property oak.documentMK.bundlingAnalyzer is set or it is
+     * enabled through JMX.
+     */
+    private final BundlingAnalyzer bundlingAnalyzer = new BundlingAnalyzer(
+            Long.getLong("oak.documentMK.bundlingAnalyzer.minReads", 1000),
+            Double.parseDouble(System.getProperty("oak.documentMK.bundlingAnalyzer.minRatio", "0.5")));
+
     private final BundledDocumentDiffer bundledDocDiffer = new BundledDocumentDiffer(this);
 
     private final JournalPropertyHandlerFactory journalPropertyHandlerFactory;
@@ -521,8 +577,26 @@ public final class DocumentNodeStore
 
     private final Predicate<Path> nodeCachePredicate;
 
+    /**
+     * Whether the next batch of child nodes is read ahead in the background
+     * while iterating over child nodes.
+     */
+    private final boolean prefetchChildren;
+
+    /**
+     * Children cache keys scheduled for prefetch. The value is {@code false}
+     * while the prefetch is in progress and {@code true} once it completed.
+     * An entry is removed when the prefetched children are read.
+     */
+    private final Cache<NamePathRev, Boolean> prefetchedChildren =
+            CacheBuilder.newBuilder().maximumSize(1024).build();
+
     public DocumentNodeStore(DocumentNodeStoreBuilder<?> builder) {
         this.nodeCachePredicate = builder.getNodeCachePathPredicate();
+        this.prefetchChildren = builder.isPrefetchChildren() && builder.isAsyncExecutor();
+        if (builder.isPrefetchChildren() && !prefetchChildren) {
+            LOG.info("Prefetching of child nodes is disabled, no asynchronous executor is set");
+        }
         this.updateLimit = builder.getUpdateLimit();
         this.commitValueResolver = new CachingCommitValueResolver(
                 builder.getCommitValueCacheSize(), this::getSweepRevisions);
@@ -572,6 +646,14 @@ public final class DocumentNodeStore
             clusterNodeInfo.setLeaseFailureHandler(builder.getLeaseFailureHandler());
         }
         String threadNamePostfix = "(" + clusterId + ")";
+        writeExecutor = new ThreadPoolExecutor(Math.max(1, writeThreads),
+                Math.max(1, writeThreads), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(
+                        "DocumentNodeStore write thread-%d " + threadNamePostfix).build(),
+                // also runs the write when the executor is shut down
+                (r, e) -> r.run());
+        writeExecutor.allowCoreThreadTimeOut(true);
         leaseUpdateThread = new Thread(new BackgroundLeaseUpdate(this, stopLeaseUpdateThread),
                 "DocumentNodeStore lease update thread " + threadNamePostfix);
         leaseUpdateThread.setDaemon(true);
@@ -734,6 +816,9 @@ public final class DocumentNodeStore
 
         if (!builder.isBundlingDisabled()) {
             bundlingConfigHandler.initialize(this, executor);
+            if (Boolean.getBoolean("oak.documentMK.bundlingAnalyzer")) {
+                bundlingAnalyzer.setEnabled(true);
+            }
         }
     }
 
@@ -807,6 +892,7 @@ public final class DocumentNodeStore
         }
 
         Utils.joinQuietly(clusterUpdateThread);
+        new ExecutorCloser(writeExecutor).close();
 
         // Stop lease update thread once no further document store operations
         // are required
@@ -925,9 +1011,13 @@ public final class DocumentNodeStore
             try {
                 inDoubtTrunkCommits.remove(c.getRevision());
                 final RevisionVector[] newHead = new RevisionVector[1];
+                final CommitStats stats = c.getStats();
+                final long waitStart = System.nanoTime();
                 commitQueue.done(c.getRevision(), new CommitQueue.Callback() {
                     @Override
                     public void headOfQueue(@NotNull Revision revision) {
+                        long headStart = System.nanoTime();
+                        stats.waitUntilHead = NANOSECONDS.toMicros(headStart - waitStart);
                         // remember before revision
                         RevisionVector before = getHeadRevision();
 
@@ -957,7 +1047,12 @@ public final class DocumentNodeStore
                             if (changes.getNumChangedNodes() >= journalPushThreshold) {
                                 LOG.info("Pushing journal entry at {} as number of changes ({}) have reached threshold of {}",
                                         r, changes.getNumChangedNodes(), journalPushThreshold);
-                                pushJournalEntry(r);
+                                long pushStart = System.nanoTime();
+                                try {
+                                    pushJournalEntry(r);
+                                } finally {
+                                    stats.journalPush += NANOSECONDS.toMicros(System.nanoTime() - pushStart);
+                                }
                             }
                         } catch (Throwable e) {
                             if (success) {
@@ -973,9 +1068,11 @@ public final class DocumentNodeStore
                             setRoot(newHead[0]);
                             commitQueue.headRevisionChanged();
                             dispatcher.contentChanged(getRoot(), info);
+                            stats.headUpdate = NANOSECONDS.toMicros(System.nanoTime() - headStart);
                         }
                     }
                 });
+                doneCommit(c);
                 return newHead[0];
             } finally {
                 backgroundOperationLock.readLock().unlock();
@@ -985,6 +1082,7 @@ public final class DocumentNodeStore
             try {
                 c.applyLastRevUpdates(isBranch);
                 c.applyToCache(c.getBaseRevision(), isBranch);
+                doneCommit(c);
                 return c.getBaseRevision().update(c.getRevision().asBranchRevision());
             } finally {
                 if (isDisableBranches()) {
@@ -994,6 +1092,31 @@ public final class DocumentNodeStore
         }
     }
 
+    /**
+     * Reports the time spent in the phases of the given commit to the
+     * statistics collector and logs the breakdown if the commit was slow.
+     * Slow commits are logged at most once per
+     * {@link #slowCommitLogIntervalMillis}.
+     *
+     * @param c the commit that is done.
+     */
+    private void doneCommit(@NotNull Commit c) {
+        CommitStats stats = c.getStats();
+        nodeStoreStatsCollector.doneCommit(stats);
+        if (stats.total < MILLISECONDS.toMicros(slowCommitMillis)) {
+            return;
+        }
+        int numSlow = slowCommitsSinceLastLog.incrementAndGet();
+        long now = clock.getTime();
+        long last = lastSlowCommitLog.get();
+        if (now - last >= slowCommitLogIntervalMillis
+                && lastSlowCommitLog.compareAndSet(last, now)) {
+            slowCommitsSinceLastLog.addAndGet(-numSlow);
+            LOG.info("Slow commit {} took {} ms ({} slow commits since last message): {}",
+                    c.getRevision(), MICROSECONDS.toMillis(stats.total), numSlow, stats);
+        }
+    }
+
     void canceled(Commit c) {
         if (commitQueue.contains(c.getRevision())) {
             try {
@@ -1200,6 +1323,12 @@ public final class DocumentNodeStore
         final RevisionVector readRevision = parent.getLastRevision();
         try {
             NamePathRev key = childNodeCacheKey(path, readRevision, name);
+            if (prefetchChildren) {
+                Boolean prefetched = prefetchedChildren.asMap().remove(key);
+                if (prefetched != null) {
+                    nodeStoreStatsCollector.doneReadPrefetchedChildren(prefetched);
+                }
+            }
             DocumentNodeState.Children children = nodeChildrenCache.get(key, new Callable<DocumentNodeState.Children>() {
                 @Override
                 public DocumentNodeState.Children call() throws Exception {
@@ -1315,6 +1444,49 @@ public final class DocumentNodeStore
         return store.query(Collection.NODES, from, to, limit);
     }
 
+    /**
+     * Reads up to {@code limit} child nodes of {@code parent}, starting at the
+     * given {@code name} (exclusive) in the background. The child documents
+     * are read with a single range query and the resulting child node states
+     * and children list are put into the cache. This method does nothing if
+     * the children are already cached or a prefetch is already in progress.
+     *
+     * @param parent the parent node.
+     * @param name the name of the lower bound child node (exclusive).
+     * @param limit the maximum number of child nodes to prefetch.
+     */
+    private void prefetchChildren(@NotNull final AbstractDocumentNodeState parent,
+                                  @NotNull final String name,
+                                  final int limit) {
+        final NamePathRev key = childNodeCacheKey(
+                parent.getPath(), parent.getLastRevision(), name);
+        if (nodeChildrenCache.getIfPresent(key) != null
+                || prefetchedChildren.asMap().putIfAbsent(key, false) != null) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Stopwatch sw = Stopwatch.createStarted();
+                    try {
+                        DocumentNodeState.Children c = nodeChildrenCache.get(
+                                key, () -> readChildren(parent, name, limit));
+                        nodeStoreStatsCollector.donePrefetchChildren(
+                                c.children.size(), sw.elapsed(MICROSECONDS));
+                        prefetchedChildren.asMap().replace(key, false, true);
+                    } catch (ExecutionException | RuntimeException e) {
+                        LOG.debug("Prefetching children of {} failed", parent.getPath(), e);
+                        prefetchedChildren.invalidate(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Unable to prefetch children of {}", parent.getPath(), e);
+            prefetchedChildren.invalidate(key);
+        }
+    }
+
     /**
      * Returns up to {@code limit} child nodes, starting at the given
      * {@code name} (exclusive).
@@ -1337,7 +1509,14 @@ public final class DocumentNodeStore
         }
 
         final RevisionVector readRevision = parent.getLastRevision();
-        return transform(getChildren(parent, name, limit).children, new Function<String, DocumentNodeState>() {
+        DocumentNodeState.Children children = getChildren(parent, name, limit);
+        if (prefetchChildren && children.hasMore && !children.children.isEmpty()) {
+            // read ahead the next batch, twice the size of the current one
+            String last = children.children.get(children.children.size() - 1);
+            int nextLimit = (int) Math.min(((long) limit) << 1, DocumentNodeState.MAX_FETCH_SIZE);
+            prefetchChildren(parent, last, Math.max(nextLimit, limit));
+        }
+        return transform(children.children, new Function<String, DocumentNodeState>() {
             @Override
             public DocumentNodeState apply(String input) {
                 Path p = new Path(parent.getPath(), input);
@@ -1404,6 +1583,11 @@ public final class DocumentNodeStore
         return bundlingConfigHandler;
     }
 
+    @NotNull
+    public BundlingAnalyzer getBundlingAnalyzer() {
+        return bundlingAnalyzer;
+    }
+
     /**
      * Apply the changes of a node to the cache.
      *
@@ -2445,6 +2629,15 @@ public final class DocumentNodeStore
         return createOrUpdateBatchSize;
     }
 
+    int getBranchCommitInFlightBatches() {
+        return branchCommitInFlightBatches;
+    }
+
+    @NotNull
+    Executor getWriteExecutor() {
+        return writeExecutor;
+    }
+
     //-----------------------------< internal >---------------------------------
 
     private BackgroundWriteStats backgroundWrite() {
@@ -2459,7 +2652,7 @@ public final class DocumentNodeStore
             public void acquiring(Revision mostRecent) {
                 pushJournalEntry(mostRecent);
             }
-        }, backgroundOperationLock.writeLock());
+        }, backgroundOperationLock.writeLock(), writeExecutor);
     }
 
     private void maybeRefreshHeadRevision() {
@@ -128,8 +128,10 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
     private boolean useSimpleRevision;
     private boolean disableBranches;
     private boolean prefetchExternalChanges;
+    private boolean prefetchChildren;
     private Clock clock = Clock.SIMPLE;
     private Executor executor;
+    private boolean asyncExecutor;
     private String persistentCacheURI = DEFAULT_PERSISTENT_CACHE_URI;
     private PersistentCache persistentCache;
     private String journalCacheURI;
@@ -458,8 +460,38 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return executor;
     }
 
+    /**
+     * @return {@code true} if an executor is set, which does not run tasks
+     *          in the calling thread.
+     */
+    boolean isAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor for background tasks. The executor is assumed to
+     * run tasks asynchronously, see {@link #setExecutor(Executor, boolean)}.
+     *
+     * @param executor the executor
+     * @return this
+     */
     public T setExecutor(Executor executor){
+        return setExecutor(executor, executor != null);
+    }
+
+    /**
+     * Sets the executor for background tasks.
+     *
+     * @param executor the executor
+     * @param async whether the executor runs tasks asynchronously (and not
+     *          in the calling thread). Tasks that only pay off when run
+     *          asynchronously, like prefetching child nodes, are only
+     *          submitted to an asynchronous executor.
+     * @return this
+     */
+    public T setExecutor(Executor executor, boolean async) {
         this.executor = executor;
+        this.asyncExecutor = executor != null && async;
         return thisBuilder();
     }
 
@@ -546,6 +578,25 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return prefetchExternalChanges;
     }
 
+    /**
+     * Enables read-ahead of child nodes. While iterating over the child nodes
+     * of a node, the next batch of child nodes is read in the background
+     * with the {@link #getExecutor() executor} of this builder. Child nodes
+     * are only prefetched if an executor is set, which runs tasks
+     * asynchronously.
+     *
+     * @param b whether to prefetch child nodes.
+     * @return this
+     */
+    public T setPrefetchChildren(boolean b) {
+        prefetchChildren = b;
+        return thisBuilder();
+    }
+
+    public boolean isPrefetchChildren() {
+        return prefetchChildren;
+    }
+
     public T setJournalPropertyHandlerFactory(JournalPropertyHandlerFactory factory) {
         journalPropertyHandlerFactory = factory;
         return thisBuilder();
@@ -77,6 +77,27 @@ public interface DocumentNodeStoreMBean {
             @Name("clusterId")
             int clusterId);
 
+    @Description("Enables or disables the recording of child node reads for bundling recommendations.")
+    void enableBundlingAnalysis(
+            @Description("Whether child node reads are recorded.")
+            @Name("enabled")
+            boolean enabled);
+
+    @Description("Returns whether child node reads are recorded for bundling recommendations.")
+    boolean isBundlingAnalysisEnabled();
+
+    @Description("Returns child nodes, per primary type of the parent, that are usually read together\n" +
+            "with their parent but are stored in a separate document.")
+    String[] getBundlingRecommendations();
+
+    @Description("Adds the current bundling recommendations to the bundling configuration. Only affects\n" +
+            "nodes created afterwards. Returns the applied recommendations.")
+    String[] applyBundlingRecommendations();
+
+    @Description("Returns the fraction of node reads served by a separate document, since bundling\n" +
+            "recommendations were last applied, and the fraction before they were applied.")
+    String getReadAmplification();
+
     @Description("Invalidates all the caches used by the DocumentNodeStore: DiffCache, NodeCache and NodeChildrenCache.")
     String cleanAllCaches();
 
@@ -28,8 +28,10 @@ import com.google.common.base.Predicate;
 
 import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.api.stats.TimeSeries;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.stats.TimeSeriesStatsUtil;
 import org.slf4j.Logger;
@@ -240,6 +242,40 @@ final class DocumentNodeStoreMBeanImpl extends AnnotatedStandardMBean implements
         return nodeStore.getDocumentStore().query(Collection.NODES, from, to, 10000);
     }
 
+    @Override
+    public void enableBundlingAnalysis(boolean enabled) {
+        nodeStore.getBundlingAnalyzer().setEnabled(enabled);
+    }
+
+    @Override
+    public boolean isBundlingAnalysisEnabled() {
+        return nodeStore.getBundlingAnalyzer().isEnabled();
+    }
+
+    @Override
+    public String[] getBundlingRecommendations() {
+        return toArray(transform(nodeStore.getBundlingAnalyzer().getRecommendations(),
+                Object::toString), String.class);
+    }
+
+    @Override
+    public String[] applyBundlingRecommendations() {
+        try {
+            return toArray(transform(nodeStore.getBundlingAnalyzer().applyRecommendations(nodeStore),
+                    Object::toString), String.class);
+        } catch (CommitFailedException e) {
+            log.warn("Applying bundling recommendations failed", e);
+            return new String[]{"ERROR: " + e.getMessage()};
+        }
+    }
+
+    @Override
+    public String getReadAmplification() {
+        BundlingAnalyzer analyzer = nodeStore.getBundlingAnalyzer();
+        return "current: " + analyzer.getReadAmplification() +
+                ", before last applied recommendations: " + analyzer.getPreviousReadAmplification();
+    }
+
     @Override
     public String cleanAllCaches() {
         nodeStore.getDiffCache().invalidateAll();
@@ -51,6 +51,7 @@ import javax.sql.DataSource;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mongodb.MongoClientURI;
@@ -63,6 +64,7 @@ import org.apache.jackrabbit.oak.api.jmx.CheckpointMBean;
 import org.apache.jackrabbit.oak.api.jmx.PersistentCacheStatsMBean;
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.plugins.document.VersionGarbageCollector.VersionGCStats;
+import org.apache.jackrabbit.oak.plugins.document.mongo.CollectionCompressor;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentNodeStoreBuilder;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStoreMetrics;
@@ -102,6 +104,7 @@ import org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardExecutor;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.spi.descriptors.GenericDescriptors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
@@ -143,6 +146,8 @@ public class DocumentNodeStoreService {
     static final long DEFAULT_JOURNAL_GC_INTERVAL_MILLIS = 5*60*1000; // default is 5min
     static final long DEFAULT_JOURNAL_GC_MAX_AGE_MILLIS = 24*60*60*1000; // default is 24hours
     static final boolean DEFAULT_PREFETCH_EXTERNAL_CHANGES = false;
+    static final boolean DEFAULT_PREFETCH_CHILDREN = false;
+    static final String DEFAULT_COLLECTION_COMPRESSOR = "";
     private static final String DEFAULT_PROP_HOME = "./repository";
     static final long DEFAULT_MAX_REPLICATION_LAG = 6 * 60 * 60;
     static final boolean DEFAULT_BUNDLING_DISABLED = false;
@@ -291,6 +296,13 @@ public class DocumentNodeStoreService {
             configureBuilder(builder);
             builder.setMaxReplicationLag(config.maxReplicationLagInSecs(), TimeUnit.SECONDS);
             builder.setSocketKeepAlive(soKeepAlive);
+            CollectionCompressor compressor = getCollectionCompressor();
+            if (compressor != null) {
+                for (Collection<?> c : ImmutableList.of(Collection.NODES,
+                        Collection.CLUSTER_NODES, Collection.SETTINGS, Collection.JOURNAL)) {
+                    builder.setCollectionCompressor(c, compressor);
+                }
+            }
             builder.setMongoDB(uri, db, config.blobCacheSize());
             mkBuilder = builder;
 
@@ -455,6 +467,7 @@ public class DocumentNodeStoreService {
                     }
                 }).
                 setPrefetchExternalChanges(config.prefetchExternalChanges()).
+                setPrefetchChildren(config.prefetchChildren()).
                 setUpdateLimit(config.updateLimit()).
                 setJournalGCMaxAge(config.journalGCMaxAge()).
                 setNodeCachePathPredicate(createCachePredicate());
@@ -833,6 +846,25 @@ public class DocumentNodeStoreService {
         }
     }
 
+    /**
+     * @return the configured collection compressor, or {@code null} if none
+     *          is configured or the configured value is unknown (the server
+     *          default is used in that case).
+     */
+    @Nullable
+    private CollectionCompressor getCollectionCompressor() {
+        String name = config.collectionCompressor();
+        if (Strings.isNullOrEmpty(name)) {
+            return null;
+        }
+        try {
+            return CollectionCompressor.fromName(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown collection compressor '{}', using the server default", name);
+            return null;
+        }
+    }
+
     private String resolvePath(String value, String defaultValue) {
         String path = value;
         if (Strings.isNullOrEmpty(value)) {
@@ -65,6 +65,21 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BRANCH_COMMIT_COUNT = "DOCUMENT_NS_BRANCH_COMMIT_COUNT";
     static final String MERGE_BRANCH_COMMIT_COUNT = "DOCUMENT_NS_MERGE_BRANCH_COMMIT_COUNT";
 
+    static final String COMMIT_CONFLICT_CHECK_TIME = "DOCUMENT_NS_COMMIT_CONFLICT_CHECK_TIME";
+    private static final String COMMIT_CHANGES_APPLIED_TIME = "DOCUMENT_NS_COMMIT_CHANGES_APPLIED_TIME";
+    static final String COMMIT_ROOT_UPDATE_TIME = "DOCUMENT_NS_COMMIT_ROOT_UPDATE_TIME";
+    private static final String COMMIT_WAIT_UNTIL_HEAD_TIME = "DOCUMENT_NS_COMMIT_WAIT_UNTIL_HEAD_TIME";
+    private static final String COMMIT_JOURNAL_PUSH_TIME = "DOCUMENT_NS_COMMIT_JOURNAL_PUSH_TIME";
+    private static final String COMMIT_HEAD_UPDATE_TIME = "DOCUMENT_NS_COMMIT_HEAD_UPDATE_TIME";
+    static final String COMMIT_TOTAL_TIME = "DOCUMENT_NS_COMMIT_TOTAL_TIME";
+    static final String COMMIT_NUM_UPDATE_OPS_HISTO = "DOCUMENT_NS_COMMIT_NUM_UPDATE_OPS_HISTO";
+    private static final String COMMIT_NUM_PATHS_HISTO = "DOCUMENT_NS_COMMIT_NUM_PATHS_HISTO";
+
+    private static final String PREFETCH_CHILDREN_TIME = "DOCUMENT_NS_PREFETCH_CHILDREN_TIME";
+    static final String PREFETCH_CHILDREN_COUNT = "DOCUMENT_NS_PREFETCH_CHILDREN_COUNT";
+    static final String PREFETCH_CHILDREN_HIT = "DOCUMENT_NS_PREFETCH_CHILDREN_HIT";
+    static final String PREFETCH_CHILDREN_MISS = "DOCUMENT_NS_PREFETCH_CHILDREN_MISS";
+
     // background read
     private final TimerStats readHead;
     private final TimerStats readCacheInvalidate;
@@ -107,6 +122,23 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final MeterStats branchCommitRate;
     private final MeterStats mergeBranchCommitRate;
 
+    // commit phases
+    private final TimerStats commitConflictCheckTime;
+    private final TimerStats commitChangesAppliedTime;
+    private final TimerStats commitRootUpdateTime;
+    private final TimerStats commitWaitUntilHeadTime;
+    private final TimerStats commitJournalPushTime;
+    private final TimerStats commitHeadUpdateTime;
+    private final TimerStats commitTotalTime;
+    private final HistogramStats commitNumUpdateOps;
+    private final HistogramStats commitNumPaths;
+
+    // children prefetch
+    private final TimerStats prefetchChildrenTime;
+    private final MeterStats prefetchChildrenCount;
+    private final MeterStats prefetchChildrenHit;
+    private final MeterStats prefetchChildrenMiss;
+
 
     public DocumentNodeStoreStats(StatisticsProvider sp) {
         readHead = sp.getTimer(BGR_READ_HEAD, StatsOptions.METRICS_ONLY);
@@ -145,6 +177,21 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
         branchCommitRate = sp.getMeter(BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
         mergeBranchCommitRate = sp.getMeter(MERGE_BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
+
+        commitConflictCheckTime = sp.getTimer(COMMIT_CONFLICT_CHECK_TIME, StatsOptions.METRICS_ONLY);
+        commitChangesAppliedTime = sp.getTimer(COMMIT_CHANGES_APPLIED_TIME, StatsOptions.METRICS_ONLY);
+        commitRootUpdateTime = sp.getTimer(COMMIT_ROOT_UPDATE_TIME, StatsOptions.METRICS_ONLY);
+        commitWaitUntilHeadTime = sp.getTimer(COMMIT_WAIT_UNTIL_HEAD_TIME, StatsOptions.METRICS_ONLY);
+        commitJournalPushTime = sp.getTimer(COMMIT_JOURNAL_PUSH_TIME, StatsOptions.METRICS_ONLY);
+        commitHeadUpdateTime = sp.getTimer(COMMIT_HEAD_UPDATE_TIME, StatsOptions.METRICS_ONLY);
+        commitTotalTime = sp.getTimer(COMMIT_TOTAL_TIME, StatsOptions.METRICS_ONLY);
+        commitNumUpdateOps = sp.getHistogram(COMMIT_NUM_UPDATE_OPS_HISTO, StatsOptions.METRICS_ONLY);
+        commitNumPaths = sp.getHistogram(COMMIT_NUM_PATHS_HISTO, StatsOptions.METRICS_ONLY);
+
+        prefetchChildrenTime = sp.getTimer(PREFETCH_CHILDREN_TIME, StatsOptions.METRICS_ONLY);
+        prefetchChildrenCount = sp.getMeter(PREFETCH_CHILDREN_COUNT, StatsOptions.METRICS_ONLY);
+        prefetchChildrenHit = sp.getMeter(PREFETCH_CHILDREN_HIT, StatsOptions.METRICS_ONLY);
+        prefetchChildrenMiss = sp.getMeter(PREFETCH_CHILDREN_MISS, StatsOptions.METRICS_ONLY);
     }
 
     @Override
@@ -245,4 +292,32 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     public void doneChangesApplied(long timeMicros) {
         mergeChangesApplied.update(timeMicros, TimeUnit.MICROSECONDS);
     }
+
+    @Override
+    public void doneCommit(CommitStats stats) {
+        commitConflictCheckTime.update(stats.conflictCheck, TimeUnit.MICROSECONDS);
+        commitChangesAppliedTime.update(stats.changesApplied, TimeUnit.MICROSECONDS);
+        commitRootUpdateTime.update(stats.commitRoot, TimeUnit.MICROSECONDS);
+        commitWaitUntilHeadTime.update(stats.waitUntilHead, TimeUnit.MICROSECONDS);
+        commitJournalPushTime.update(stats.journalPush, TimeUnit.MICROSECONDS);
+        commitHeadUpdateTime.update(stats.headUpdate, TimeUnit.MICROSECONDS);
+        commitTotalTime.update(stats.total, TimeUnit.MICROSECONDS);
+        commitNumUpdateOps.update(stats.numUpdateOps);
+        commitNumPaths.update(stats.numPaths);
+    }
+
+    @Override
+    public void donePrefetchChildren(int numChildren, long timeMicros) {
+        prefetchChildrenTime.update(timeMicros, TimeUnit.MICROSECONDS);
+        prefetchChildrenCount.mark(numChildren);
+    }
+
+    @Override
+    public void doneReadPrefetchedChildren(boolean hit) {
+        if (hit) {
+            prefetchChildrenHit.mark();
+        } else {
+            prefetchChildrenMiss.mark();
+        }
+    }
 }
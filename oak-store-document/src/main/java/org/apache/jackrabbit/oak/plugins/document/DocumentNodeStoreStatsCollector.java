@@ -114,4 +114,36 @@ public interface DocumentNodeStoreStatsCollector {
      * @param timeMicros the time in microseconds.
      */
     void doneChangesApplied(long timeMicros);
+
+    /**
+     * Reports to the collector that a commit is done, with the time spent
+     * in the individual phases of the commit. The default implementation
+     * does nothing.
+     *
+     * @param stats the stats of the commit.
+     */
+    default void doneCommit(CommitStats stats) {
+    }
+
+    /**
+     * Reports to the collector that child nodes were prefetched in the
+     * background. The default implementation does nothing.
+     *
+     * @param numChildren the number of prefetched child nodes.
+     * @param timeMicros the time in microseconds it took to prefetch the
+     *          child nodes.
+     */
+    default void donePrefetchChildren(int numChildren, long timeMicros) {
+    }
+
+    /**
+     * Reports to the collector that child nodes were read, which had
+     * previously been scheduled for prefetch. The default implementation
+     * does nothing.
+     *
+     * @param hit {@code true} if the prefetch completed before the child
+     *          nodes were read, {@code false} if it was still in progress.
+     */
+    default void doneReadPrefetchedChildren(boolean hit) {
+    }
 }
@@ -16,12 +16,17 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.AbstractIterator;
+
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Condition;
 import org.apache.jackrabbit.oak.plugins.document.cache.CacheInvalidationStats;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -132,6 +137,67 @@ public interface DocumentStore {
                                        long startValue,
                                        int limit) throws DocumentStoreException;
 
+    /**
+     * Get the documents where the key is greater than a start value and less
+     * than an end value. Unlike {@link #query(Collection, String, String, int)}
+     * the documents are read incrementally while the caller iterates over the
+     * result. This method is therefore suitable for scans over a large number
+     * of documents.
+     * <p>
+     * The returned documents are sorted by key and are immutable. The iterable
+     * does not guarantee a consistent view on the store and must be closed
+     * when done. Implementations should not put the returned documents into
+     * the document cache.
+     * <p>
+     * The default implementation reads the documents in batches with
+     * {@link #query(Collection, String, String, int)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @param limit the maximum number of entries to return (starting with the lowest key)
+     * @return an iterable over the documents (possibly empty)
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error. The exception may also be thrown while iterating
+     *          over the result.
+     */
+    @NotNull
+    default <T extends Document> CloseableIterable<T> queryStream(final Collection<T> collection,
+                                                                  final String fromKey,
+                                                                  final String toKey,
+                                                                  final int limit)
+            throws DocumentStoreException {
+        final int batchSize = 100;
+        return CloseableIterable.wrap(() -> new AbstractIterator<T>() {
+
+            private Iterator<T> batch = Collections.emptyIterator();
+
+            private String startKey = fromKey;
+
+            private int remaining = limit;
+
+            private boolean exhausted;
+
+            @Override
+            protected T computeNext() {
+                while (!batch.hasNext()) {
+                    if (exhausted || remaining <= 0) {
+                        return endOfData();
+                    }
+                    int num = Math.min(remaining, batchSize);
+                    List<T> docs = query(collection, startKey, toKey, num);
+                    exhausted = docs.size() < num;
+                    batch = docs.iterator();
+                }
+                T doc = batch.next();
+                startKey = doc.getId();
+                remaining--;
+                return doc;
+            }
+        });
+    }
+
     /**
      * Remove a document. This method does nothing if there is no document
      * with the given key.
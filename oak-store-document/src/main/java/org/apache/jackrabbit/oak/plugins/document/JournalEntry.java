@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.document;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -27,8 +28,10 @@ import java.util.function.Consumer;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
@@ -67,6 +70,23 @@ public final class JournalEntry extends Document {
 
     private static final String CHANGES = "_c";
 
+    /**
+     * Prefix of {@link #CHANGES} in the compact format. The prefix is followed
+     * by the format version and the tree of changed paths. The JSON format
+     * always starts with '{'.
+     */
+    private static final String COMPACT_CHANGES_PREFIX = "#";
+
+    private static final char COMPACT_CHANGES_V1 = '1';
+
+    /**
+     * Whether new entries are written with changes in the compact format.
+     * Entries in either format are always readable, but cluster nodes running
+     * an older version cannot read the compact format. Only enable when all
+     * cluster nodes support it.
+     */
+    private static final boolean COMPACT_CHANGES = Boolean.getBoolean("oak.journal.compactChanges");
+
     private static final String CHANGE_SET = "_cs";
 
     static final String BRANCH_COMMITS = "_bc";
@@ -435,9 +455,14 @@ public final class JournalEntry extends Document {
     }
 
     UpdateOp asUpdateOp(@NotNull Revision revision) {
+        return asUpdateOp(revision, COMPACT_CHANGES);
+    }
+
+    UpdateOp asUpdateOp(@NotNull Revision revision, boolean compactChanges) {
         String id = asId(revision);
         UpdateOp op = new UpdateOp(id, true);
-        op.set(CHANGES, getChanges().serialize());
+        TreeNode node = getChanges();
+        op.set(CHANGES, compactChanges ? CompactChanges.serialize(node) : node.serialize());
 
         //For branch commits builder would be null
         if (changeSetBuilder != null) {
@@ -493,19 +518,13 @@ public final class JournalEntry extends Document {
     void addTo(final StringSort sort, Path path) throws IOException {
         TraversingVisitor v = new TraversingVisitor() {
             @Override
-            public void node(TreeNode node, Path p) throws IOException {
+            public void node(Path p) throws IOException {
                 sort.add(p.toString());
             }
         };
-        TreeNode n = getNode(path);
-        if (n != null) {
-            n.accept(v, path);
-        }
+        accept(v, path);
         for (JournalEntry e : getBranchCommits()) {
-            n = e.getNode(path);
-            if (n != null) {
-                n.accept(v, path);
-            }
+            e.accept(v, path);
         }
     }
 
@@ -557,12 +576,12 @@ public final class JournalEntry extends Document {
         TraversingVisitor v = new TraversingVisitor() {
 
             @Override
-            public void node(TreeNode node, Path path) throws IOException {
+            public void node(Path path) throws IOException {
                 sort.add(path.toString());
             }
         };
         for (JournalEntry e : getInvalidateOnly()) {
-            e.getChanges().accept(v, Path.ROOT);
+            e.accept(v, Path.ROOT);
         }
     }
 
@@ -631,6 +650,25 @@ public final class JournalEntry extends Document {
         return s;
     }
 
+    /**
+     * Visits the changed paths at or below {@code path}. Changes in the compact
+     * format are read directly from the serialized form unless they were
+     * already parsed.
+     */
+    private void accept(TraversingVisitor visitor, Path path) throws IOException {
+        if (changes == null) {
+            String c = (String) get(CHANGES);
+            if (c != null && CompactChanges.isCompact(c)) {
+                CompactChanges.accept(c, visitor, path);
+                return;
+            }
+        }
+        TreeNode n = getNode(path);
+        if (n != null) {
+            n.accept(visitor, path);
+        }
+    }
+
     @Nullable
     private TreeNode getNode(Path path) {
         TreeNode node = getChanges();
@@ -648,7 +686,9 @@ public final class JournalEntry extends Document {
         if (changes == null) {
             TreeNode node = new TreeNode(concurrent);
             String c = (String) get(CHANGES);
-            if (c != null) {
+            if (c != null && CompactChanges.isCompact(c)) {
+                CompactChanges.parse(c, node);
+            } else if (c != null) {
                 node.parse(new JsopTokenizer(c));
             }
             changes = node;
@@ -753,7 +793,7 @@ public final class JournalEntry extends Document {
         }
 
         void accept(TraversingVisitor visitor, Path path) throws IOException {
-            visitor.node(this, path);
+            visitor.node(path);
             for (Map.Entry<String, TreeNode> entry : children.entrySet()) {
                 entry.getValue().accept(visitor, new Path(path, entry.getKey()));
             }
@@ -784,7 +824,260 @@ public final class JournalEntry extends Document {
 
     private interface TraversingVisitor {
 
-        void node(TreeNode node, Path path) throws IOException;
+        void node(Path path) throws IOException;
+    }
+
+    /**
+     * The compact format of the changed paths. A node is serialized as the
+     * number of children followed by the children in name order. Each child
+     * is written as the length of the prefix it shares with the name of the
+     * previous sibling, the length and the characters of the remainder of
+     * the name, the length of the serialized child node and the child node.
+     * Numbers are written with five bits per character, using the Base64
+     * alphabet with the sixth bit as continuation flag, so the serialized
+     * form is a plain string without characters that need escaping. The
+     * length of the serialized child node allows a reader to skip subtrees
+     * that are not of interest.
+     * <p>
+     * The layout of all nodes, including their lengths, is computed first, so
+     * that the result is written into a single array without copying
+     * subtrees.
+     */
+    private static final class CompactChanges {
+
+        private static final char[] DIGITS =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+        private static final int[] DIGIT_VALUES = new int[128];
+
+        static {
+            Arrays.fill(DIGIT_VALUES, -1);
+            for (int i = 0; i < DIGITS.length; i++) {
+                DIGIT_VALUES[DIGITS[i]] = i;
+            }
+        }
+
+        private final String data;
+
+        private int pos;
+
+        private CompactChanges(String data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        static boolean isCompact(@NotNull String changes) {
+            return changes.startsWith(COMPACT_CHANGES_PREFIX);
+        }
+
+        static String serialize(@NotNull TreeNode node) {
+            List<Layout> layouts = Lists.newArrayList();
+            int size = layout(node, layouts);
+            char[] out = new char[COMPACT_CHANGES_PREFIX.length() + 1 + size];
+            COMPACT_CHANGES_PREFIX.getChars(0, COMPACT_CHANGES_PREFIX.length(), out, 0);
+            int pos = COMPACT_CHANGES_PREFIX.length();
+            out[pos++] = COMPACT_CHANGES_V1;
+            write(Iterators.peekingIterator(layouts.iterator()), out, pos);
+            return new String(out);
+        }
+
+        static void parse(@NotNull String changes, @NotNull TreeNode node) {
+            open(changes).read(node);
+        }
+
+        static void accept(@NotNull String changes,
+                           @NotNull TraversingVisitor visitor,
+                           @NotNull Path path) throws IOException {
+            CompactChanges reader = open(changes);
+            for (String name : path.elements()) {
+                if (!reader.seek(name)) {
+                    return;
+                }
+            }
+            reader.accept(visitor, path);
+        }
+
+        private static CompactChanges open(String changes) {
+            int versionIdx = COMPACT_CHANGES_PREFIX.length();
+            if (changes.length() <= versionIdx
+                    || changes.charAt(versionIdx) != COMPACT_CHANGES_V1) {
+                throw new IllegalArgumentException(
+                        "Unsupported format of journal changes: " + changes);
+            }
+            return new CompactChanges(changes, versionIdx + 1);
+        }
+
+        /**
+         * The sorted child names of a node, the length of the prefix each
+         * name shares with the previous name, and the serialized length of
+         * the node.
+         */
+        private static final class Layout {
+
+            final String[] names;
+
+            final int[] shared;
+
+            int size;
+
+            Layout(String[] names) {
+                this.names = names;
+                this.shared = new int[names.length];
+            }
+        }
+
+        /**
+         * Computes the layout of the given node and its descendants, and adds
+         * them to the list in the order they are written.
+         *
+         * @return the serialized length of the node.
+         */
+        private static int layout(TreeNode node, List<Layout> layouts) {
+            Set<String> keys = node.keySet();
+            String[] names = keys.toArray(new String[keys.size()]);
+            Arrays.sort(names);
+            Layout layout = new Layout(names);
+            layouts.add(layout);
+            int size = numberLength(names.length);
+            String previous = "";
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                int shared = sharedPrefixLength(previous, name);
+                int suffix = name.length() - shared;
+                int child = layout(node.get(name), layouts);
+                layout.shared[i] = shared;
+                size += numberLength(shared) + numberLength(suffix) + suffix
+                        + numberLength(child) + child;
+                previous = name;
+            }
+            layout.size = size;
+            return size;
+        }
+
+        /**
+         * Writes the next node at the given position.
+         *
+         * @return the position after the node.
+         */
+        private static int write(PeekingIterator<Layout> layouts, char[] out, int pos) {
+            Layout layout = layouts.next();
+            pos = writeNumber(layout.names.length, out, pos);
+            for (int i = 0; i < layout.names.length; i++) {
+                String name = layout.names[i];
+                int shared = layout.shared[i];
+                pos = writeNumber(shared, out, pos);
+                pos = writeNumber(name.length() - shared, out, pos);
+                name.getChars(shared, name.length(), out, pos);
+                pos += name.length() - shared;
+                // the layouts are in the order the nodes are written
+                pos = writeNumber(layouts.peek().size, out, pos);
+                pos = write(layouts, out, pos);
+            }
+            return pos;
+        }
+
+        private static int sharedPrefixLength(String s1, String s2) {
+            int max = Math.min(s1.length(), s2.length());
+            int i = 0;
+            while (i < max && s1.charAt(i) == s2.charAt(i)) {
+                i++;
+            }
+            // do not split a surrogate pair
+            if (i > 0 && Character.isHighSurrogate(s2.charAt(i - 1))) {
+                i--;
+            }
+            return i;
+        }
+
+        private static int numberLength(int value) {
+            int length = 1;
+            while ((value & ~0x1F) != 0) {
+                value >>>= 5;
+                length++;
+            }
+            return length;
+        }
+
+        private static int writeNumber(int value, char[] out, int pos) {
+            while ((value & ~0x1F) != 0) {
+                out[pos++] = DIGITS[(value & 0x1F) | 0x20];
+                value >>>= 5;
+            }
+            out[pos++] = DIGITS[value];
+            return pos;
+        }
+
+        private void read(TreeNode node) {
+            int numChildren = readNumber();
+            String previous = "";
+            for (int i = 0; i < numChildren; i++) {
+                String name = readName(previous);
+                readNumber();
+                read(node.getOrCreate(name));
+                previous = name;
+            }
+        }
+
+        /**
+         * Positions the reader at the child node with the given name of the
+         * current node.
+         *
+         * @return {@code true} if the child exists, {@code false} otherwise.
+         */
+        private boolean seek(String name) {
+            int numChildren = readNumber();
+            String previous = "";
+            for (int i = 0; i < numChildren; i++) {
+                String n = readName(previous);
+                int length = readNumber();
+                int c = n.compareTo(name);
+                if (c == 0) {
+                    return true;
+                } else if (c > 0) {
+                    // children are sorted by name
+                    return false;
+                }
+                pos += length;
+                previous = n;
+            }
+            return false;
+        }
+
+        private void accept(TraversingVisitor visitor, Path path) throws IOException {
+            visitor.node(path);
+            int numChildren = readNumber();
+            String previous = "";
+            for (int i = 0; i < numChildren; i++) {
+                String name = readName(previous);
+                readNumber();
+                accept(visitor, new Path(path, name));
+                previous = name;
+            }
+        }
+
+        private String readName(String previous) {
+            int shared = readNumber();
+            int length = readNumber();
+            String suffix = data.substring(pos, pos + length);
+            pos += length;
+            return shared == 0 ? suffix : previous.substring(0, shared) + suffix;
+        }
+
+        private int readNumber() {
+            int value = 0;
+            for (int shift = 0; ; shift += 5) {
+                char c = data.charAt(pos++);
+                int digit = c < DIGIT_VALUES.length ? DIGIT_VALUES[c] : -1;
+                if (digit < 0) {
+                    throw new IllegalArgumentException(
+                            "Invalid journal changes at position " + (pos - 1));
+                }
+                value |= (digit & 0x1F) << shift;
+                if ((digit & 0x20) == 0) {
+                    return value;
+                }
+            }
+        }
     }
 
     private interface MapFactory {
@@ -32,7 +32,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -78,6 +83,13 @@ public class LastRevRecoveryAgent {
 
     private static final long LOGINTERVALMS = TimeUnit.MINUTES.toMillis(1);
 
+    /**
+     * The maximum number of cluster nodes recovered concurrently by
+     * {@link #performRecoveryIfNeeded()}.
+     */
+    static final int RECOVERY_THREADS =
+            Integer.getInteger("oak.documentMK.lastRevRecoveryThreads", 4);
+
     public LastRevRecoveryAgent(DocumentStore store,
                                 RevisionContext revisionContext,
                                 MissingLastRevSeeker seeker,
@@ -654,15 +666,72 @@ public class LastRevRecoveryAgent {
 
     public void performRecoveryIfNeeded() {
         if (isRecoveryNeeded()) {
-            Iterable<Integer> clusterIds = getRecoveryCandidateNodes();
+            List<Integer> clusterIds = newArrayList(getRecoveryCandidateNodes());
             log.info("ClusterNodeId [{}] starting Last Revision Recovery for clusterNodeId(s) {}",
                     revisionContext.getClusterId(), clusterIds);
+            int numThreads = Math.min(clusterIds.size(), RECOVERY_THREADS);
+            if (numThreads <= 1) {
+                for (int clusterId : clusterIds) {
+                    recoverOrLogOngoing(clusterId);
+                }
+            } else {
+                recoverConcurrently(clusterIds, numThreads);
+            }
+        }
+    }
+
+    private void recoverOrLogOngoing(int clusterId) {
+        if (recover(clusterId) == -1) {
+            log.info("Last Revision Recovery for cluster node {} " +
+                    "ongoing by other cluster node.", clusterId);
+        }
+    }
+
+    /**
+     * Recovers the given cluster nodes using {@code numThreads} threads. The
+     * recovery of each cluster node is independent: it acquires its own
+     * recovery lock and only touches the {@code _lastRev} entries of the
+     * cluster node it recovers.
+     *
+     * @param clusterIds the cluster nodes to recover.
+     * @param numThreads the number of threads to use.
+     * @throws DocumentStoreException if recovery failed for any of the
+     *          cluster nodes.
+     */
+    private void recoverConcurrently(List<Integer> clusterIds, int numThreads)
+            throws DocumentStoreException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "LastRevRecovery-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
             for (int clusterId : clusterIds) {
-                if (recover(clusterId) == -1) {
-                    log.info("Last Revision Recovery for cluster node {} " +
-                            "ongoing by other cluster node.", clusterId);
+                futures.add(executor.submit(() -> recoverOrLogOngoing(clusterId)));
+            }
+            DocumentStoreException failure = null;
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = DocumentStoreException.convert(e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DocumentStoreException(
+                            "Interrupted while waiting for _lastRev recovery to finish.", e);
                 }
             }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -66,7 +66,7 @@ final class Range {
             low = Revision.fromString(value);
             height = 0;
         } else {
-            low = Revision.fromString(value.substring(0, idx));
+            low = Revision.fromString(value, 0, idx);
             height = Integer.parseInt(value.substring(idx + 1));
         }
         return new Range(rev, low, height);
@@ -229,12 +229,30 @@ public final class Revision implements CacheValue {
     }
 
     public static Revision fromString(String rev) {
-        boolean isBranch = rev.charAt(0) == 'b';
-        int idx = isBranch ? 2 : 1;
+        return fromString(rev, 0, rev.length());
+    }
+
+    /**
+     * Parses the string representation of a revision in the given range of
+     * {@code rev} without creating a substring.
+     *
+     * @param rev the character sequence containing the revision.
+     * @param start the start index of the revision (inclusive).
+     * @param end the end index of the revision (exclusive).
+     * @return the revision.
+     * @throws IllegalArgumentException if the range does not contain a valid
+     *          revision.
+     */
+    public static Revision fromString(CharSequence rev, int start, int end) {
+        if (end - start < 2) {
+            throw new IllegalArgumentException(rev.subSequence(start, end).toString());
+        }
+        boolean isBranch = rev.charAt(start) == 'b';
+        int idx = start + (isBranch ? 2 : 1);
         if (rev.charAt(idx - 1) != 'r') {
-            throw new IllegalArgumentException(rev);
+            throw new IllegalArgumentException(rev.subSequence(start, end).toString());
         }
-        int len = rev.length();
+        int len = end;
         // Parse timestamp
         long timestamp = 0;
         for (; idx < len; idx++) {
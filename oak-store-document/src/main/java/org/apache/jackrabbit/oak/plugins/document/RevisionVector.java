@@ -362,12 +362,23 @@ public final class RevisionVector implements Iterable<Revision>, Comparable<Revi
         if (s.isEmpty()) {
             return EMPTY;
         }
-        String[] list = s.split(",");
-        Revision[] revisions = new Revision[list.length];
-        for (int i = 0; i < list.length; i++) {
-            revisions[i] = Revision.fromString(list[i]);
+        int num = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == ',') {
+                num++;
+            }
+        }
+        Revision[] revisions = new Revision[num];
+        int start = 0;
+        for (int i = 0; i < num; i++) {
+            int end = s.indexOf(',', start);
+            if (end == -1) {
+                end = s.length();
+            }
+            revisions[i] = Revision.fromString(s, start, end);
+            start = end + 1;
         }
-        return new RevisionVector(revisions);
+        return new RevisionVector(revisions, true, true);
     }
 
     /**
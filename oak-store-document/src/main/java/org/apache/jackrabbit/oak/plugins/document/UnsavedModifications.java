@@ -16,11 +16,15 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
@@ -38,6 +42,7 @@ import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.CLUSTER_NODES;
@@ -57,6 +62,13 @@ class UnsavedModifications {
      */
     static final int BACKGROUND_MULTI_UPDATE_LIMIT = 100;
 
+    /**
+     * The maximum number of multi updates for documents at the same depth
+     * submitted concurrently.
+     */
+    static final int BACKGROUND_MULTI_UPDATE_PARALLELISM =
+            Integer.getInteger("oak.documentMK.backgroundUpdateParallelism", 4);
+
     private final ConcurrentMap<Path, Revision> map = MapFactory.getInstance().create();
 
     /**
@@ -146,6 +158,37 @@ class UnsavedModifications {
                                         @NotNull Supplier<Revision> sweepRevision,
                                         @NotNull Snapshot snapshot,
                                         @NotNull Lock lock) {
+        return persist(store, sweepRevision, snapshot, lock,
+                MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Persist the pending changes to _lastRev to the given store. This method
+     * will persist a snapshot of the pending revisions and current sweep
+     * revision by acquiring the passed lock for a short period of time.
+     * <p>
+     * The changes are written bottom-up with multi updates of at most
+     * {@link #BACKGROUND_MULTI_UPDATE_LIMIT} documents, which may span
+     * multiple depths. Only when there are more changes of a single depth
+     * than fit into one multi update, the multi updates for that depth are
+     * independent of each other and submitted concurrently to the given
+     * {@code executor}, at most {@link #BACKGROUND_MULTI_UPDATE_PARALLELISM}
+     * at a time.
+     *
+     * @param store the document store.
+     * @param sweepRevision supplier for the current sweep revision.
+     * @param snapshot callback when the snapshot of the pending changes is
+     *                 acquired.
+     * @param lock the lock to acquire to get a consistent snapshot of the
+     *             revisions to write back.
+     * @param executor the executor for the multi updates.
+     * @return stats about the write operation.
+     */
+    public BackgroundWriteStats persist(@NotNull DocumentStore store,
+                                        @NotNull Supplier<Revision> sweepRevision,
+                                        @NotNull Snapshot snapshot,
+                                        @NotNull Lock lock,
+                                        @NotNull Executor executor) {
         BackgroundWriteStats stats = new BackgroundWriteStats();
         if (map.size() == 0) {
             return stats;
@@ -154,6 +197,7 @@ class UnsavedModifications {
         checkNotNull(sweepRevision);
         checkNotNull(snapshot);
         checkNotNull(lock);
+        checkNotNull(executor);
 
         Stopwatch sw = Stopwatch.createStarted();
         // get a copy of the map while holding the lock
@@ -171,31 +215,26 @@ class UnsavedModifications {
             lock.unlock();
         }
         stats.num = pending.size();
-        List<UpdateOp> updates = Lists.newArrayList();
-        Map<Path, Revision> pathToRevision = Maps.newHashMap();
-        for (Iterable<Map.Entry<Path, Revision>> batch : Iterables.partition(
-                pending.entrySet(), BACKGROUND_MULTI_UPDATE_LIMIT)) {
-            for (Map.Entry<Path, Revision> entry : batch) {
-                Path p = entry.getKey();
-                Revision r = entry.getValue();
-                if (p.isRoot()) {
-                    // update root individually at the end
-                    continue;
-                }
-                updates.add(newUpdateOp(p, r));
-                pathToRevision.put(entry.getKey(), r);
+        // pending is sorted by depth, deepest first
+        List<Map.Entry<Path, Revision>> batch = Lists.newArrayList();
+        List<Map.Entry<Path, Revision>> sameDepth = Lists.newArrayList();
+        for (Map.Entry<Path, Revision> entry : pending.entrySet()) {
+            Path p = entry.getKey();
+            if (p.isRoot()) {
+                // update root individually at the end
+                continue;
             }
-            if (!updates.isEmpty()) {
-                store.createOrUpdate(NODES, updates);
-                stats.calls++;
-                for (Map.Entry<Path, Revision> entry : pathToRevision.entrySet()) {
-                    map.remove(entry.getKey(), entry.getValue());
-                    LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
-                }
-                // clean up for next batch
-                updates.clear();
-                pathToRevision.clear();
+            if (!sameDepth.isEmpty()
+                    && sameDepth.get(0).getKey().getDepth() != p.getDepth()) {
+                stats.calls += persistDepth(store, sameDepth, batch, executor);
+                sameDepth.clear();
             }
+            sameDepth.add(entry);
+        }
+        stats.calls += persistDepth(store, sameDepth, batch, executor);
+        if (!batch.isEmpty()) {
+            persistBatch(store, batch);
+            stats.calls++;
         }
         // finally update remaining root document
         Revision rootRev = pending.get(Path.ROOT);
@@ -234,6 +273,109 @@ class UnsavedModifications {
         return map.toString();
     }
 
+    /**
+     * Writes the {@code _lastRev} of documents at the same depth. If the
+     * entries fit into a single multi update, they are added to the given
+     * {@code batch}, which is written whenever it is full. Otherwise the
+     * {@code batch} with the entries of greater depth is written first and
+     * then the entries are written with concurrent multi updates.
+     *
+     * @param store the document store.
+     * @param entries the paths and revisions of the same depth to write.
+     * @param batch the pending multi update, possibly with entries of
+     *              greater depth.
+     * @param executor the executor for the multi updates.
+     * @return the number of multi updates.
+     * @throws DocumentStoreException if any of the updates fails.
+     */
+    private int persistDepth(@NotNull DocumentStore store,
+                             @NotNull List<Map.Entry<Path, Revision>> entries,
+                             @NotNull List<Map.Entry<Path, Revision>> batch,
+                             @NotNull Executor executor)
+            throws DocumentStoreException {
+        int calls = 0;
+        if (entries.size() > BACKGROUND_MULTI_UPDATE_LIMIT) {
+            if (!batch.isEmpty()) {
+                persistBatch(store, batch);
+                calls++;
+                batch.clear();
+            }
+            return calls + persistSameDepth(store, entries, executor);
+        }
+        for (Map.Entry<Path, Revision> entry : entries) {
+            batch.add(entry);
+            if (batch.size() == BACKGROUND_MULTI_UPDATE_LIMIT) {
+                persistBatch(store, batch);
+                calls++;
+                batch.clear();
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Writes the {@code _lastRev} of documents at the same depth with multi
+     * updates of at most {@link #BACKGROUND_MULTI_UPDATE_LIMIT} documents.
+     * This method returns when all updates are done.
+     *
+     * @param store the document store.
+     * @param entries the paths and revisions to write.
+     * @param executor the executor for the multi updates.
+     * @return the number of multi updates.
+     * @throws DocumentStoreException if any of the updates fails.
+     */
+    private int persistSameDepth(@NotNull DocumentStore store,
+                                 @NotNull List<Map.Entry<Path, Revision>> entries,
+                                 @NotNull Executor executor)
+            throws DocumentStoreException {
+        int calls = 0;
+        List<List<Map.Entry<Path, Revision>>> batches =
+                Lists.partition(entries, BACKGROUND_MULTI_UPDATE_LIMIT);
+        for (List<List<Map.Entry<Path, Revision>>> concurrent : Lists.partition(
+                batches, Math.max(1, BACKGROUND_MULTI_UPDATE_PARALLELISM))) {
+            if (concurrent.size() == 1) {
+                persistBatch(store, concurrent.get(0));
+                calls++;
+                continue;
+            }
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (List<Map.Entry<Path, Revision>> batch : concurrent) {
+                futures.add(CompletableFuture.runAsync(
+                        () -> persistBatch(store, batch), executor));
+            }
+            DocumentStoreException failure = null;
+            for (CompletableFuture<Void> f : futures) {
+                try {
+                    f.join();
+                    calls++;
+                } catch (CompletionException e) {
+                    if (failure == null) {
+                        failure = DocumentStoreException.convert(e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return calls;
+    }
+
+    private void persistBatch(@NotNull DocumentStore store,
+                              @NotNull List<Map.Entry<Path, Revision>> batch) {
+        List<UpdateOp> updates = Lists.newArrayList();
+        for (Map.Entry<Path, Revision> entry : batch) {
+            updates.add(newUpdateOp(entry.getKey(), entry.getValue()));
+        }
+        store.createOrUpdate(NODES, updates);
+        for (Map.Entry<Path, Revision> entry : batch) {
+            map.remove(entry.getKey(), entry.getValue());
+            LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
+        }
+    }
+
     private static UpdateOp newUpdateOp(Path path, Revision r) {
         UpdateOp updateOp = createUpdateOp(path, r, false);
         NodeDocument.setLastRev(updateOp, r);
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Maps;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.BUNDLOR;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.DOCUMENT_NODE_STORE;
+
+/**
+ * Records how often child nodes are read together with their parent, per
+ * primary type of the parent, and recommends bundling configurations for
+ * child nodes that are usually read with their parent but are stored in a
+ * separate document.
+ * <p>
+ * The analyzer is disabled by default and only adds a volatile read to the
+ * read path while disabled. The read amplification reported by the analyzer
+ * is the number of node reads served by a separate document divided by the
+ * number of all node reads. Applying recommendations keeps the read
+ * amplification observed so far and starts a new observation window, so
+ * the effect of the new configuration can be compared. Bundling only
+ * applies to nodes created after the configuration change.
+ */
+public class BundlingAnalyzer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundlingAnalyzer.class);
+
+    /**
+     * Maximum number of distinct child names tracked per type. Reads of
+     * other child names are not tracked per name once the limit is reached.
+     */
+    private static final int MAX_CHILD_NAMES = 1000;
+
+    /**
+     * Minimum number of reads of a type before children are recommended for
+     * bundling.
+     */
+    private final long minReads;
+
+    /**
+     * Minimum ratio of child reads to parent reads for a child to be
+     * recommended for bundling.
+     */
+    private final double minRatio;
+
+    private volatile boolean enabled;
+
+    private final ConcurrentMap<String, TypeStats> types = Maps.newConcurrentMap();
+
+    private final AtomicLong nodeReads = new AtomicLong();
+
+    private final AtomicLong separateReads = new AtomicLong();
+
+    private volatile double previousReadAmplification = Double.NaN;
+
+    public BundlingAnalyzer(long minReads, double minRatio) {
+        this.minReads = minReads;
+        this.minRatio = minRatio;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        LOG.info("Bundling analysis {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Records the read of a child node through its parent.
+     *
+     * @param parent the parent node.
+     * @param name the name of the child node.
+     * @param child the child node.
+     * @param bundled whether the child is bundled with the parent document.
+     */
+    public void childRead(@NotNull NodeState parent,
+                          @NotNull String name,
+                          @NotNull NodeState child,
+                          boolean bundled) {
+        nodeReads.incrementAndGet();
+        if (!bundled) {
+            separateReads.incrementAndGet();
+        }
+        String childType = getPrimaryType(child);
+        if (childType != null) {
+            getTypeStats(childType).reads.incrementAndGet();
+        }
+        String parentType = getPrimaryType(parent);
+        if (parentType != null && !name.startsWith(":")) {
+            getTypeStats(parentType).childRead(name, bundled);
+        }
+    }
+
+    /**
+     * @return the current bundling recommendations, ordered by the
+     *          estimated number of saved document reads.
+     */
+    @NotNull
+    public List<Recommendation> getRecommendations() {
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (Map.Entry<String, TypeStats> e : types.entrySet()) {
+            long reads = e.getValue().reads.get();
+            if (reads < minReads) {
+                continue;
+            }
+            for (Map.Entry<String, ChildStats> c : e.getValue().children.entrySet()) {
+                long childReads = c.getValue().reads.get();
+                long separate = c.getValue().separateReads.get();
+                double ratio = (double) childReads / reads;
+                // recommend children read with most of their parents
+                // and mostly served from a separate document
+                if (ratio >= minRatio && separate * 2 > childReads) {
+                    recommendations.add(new Recommendation(
+                            e.getKey(), c.getKey(), Math.min(ratio, 1), separate));
+                }
+            }
+        }
+        recommendations.sort((r1, r2) -> Long.compare(r2.savedReads, r1.savedReads));
+        return recommendations;
+    }
+
+    /**
+     * Adds the current recommendations to the bundling configuration and
+     * starts a new observation window.
+     *
+     * @param store the node store to update.
+     * @return the applied recommendations.
+     * @throws CommitFailedException if the configuration cannot be updated.
+     */
+    @NotNull
+    public List<Recommendation> applyRecommendations(@NotNull NodeStore store)
+            throws CommitFailedException {
+        List<Recommendation> recommendations = getRecommendations();
+        if (recommendations.isEmpty()) {
+            return recommendations;
+        }
+        NodeBuilder root = store.getRoot().builder();
+        NodeBuilder bundlor = root.getChildNode(JCR_SYSTEM)
+                .getChildNode(DOCUMENT_NODE_STORE).getChildNode(BUNDLOR);
+        if (!bundlor.exists()) {
+            throw new IllegalStateException("Bundling configuration does not exist at "
+                    + BundlingConfigHandler.CONFIG_PATH);
+        }
+        BundledTypesRegistry.BundledTypesRegistryBuilder registry =
+                new BundledTypesRegistry.BundledTypesRegistryBuilder(bundlor);
+        for (Recommendation r : recommendations) {
+            PropertyState patterns = bundlor.getChildNode(r.type)
+                    .getProperty(DocumentBundlor.PROP_PATTERN);
+            BundledTypesRegistry.BundledTypesRegistryBuilder.TypeBuilder type
+                    = registry.forType(r.type);
+            if (patterns != null) {
+                for (String p : patterns.getValue(Type.STRINGS)) {
+                    type.include(p);
+                }
+            }
+            type.include(r.childName).registry();
+        }
+        store.merge(root, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        LOG.info("Applied bundling recommendations {}", recommendations);
+
+        previousReadAmplification = getReadAmplification();
+        types.clear();
+        nodeReads.set(0);
+        separateReads.set(0);
+        return recommendations;
+    }
+
+    /**
+     * @return the fraction of node reads served by a separate document in
+     *          the current observation window or {@code NaN} if there were
+     *          no reads.
+     */
+    public double getReadAmplification() {
+        long reads = nodeReads.get();
+        return reads == 0 ? Double.NaN : (double) separateReads.get() / reads;
+    }
+
+    /**
+     * @return the read amplification of the observation window before
+     *          recommendations were last applied or {@code NaN} if none
+     *          were applied yet.
+     */
+    public double getPreviousReadAmplification() {
+        return previousReadAmplification;
+    }
+
+    private TypeStats getTypeStats(String type) {
+        TypeStats stats = types.get(type);
+        if (stats == null) {
+            TypeStats existing = types.putIfAbsent(type, stats = new TypeStats());
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private static String getPrimaryType(NodeState state) {
+        PropertyState p = state.getProperty(JCR_PRIMARYTYPE);
+        return p != null ? p.getValue(Type.NAME) : null;
+    }
+
+    /**
+     * A recommendation to bundle a child node with its parent.
+     */
+    public static final class Recommendation {
+
+        private final String type;
+        private final String childName;
+        private final double ratio;
+        private final long savedReads;
+
+        Recommendation(String type, String childName, double ratio, long savedReads) {
+            this.type = type;
+            this.childName = childName;
+            this.ratio = ratio;
+            this.savedReads = savedReads;
+        }
+
+        /**
+         * @return the primary type of the parent.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the name of the child node to bundle.
+         */
+        public String getChildName() {
+            return childName;
+        }
+
+        /**
+         * @return the number of child reads per parent read.
+         */
+        public double getRatio() {
+            return ratio;
+        }
+
+        /**
+         * @return the estimated number of document reads, and at most the
+         *          number of round trips to the store, that bundling would
+         *          have saved in the observation window. This is also an
+         *          upper bound for the number of documents saved.
+         */
+        public long getSavedReads() {
+            return savedReads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s/%s (ratio: %.2f, saved reads: %d)",
+                    type, childName, ratio, savedReads);
+        }
+    }
+
+    private static final class TypeStats {
+
+        final AtomicLong reads = new AtomicLong();
+
+        final ConcurrentMap<String, ChildStats> children = Maps.newConcurrentMap();
+
+        void childRead(String name, boolean bundled) {
+            ChildStats stats = children.get(name);
+            if (stats == null) {
+                if (children.size() >= MAX_CHILD_NAMES) {
+                    return;
+                }
+                ChildStats existing = children.putIfAbsent(name, stats = new ChildStats());
+                if (existing != null) {
+                    stats = existing;
+                }
+            }
+            stats.reads.incrementAndGet();
+            if (!bundled) {
+                stats.separateReads.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class ChildStats {
+
+        final AtomicLong reads = new AtomicLong();
+
+        final AtomicLong separateReads = new AtomicLong();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.util.Locale;
+import java.util.Map;
+
+import com.mongodb.BasicDBObject;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Block compressors of the MongoDB WiredTiger storage engine, which can be
+ * configured for collections created by the {@link MongoDocumentStore}.
+ * The block compressor of a collection is set when the collection is created
+ * and can not be changed afterwards.
+ */
+public enum CollectionCompressor {
+
+    /**
+     * The WiredTiger default, unless the server is configured with a
+     * different default.
+     */
+    SNAPPY("snappy"),
+
+    ZLIB("zlib"),
+
+    /**
+     * Requires MongoDB 4.2 or newer.
+     */
+    ZSTD("zstd");
+
+    private final String name;
+
+    CollectionCompressor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the compressor as used in the WiredTiger
+     *          configuration.
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the storage engine options to pass when a collection is
+     *          created with this compressor.
+     */
+    @NotNull
+    BasicDBObject getStorageEngineOptions() {
+        return new BasicDBObject("wiredTiger",
+                new BasicDBObject("configString", "block_compressor=" + name));
+    }
+
+    /**
+     * Returns the name of the block compressor from the WiredTiger creation
+     * string in the result of a {@code collStats} command.
+     *
+     * @param collStats the result of a {@code collStats} command.
+     * @return the name of the block compressor, an empty string if the
+     *          collection is not compressed, or {@code null} if the result
+     *          does not contain a WiredTiger creation string.
+     */
+    @Nullable
+    static String getBlockCompressor(@NotNull BasicDBObject collStats) {
+        Object wiredTiger = collStats.get("wiredTiger");
+        if (!(wiredTiger instanceof Map)) {
+            return null;
+        }
+        Object creationString = ((Map<?, ?>) wiredTiger).get("creationString");
+        if (creationString == null) {
+            return null;
+        }
+        for (String option : creationString.toString().split(",")) {
+            if (option.startsWith("block_compressor=")) {
+                return option.substring("block_compressor=".length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the compressor with the given name. The name is case
+     * insensitive.
+     *
+     * @param name the name of a compressor.
+     * @return the compressor.
+     * @throws IllegalArgumentException if there is no compressor with the
+     *          given name.
+     */
+    @NotNull
+    public static CollectionCompressor fromName(@NotNull String name)
+            throws IllegalArgumentException {
+        String n = name.trim().toLowerCase(Locale.ENGLISH);
+        for (CollectionCompressor c : values()) {
+            if (c.name.equals(n)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown collection compressor: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.oak.plugins.document.mongo;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import com.mongodb.MongoClient;
@@ -25,6 +27,7 @@ import com.mongodb.ReadConcernLevel;
 import com.mongodb.client.MongoDatabase;
 
 import org.apache.jackrabbit.oak.plugins.blob.ReferencedBlob;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilder;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -32,6 +35,7 @@ import org.apache.jackrabbit.oak.plugins.document.MissingLastRevSeeker;
 import org.apache.jackrabbit.oak.plugins.document.VersionGCSupport;
 import org.apache.jackrabbit.oak.plugins.document.util.MongoConnection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +55,7 @@ public abstract class MongoDocumentNodeStoreBuilderBase<T extends MongoDocumentN
     private MongoStatus mongoStatus;
     private long maxReplicationLagMillis = TimeUnit.HOURS.toMillis(6);
     private boolean clientSessionDisabled = false;
+    private final Map<Collection<?>, CollectionCompressor> collectionCompressors = new HashMap<>();
 
     /**
      * Uses the given information to connect to to MongoDB as backend
@@ -155,6 +160,38 @@ public abstract class MongoDocumentNodeStoreBuilderBase<T extends MongoDocumentN
         return clientSessionDisabled;
     }
 
+    /**
+     * Sets the block compressor for the given collection. The compressor is
+     * only applied when the {@link MongoDocumentStore} creates the collection,
+     * that is, when the collection does not exist yet. By default no
+     * compressor is configured and the collection is created with the
+     * default settings of the MongoDB server.
+     *
+     * @param collection the collection.
+     * @param compressor the compressor or {@code null} to use the server
+     *          default.
+     * @return this
+     */
+    public T setCollectionCompressor(@NotNull Collection<?> collection,
+                                     @Nullable CollectionCompressor compressor) {
+        if (compressor == null) {
+            collectionCompressors.remove(collection);
+        } else {
+            collectionCompressors.put(collection, compressor);
+        }
+        return thisBuilder();
+    }
+
+    /**
+     * @param collection the collection.
+     * @return the block compressor configured for the given collection or
+     *          {@code null} if none is configured.
+     */
+    @Nullable
+    public CollectionCompressor getCollectionCompressor(@NotNull Collection<?> collection) {
+        return collectionCompressors.get(collection);
+    }
+
     public T setMaxReplicationLag(long duration, TimeUnit unit){
         maxReplicationLagMillis = unit.toMillis(duration);
         return thisBuilder();
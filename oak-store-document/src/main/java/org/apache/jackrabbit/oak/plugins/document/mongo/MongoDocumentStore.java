@@ -71,6 +71,8 @@ import org.apache.jackrabbit.oak.plugins.document.cache.ModificationStamp;
 import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
 import org.apache.jackrabbit.oak.plugins.document.locks.NodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterator;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
@@ -94,6 +96,7 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.ReturnDocument;
@@ -221,6 +224,15 @@ public class MongoDocumentStore implements DocumentStore {
     private final int queryRetries =
             Integer.getInteger("oak.mongo.queryRetries", 2);
 
+    /**
+     * The number of documents MongoDB returns with one batch to a cursor
+     * opened by {@link #queryStream(Collection, String, String, int)}.
+     * <p>
+     * Default is 1000.
+     */
+    private final int queryStreamBatchSize =
+            Integer.getInteger("oak.mongo.queryStreamBatchSize", 1000);
+
     /**
      * Acceptable replication lag of secondaries in milliseconds. Reads are
      * directed to the primary if the estimated replication lag is higher than
@@ -264,6 +276,9 @@ public class MongoDocumentStore implements DocumentStore {
         this.sessionFactory = new MongoSessionFactory(client);
         this.db = db;
         stats = builder.getDocumentStoreStatsCollector();
+        if (!readOnly) {
+            createCompressedCollections(builder);
+        }
         nodes = db.getCollection(Collection.NODES.toString(), BasicDBObject.class);
         clusterNodes = db.getCollection(Collection.CLUSTER_NODES.toString(), BasicDBObject.class);
         settings = db.getCollection(Collection.SETTINGS.toString(), BasicDBObject.class);
@@ -291,6 +306,61 @@ public class MongoDocumentStore implements DocumentStore {
                 db.getWriteConcern(), mongoStatus.getServerDetails());
     }
 
+    /**
+     * Creates the collections for which a {@link CollectionCompressor} is
+     * configured in the builder, unless they already exist. A warning is
+     * logged for an existing collection with a different compressor, as the
+     * compressor of a collection can not be changed.
+     *
+     * @param builder the builder with the compressor configuration.
+     */
+    private void createCompressedCollections(MongoDocumentNodeStoreBuilderBase<?> builder) {
+        Set<String> existing = null;
+        for (Collection<?> c : ImmutableList.of(Collection.NODES,
+                Collection.CLUSTER_NODES, Collection.SETTINGS, Collection.JOURNAL)) {
+            CollectionCompressor compressor = builder.getCollectionCompressor(c);
+            if (compressor == null) {
+                continue;
+            }
+            if (existing == null) {
+                existing = db.listCollectionNames().into(new HashSet<>());
+            }
+            if (existing.contains(c.toString())) {
+                String current = getBlockCompressor(c);
+                if (!compressor.getName().equals(current)) {
+                    LOG.warn("Collection {} already exists with block compressor '{}'. " +
+                            "The configured {} compression only applies to new collections.",
+                            c, current, compressor);
+                }
+                continue;
+            }
+            try {
+                db.createCollection(c.toString(), new CreateCollectionOptions()
+                        .storageEngineOptions(compressor.getStorageEngineOptions()));
+                LOG.info("Created collection {} with {} compression", c, compressor);
+            } catch (MongoException e) {
+                LOG.warn("Unable to create collection {} with {} compression. " +
+                        "Using server defaults.", c, compressor, e);
+            }
+        }
+    }
+
+    /**
+     * @param c the collection.
+     * @return the WiredTiger block compressor of the given collection or
+     *          {@code null} if it is not known.
+     */
+    @Nullable
+    private String getBlockCompressor(Collection<?> c) {
+        try {
+            return CollectionCompressor.getBlockCompressor(new BasicDBObject(
+                    db.runCommand(new BasicDBObject("collStats", c.toString()))));
+        } catch (MongoException e) {
+            LOG.debug("Unable to read stats of collection {}", c, e);
+            return null;
+        }
+    }
+
     private void ensureIndexes(@NotNull MongoStatus mongoStatus) {
         // reading documents in the nodes collection and checking
         // existing indexes is performed against the MongoDB primary
@@ -744,6 +814,63 @@ public class MongoDocumentStore implements DocumentStore {
         }
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> CloseableIterable<T> queryStream(Collection<T> collection,
+                                                                 String fromKey,
+                                                                 String toKey,
+                                                                 int limit) {
+        log("queryStream", fromKey, toKey, limit);
+        Bson query = Filters.and(
+                Filters.gt(Document.ID, fromKey),
+                Filters.lt(Document.ID, toKey)
+        );
+        String parentId = Utils.getParentIdFromLowerLimit(fromKey);
+        ReadPreference readPreference = getMongoReadPreference(
+                collection, parentId, getDefaultReadPreference(collection));
+        MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection, readPreference);
+        return CloseableIterable.wrap(() -> {
+            // the client session must stay open while the cursor is in use,
+            // which is beyond the scope of execute(DocumentStoreCallable)
+            ClientSession session = withClientSession() ? sessionFactory.createClientSession() : null;
+            MongoCursor<BasicDBObject> cursor;
+            try {
+                FindIterable<BasicDBObject> result;
+                if (session != null) {
+                    result = dbCollection.find(session, query);
+                } else {
+                    result = dbCollection.find(query);
+                }
+                result.sort(BY_ID_ASC).batchSize(queryStreamBatchSize);
+                if (limit < Integer.MAX_VALUE) {
+                    result.limit(limit);
+                }
+                if (!disableIndexHint && !hasModifiedIdCompoundIndex) {
+                    result.hint(new BasicDBObject(NodeDocument.ID, 1));
+                }
+                cursor = result.iterator();
+            } catch (MongoException e) {
+                if (session != null) {
+                    session.close();
+                }
+                throw handleException(e, collection, Lists.newArrayList(fromKey, toKey));
+            }
+            return CloseableIterator.wrap(Iterators.transform(cursor, input -> {
+                T doc = convertFromDBObject(collection, input);
+                doc.seal();
+                return doc;
+            }), () -> {
+                try {
+                    cursor.close();
+                } finally {
+                    if (session != null) {
+                        session.close();
+                    }
+                }
+            });
+        });
+    }
+
     boolean canUseModifiedTimeIdx(long modifiedTimeInSecs) {
         if (maxDeltaForModTimeIdxSecs < 0) {
             return false;
@@ -1492,6 +1619,8 @@ public class MongoDocumentStore implements DocumentStore {
         T copy = null;
         if (n != null) {
             copy = collection.newDocument(this);
+            // revisions are shared by the maps of a document
+            Map<String, Revision> revisions = new HashMap<>();
             for (String key : n.keySet()) {
                 Object o = n.get(key);
                 if (o instanceof String) {
@@ -1506,7 +1635,7 @@ public class MongoDocumentStore implements DocumentStore {
                 } else if (o instanceof Boolean) {
                     copy.put(key, o);
                 } else if (o instanceof BasicDBObject) {
-                    copy.put(key, convertMongoMap((BasicDBObject) o));
+                    copy.put(key, convertMongoMap((BasicDBObject) o, revisions));
                 }
             }
         }
@@ -1514,10 +1643,12 @@ public class MongoDocumentStore implements DocumentStore {
     }
 
     @NotNull
-    private Map<Revision, Object> convertMongoMap(@NotNull BasicDBObject obj) {
+    private Map<Revision, Object> convertMongoMap(@NotNull BasicDBObject obj,
+                                                  @NotNull Map<String, Revision> revisions) {
         Map<Revision, Object> map = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
         for (Map.Entry<String, Object> entry : obj.entrySet()) {
-            map.put(Revision.fromString(entry.getKey()), entry.getValue());
+            map.put(revisions.computeIfAbsent(entry.getKey(), Revision::fromString),
+                    entry.getValue());
         }
         return map;
     }
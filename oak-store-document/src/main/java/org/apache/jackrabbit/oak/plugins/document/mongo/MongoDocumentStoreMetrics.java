@@ -77,6 +77,9 @@ public final class MongoDocumentStoreMetrics implements Runnable {
                 updateCounter(getCounter(c, "count"), stats.count);
                 updateCounter(getCounter(c, "size"), stats.size);
                 updateCounter(getCounter(c, "storageSize"), stats.storageSize);
+                // uncompressed size relative to storage size, in percent
+                updateCounter(getCounter(c, "compressionRatio"), stats.storageSize > 0
+                        ? stats.size * 100 / stats.storageSize : 0);
                 updateCounter(getCounter(c, "totalIndexSize"), stats.totalIndexSize);
             }
             DatabaseStats dbStats = getDBStats();
@@ -58,6 +58,13 @@ public abstract class MapFactory {
      * Close the store.
      */
     abstract void closeStore();
+
+    /**
+     * Close the store and delete the underlying file, if any. Unlike
+     * {@link #closeStore()}, this method never compacts the store, as the
+     * data is discarded anyway.
+     */
+    abstract void discardStore();
     
     /**
      * Open or get the given map.
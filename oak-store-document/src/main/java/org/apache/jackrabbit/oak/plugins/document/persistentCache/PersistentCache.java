@@ -301,11 +301,22 @@ public class PersistentCache implements Broadcaster.Listener {
             }
             
             @Override
-            synchronized void closeStore() {
+            void closeStore() {
+                closeStore(compactOnClose);
+            }
+
+            @Override
+            synchronized void discardStore() {
+                closeStore(false);
+                if (fileName != null) {
+                    new File(fileName).delete();
+                }
+            }
+
+            private synchronized void closeStore(boolean compact) {
                 if (store == null) {
                     return;
                 }
-                boolean compact = compactOnClose;
                 try {
                     if (store.getFileStore().isReadOnly()) {
                         compact = false;
@@ -461,6 +472,7 @@ public class PersistentCache implements Broadcaster.Listener {
         if (!needSwitch()) {
             return;
         }
+        MapFactory oldRead;
         synchronized (this) {
             // maybe another thread already switched,
             // so we need to check again
@@ -468,7 +480,7 @@ public class PersistentCache implements Broadcaster.Listener {
                 return;
             }
             int oldReadGeneration = readGeneration;
-            MapFactory oldRead = readStore;
+            oldRead = readStore;
             readStore = writeStore;
             readGeneration = writeGeneration;
             MapFactory w = createMapFactory(writeGeneration + 1, false);
@@ -480,10 +492,12 @@ public class PersistentCache implements Broadcaster.Listener {
                     c.removeGeneration(oldReadGeneration);
                 }
             }
-            if (oldRead != null) {
-                oldRead.closeStore();
-                new File(getFileName(oldReadGeneration)).delete();
-            }
+        }
+        // the old read generation is not referenced by any cache anymore.
+        // close and delete it outside of the lock, without compacting it,
+        // so that concurrent readers are not blocked by the rollover
+        if (oldRead != null) {
+            oldRead.discardStore();
         }
     }
     
@@ -17,20 +17,23 @@
 package org.apache.jackrabbit.oak.plugins.document.persistentCache.broadcast;
 
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -40,18 +43,27 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A broadcast mechanism that uses TCP. It is mainly used for testing.
+ * <p>
+ * Messages are sent as length-prefixed frames. Incoming connections from all
+ * peers are read by a single thread using a {@link Selector}, and a single
+ * thread sends batches of queued messages to all peers, flushing once per
+ * batch. The send queue is bounded: when it is full, the oldest message is
+ * dropped and counted, see {@link #getDroppedCount()}.
  */
 public class TCPBroadcaster implements Broadcaster {
 
     static final Logger LOG = LoggerFactory.getLogger(TCPBroadcaster.class);
     private static final int TIMEOUT = 100;
-    private static final int MAX_BUFFER_SIZE = 64;
+    private static final int DEFAULT_QUEUE_SIZE = 128;
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
     private static final AtomicInteger NEXT_ID = new AtomicInteger();
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
@@ -59,10 +71,13 @@ public class TCPBroadcaster implements Broadcaster {
 
     private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
     private final ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap<String, Client>();
-    private final ArrayBlockingQueue<ByteBuffer> sendBuffer = new ArrayBlockingQueue<ByteBuffer>(MAX_BUFFER_SIZE * 2);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private ArrayBlockingQueue<ByteBuffer> sendBuffer;
 
     private volatile DynamicBroadcastConfig broadcastConfig;
-    private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
     private Thread acceptThread;
     private Thread discoverThread;
     private Thread sendThread;
@@ -82,6 +97,7 @@ public class TCPBroadcaster implements Broadcaster {
             String[] parts = config.split(";");
             int startPort = 9800;
             int endPort = 9810;
+            int queueSize = DEFAULT_QUEUE_SIZE;
             String key = "";
             
             // for debugging, this will send everything to localhost:
@@ -96,6 +112,8 @@ public class TCPBroadcaster implements Broadcaster {
                     String[] ports = p.split(" ");
                     startPort = Integer.parseInt(ports[1]);
                     endPort = Integer.parseInt(ports[2]);
+                } else if (p.startsWith("queue ")) {
+                    queueSize = Integer.parseInt(p.split(" ")[1]);
                 } else if (p.startsWith("key ")) {
                     key = p.split(" ")[1];
                 } else if (p.startsWith("sendTo ")) {
@@ -107,15 +125,19 @@ public class TCPBroadcaster implements Broadcaster {
             if (key.length() > 0) {
                 ownKey = messageDigest.digest(key.getBytes(UTF8));
             }
+            sendBuffer = new ArrayBlockingQueue<ByteBuffer>(queueSize);
             IOException lastException = null;
-            ServerSocket server = null;
+            ServerSocketChannel server = null;
             for (int port = startPort; port <= endPort; port++) {
                 if (server == null) {
+                    ServerSocketChannel s = ServerSocketChannel.open();
                     try {
-                        server = new ServerSocket(port);
+                        s.bind(new InetSocketAddress(port));
+                        server = s;
                     } catch (IOException e) {
                         LOG.debug("Cannot open port " + port);
                         lastException = e;
+                        s.close();
                         // ignore
                     }
                 }
@@ -134,9 +156,11 @@ public class TCPBroadcaster implements Broadcaster {
             if (server == null && lastException != null) {
                 throw lastException;
             }
-            server.setSoTimeout(TIMEOUT);
-            serverSocket = server;
-            LOG.info("Listening on port " + server.getLocalPort());
+            server.configureBlocking(false);
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            serverChannel = server;
+            LOG.info("Listening on port " + server.socket().getLocalPort());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -175,11 +199,11 @@ public class TCPBroadcaster implements Broadcaster {
         this.broadcastConfig = broadcastConfig;
         HashMap<String, String> clientInfo = new HashMap<String, String>();
         clientInfo.put(DynamicBroadcastConfig.ID, ownKeyUUID);
-        ServerSocket s = serverSocket;
+        ServerSocketChannel s = serverChannel;
         if (s != null) {
             String address = getLocalAddress();
             if (address != null) {
-                ownListener = address + ":" + s.getLocalPort();
+                ownListener = address + ":" + s.socket().getLocalPort();
                 clientInfo.put(DynamicBroadcastConfig.LISTENER, ownListener);
             }
         }
@@ -204,55 +228,61 @@ public class TCPBroadcaster implements Broadcaster {
     void accept() {
         while (isRunning()) {
             try {
-                final Socket socket = serverSocket.accept();
-                Runnable r = new Runnable() {
-                    @Override
-                    public void run() {
+                selector.select(TIMEOUT);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) {
+                        continue;
+                    }
+                    if (k.isAcceptable()) {
+                        SocketChannel channel = serverChannel.accept();
+                        if (channel != null) {
+                            channel.configureBlocking(false);
+                            channel.register(selector, SelectionKey.OP_READ, new Connection());
+                        }
+                    } else if (k.isReadable()) {
+                        Connection c = (Connection) k.attachment();
+                        boolean open;
                         try {
-                            final DataInputStream in = new DataInputStream(socket.getInputStream());
-                            byte[] testKey = new byte[ownKey.length];
-                            in.readFully(testKey);
-                            if (ByteBuffer.wrap(testKey).compareTo(ByteBuffer.wrap(ownKey)) != 0) {
-                                LOG.debug("Key mismatch");
-                                socket.close();
-                                return;
-                            }
-                            while (!socket.isClosed()) {
-                                int len = in.readInt();
-                                byte[] data = new byte[len];
-                                in.readFully(data);
-                                ByteBuffer buff = ByteBuffer.wrap(data);
-                                int start = buff.position();
-                                for (Listener l : listeners) {
-                                    ((Buffer)buff).position(start);
-                                    l.receive(buff);
-                                }
-                            }
+                            open = c.read((SocketChannel) k.channel());
                         } catch (IOException e) {
-                            // ignore
+                            open = false;
+                        }
+                        if (!open) {
+                            k.cancel();
+                            k.channel().close();
                         }
                     }
-                };
-                Thread t = new Thread(r, "Oak TCPBroadcaster: listener");
-                t.setDaemon(true);
-                t.start();
-            } catch (SocketTimeoutException e) {
-                // ignore
+                }
             } catch (IOException e) {
                 if (isRunning()) {
                     LOG.warn("Receive failed", e);
                 }
                 // ignore
-            }                   
+            }
         }
-        try {        
-            serverSocket.close();
+        try {
+            for (SelectionKey k : selector.keys()) {
+                k.channel().close();
+            }
+            selector.close();
+            serverChannel.close();
         } catch (IOException e) {
             LOG.debug("Closed");
             // ignore
         }
     }
-    
+
+    private void receive(ByteBuffer buff) {
+        int start = buff.position();
+        for (Listener l : listeners) {
+            ((Buffer)buff).position(start);
+            l.receive(buff);
+        }
+    }
+
     void discover() {
         while (isRunning()) {
             DynamicBroadcastConfig b = broadcastConfig;
@@ -309,11 +339,15 @@ public class TCPBroadcaster implements Broadcaster {
     }
     
     void send() {
+        List<ByteBuffer> batch = new ArrayList<ByteBuffer>(MAX_BATCH_SIZE);
         while (isRunning()) {
             try {
                 ByteBuffer buff = sendBuffer.poll(10, TimeUnit.MILLISECONDS);
                 if (buff != null && isRunning()) {
-                    sendBuffer(buff);
+                    batch.add(buff);
+                    sendBuffer.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    sendBatch(batch);
+                    batch.clear();
                 }
             } catch (InterruptedException e) {
                 // ignore
@@ -326,28 +360,42 @@ public class TCPBroadcaster implements Broadcaster {
         ByteBuffer b = ByteBuffer.allocate(buff.remaining());
         b.put(buff);
         ((Buffer)b).flip();
-        while (sendBuffer.size() > MAX_BUFFER_SIZE) {
-            sendBuffer.poll();
-        }
-        try {
-            sendBuffer.add(b);
-        } catch (IllegalStateException e) {
-            // ignore - might happen once in a while,
-            // if the buffer was not yet full just before, but now
-            // many threads concurrently tried to add
+        while (!sendBuffer.offer(b)) {
+            // drop the oldest message, newer messages are more relevant
+            if (sendBuffer.poll() != null) {
+                dropped.incrementAndGet();
+            }
         }
     }
     
-    private void sendBuffer(ByteBuffer buff) {
-        int len = buff.limit();
-        byte[] data = new byte[len];
-        buff.get(data);
+    private void sendBatch(List<ByteBuffer> batch) {
+        List<byte[]> data = new ArrayList<byte[]>(batch.size());
+        for (ByteBuffer buff : batch) {
+            byte[] d = new byte[buff.limit()];
+            buff.get(d);
+            data.add(d);
+        }
         for (Client c : clients.values()) {
             c.send(data);
             if (!isRunning()) {
                 break;
             }
         }
+        sent.addAndGet(data.size());
+    }
+
+    /**
+     * @return the number of messages that were sent to the connected peers.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of messages dropped because the send queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
     }
 
     @Override
@@ -368,11 +416,7 @@ public class TCPBroadcaster implements Broadcaster {
                 stop.set(true);
                 stop.notifyAll();
             }
-            try {
-                serverSocket.close();
-            } catch (IOException e) {
-                // ignore
-            }
+            selector.wakeup();
             try {
                 acceptThread.join();
             } catch (InterruptedException e) {
@@ -395,6 +439,68 @@ public class TCPBroadcaster implements Broadcaster {
         return !stop.get();
     }
     
+    /**
+     * The receive state of an incoming connection.
+     */
+    private final class Connection {
+
+        private final ByteBuffer key = ByteBuffer.allocate(ownKey.length);
+        private final ByteBuffer length = ByteBuffer.allocate(4);
+        private ByteBuffer data;
+
+        /**
+         * Reads the available data from the channel and passes complete
+         * messages to the listeners.
+         *
+         * @param channel the channel to read from.
+         * @return {@code false} if the connection should be closed.
+         * @throws IOException if reading fails.
+         */
+        boolean read(SocketChannel channel) throws IOException {
+            while (true) {
+                if (key.hasRemaining()) {
+                    if (channel.read(key) < 0) {
+                        return false;
+                    }
+                    if (key.hasRemaining()) {
+                        return true;
+                    }
+                    ((Buffer)key).flip();
+                    if (key.compareTo(ByteBuffer.wrap(ownKey)) != 0) {
+                        LOG.debug("Key mismatch");
+                        return false;
+                    }
+                    ((Buffer)key).position(key.limit());
+                }
+                if (data == null) {
+                    if (channel.read(length) < 0) {
+                        return false;
+                    }
+                    if (length.hasRemaining()) {
+                        return true;
+                    }
+                    ((Buffer)length).flip();
+                    int len = length.getInt();
+                    ((Buffer)length).clear();
+                    if (len < 0 || len > MAX_MESSAGE_SIZE) {
+                        LOG.debug("Invalid message length " + len);
+                        return false;
+                    }
+                    data = ByteBuffer.allocate(len);
+                }
+                if (channel.read(data) < 0) {
+                    return false;
+                }
+                if (data.hasRemaining()) {
+                    return true;
+                }
+                ((Buffer)data).flip();
+                receive(data);
+                data = null;
+            }
+        }
+    }
+
     static class Client {
         final String host;
         final int port;
@@ -405,13 +511,15 @@ public class TCPBroadcaster implements Broadcaster {
             this.port = port;
             this.key = key;
         }
-        void send(byte[] data) {
+        void send(List<byte[]> messages) {
             DataOutputStream o = out;
             if (o != null) {
                 synchronized (o) {
                     try {
-                        o.writeInt(data.length);
-                        o.write(data);
+                        for (byte[] data : messages) {
+                            o.writeInt(data.length);
+                            o.write(data);
+                        }
                         o.flush();
                     } catch (IOException e) {
                         LOG.debug("Writing failed, port " + port, e);
@@ -25,6 +25,7 @@ import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJSONSupport.appe
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -178,6 +179,8 @@ public class RDBDocumentSerializer {
         byte[] bdata = row.getBdata();
         boolean blobInUse = false;
         JsopTokenizer json;
+        // revisions are shared by the maps of a document
+        Map<String, Revision> revisions = new HashMap<>();
 
         // case #1: BDATA (blob) contains base data, DATA (string) contains
         // update operations
@@ -186,7 +189,7 @@ public class RDBDocumentSerializer {
                 String s = fromBlobData(bdata);
                 json = new JsopTokenizer(s);
                 json.read('{');
-                readDocumentFromJson(json, doc);
+                readDocumentFromJson(json, doc, revisions);
                 json.read(JsopReader.END);
                 blobInUse = true;
             }
@@ -204,7 +207,7 @@ public class RDBDocumentSerializer {
                 if (blobInUse) {
                     throw new DocumentStoreException("expected literal \"blob\" but found: " + row.getData());
                 }
-                readDocumentFromJson(json, doc);
+                readDocumentFromJson(json, doc, revisions);
             } else if (next == JsopReader.STRING) {
                 if (!blobInUse) {
                     throw new DocumentStoreException("did not expect \"blob\" here: " + row.getData());
@@ -225,7 +228,7 @@ public class RDBDocumentSerializer {
                     }
                     List<List<Object>> update = (List<List<Object>>) ob;
                     for (List<Object> op : update) {
-                        applyUpdate(doc, update, op);
+                        applyUpdate(doc, update, op, revisions);
                     }
 
                 } while (json.matches(','));
@@ -250,7 +253,8 @@ public class RDBDocumentSerializer {
         }
     }
 
-    private <T extends Document> void applyUpdate(T doc, List updateString, List<Object> op) {
+    private <T extends Document> void applyUpdate(T doc, List updateString, List<Object> op,
+                                                  Map<String, Revision> revisions) {
         String opcode = op.get(0).toString();
         String key = op.get(1).toString();
         Revision rev = null;
@@ -258,7 +262,7 @@ public class RDBDocumentSerializer {
         if (op.size() == 3) {
             value = op.get(2);
         } else {
-            rev = Revision.fromString(op.get(2).toString());
+            rev = revisions.computeIfAbsent(op.get(2).toString(), Revision::fromString);
             value = op.get(3);
         }
         Object old = doc.get(key);
@@ -312,12 +316,13 @@ public class RDBDocumentSerializer {
     /**
      * Reads from an opened JSON stream ("{" already consumed) into a document.
      */
-    private static <T extends Document> void readDocumentFromJson(@NotNull JsopTokenizer json, @NotNull T doc) {
+    private static <T extends Document> void readDocumentFromJson(@NotNull JsopTokenizer json, @NotNull T doc,
+                                                                  @NotNull Map<String, Revision> revisions) {
         if (!json.matches('}')) {
             do {
                 String key = json.readString();
                 json.read(':');
-                Object value = JSON.parse(json);
+                Object value = JSON.parse(json, revisions);
                 doc.put(key, value);
             } while (json.matches(','));
             json.read('}');
@@ -81,6 +81,7 @@ import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
 import org.apache.jackrabbit.oak.plugins.document.locks.NodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -1821,6 +1822,17 @@ public class RDBDocumentStore implements DocumentStore {
         }
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> CloseableIterable<T> queryStream(Collection<T> collection,
+                                                                 String fromKey,
+                                                                 String toKey,
+                                                                 int limit) {
+        Iterable<T> it = queryAsIterable(collection, fromKey, toKey, EMPTY_KEY_PATTERN,
+                Collections.<QueryCondition>emptyList(), limit, "id");
+        return CloseableIterable.wrap(it, (Closeable) it);
+    }
+
     private static interface MyCloseableIterable<T> extends Closeable, Iterable<T> {
     }
 
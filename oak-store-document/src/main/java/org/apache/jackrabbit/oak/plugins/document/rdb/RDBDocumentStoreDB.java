@@ -160,6 +160,12 @@ public enum RDBDocumentStoreDB {
             return "select extract(epoch from now())::integer";
         }
 
+        @Override
+        public String getInsertConflictClause() {
+            // supported since 9.5, the minimal version checked above
+            return POSTGRES_INSERT_ON_CONFLICT ? " on conflict (ID) do nothing" : "";
+        }
+
         @Override
         public String getTableCreationStatement(String tableName, int schema) {
             return ("create table " + tableName
@@ -805,6 +811,9 @@ public enum RDBDocumentStoreDB {
 
     private static final String SYSPROP_PREFIX = "org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore";
 
+    private static final boolean POSTGRES_INSERT_ON_CONFLICT = Boolean
+            .parseBoolean(System.getProperty(SYSPROP_PREFIX + ".POSTGRES.INSERT_ON_CONFLICT", "true"));
+
     public enum FETCHFIRSTSYNTAX {
         FETCHFIRST, LIMIT, TOP
     };
@@ -859,6 +868,19 @@ public enum RDBDocumentStoreDB {
         };
     }
 
+    /**
+     * Clause appended to an insert statement that makes the database skip rows
+     * with an already existing ID instead of failing. A skipped row is reported
+     * with an update count of zero, while the remaining rows of a batch are
+     * still inserted. Without it, some databases abort the whole transaction
+     * on the first conflicting row of a batch.
+     *
+     * @return the clause or an empty string when not supported
+     */
+    public String getInsertConflictClause() {
+        return "";
+    }
+
     /**
      * Query for any required initialization of the DB.
      * 
@@ -250,15 +250,7 @@ public class RDBDocumentStoreJDBC {
     }
 
     public <T extends Document> Set<String> insert(Connection connection, RDBTableMetaData tmd, List<T> documents) throws SQLException {
-        int actualSchema = tmd.hasSplitDocs() ? 2 : 1;
-        PreparedStatement stmt = connection.prepareStatement(
-                "insert into " + tmd.getName() + "(ID, MODIFIED, HASBINARY, DELETEDONCE, MODCOUNT, CMODCOUNT, DSIZE, "
-                        + (tmd.hasVersion() ? "VERSION, " : "") 
-                        + (tmd.hasSplitDocs() ? "SDTYPE, SDMAXREVTIME, " : "")
-                        + "DATA, BDATA) " + "values (?, ?, ?, ?, ?, ?, ?, "
-                        + (tmd.hasVersion() ? (" " + actualSchema + ", ") : "")
-                        + (tmd.hasSplitDocs() ? "?, ?, " : "")
-                        + "?, ?)");
+        PreparedStatement stmt = connection.prepareStatement(getInsertStatement(tmd));
 
         List<T> sortedDocs = sortDocuments(documents);
         int[] results;
@@ -311,6 +303,17 @@ public class RDBDocumentStoreJDBC {
         return succesfullyInserted;
     }
 
+    String getInsertStatement(RDBTableMetaData tmd) {
+        int actualSchema = tmd.hasSplitDocs() ? 2 : 1;
+        return "insert into " + tmd.getName() + "(ID, MODIFIED, HASBINARY, DELETEDONCE, MODCOUNT, CMODCOUNT, DSIZE, "
+                + (tmd.hasVersion() ? "VERSION, " : "")
+                + (tmd.hasSplitDocs() ? "SDTYPE, SDMAXREVTIME, " : "")
+                + "DATA, BDATA) " + "values (?, ?, ?, ?, ?, ?, ?, "
+                + (tmd.hasVersion() ? (" " + actualSchema + ", ") : "")
+                + (tmd.hasSplitDocs() ? "?, ?, " : "")
+                + "?, ?)" + this.dbInfo.getInsertConflictClause();
+    }
+
     /**
      * Update a list of documents using JDBC batches. Some of the updates may fail because of the concurrent
      * changes. The method returns a set of successfully updated documents. It's the caller responsibility
@@ -75,6 +75,15 @@ public class RDBJSONSupport {
      */
     @Nullable
     public Object parse(@NotNull JsopTokenizer json) {
+        return parse(json, null);
+    }
+
+    /**
+     * Parses the supplied JSON. Revisions already present in
+     * {@code revisions} are reused, newly parsed revisions are added to it.
+     */
+    @Nullable
+    public Object parse(@NotNull JsopTokenizer json, @Nullable Map<String, Revision> revisions) {
         switch (json.read()) {
             case JsopReader.NULL:
                 return null;
@@ -104,7 +113,9 @@ public class RDBJSONSupport {
                             throw new IllegalArgumentException("unexpected null revision");
                         }
                         json.read(':');
-                        map.put(Revision.fromString(k), parse(json));
+                        Revision r = revisions == null ? Revision.fromString(k)
+                                : revisions.computeIfAbsent(k, Revision::fromString);
+                        map.put(r, parse(json, revisions));
                         json.matches(',');
                     }
                     return map;
@@ -119,7 +130,7 @@ public class RDBJSONSupport {
                             throw new IllegalArgumentException("unexpected null key");
                         }
                         json.read(':');
-                        map.put(k, parse(json));
+                        map.put(k, parse(json, revisions));
                         json.matches(',');
                     }
                     return map;
@@ -130,7 +141,7 @@ public class RDBJSONSupport {
                     if (json.matches(']')) {
                         break;
                     }
-                    list.add(parse(json));
+                    list.add(parse(json, revisions));
                     json.matches(',');
                 }
                 return list;
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.secondary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.filter.PathFilter;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.singletonList;
+import static org.apache.jackrabbit.oak.commons.PathUtils.isAncestor;
+
+/**
+ * Tracks read accesses to the secondary store per subtree and selects the
+ * most frequently read subtrees to be kept in the secondary store.
+ * <p>
+ * Subtrees are identified by the ancestor of an accessed path at the
+ * configured depth. Only paths included by the configured candidate filter
+ * are tracked. Access counts are halved with every {@link #update()}, which
+ * means recent reads weigh more than older reads. At most
+ * {@code maxSubtrees} subtrees with at least {@code minAccessCount} decayed
+ * reads are selected.
+ * <p>
+ * The tracker distinguishes the selected subtrees from the
+ * {@link #getActiveFilter() active} subtrees. A subtree only becomes active
+ * after {@link SecondaryStoreObserver} copied it into the secondary store,
+ * and the cache only serves reads for active subtrees.
+ */
+public class HotSubtreeTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HotSubtreeTracker.class);
+
+    private final PathFilter candidates;
+
+    private final int depth;
+
+    private final int maxSubtrees;
+
+    private final long minAccessCount;
+
+    private final long updateIntervalMillis;
+
+    private final Clock clock;
+
+    private final ConcurrentMap<String, AtomicLong> accessCounts = Maps.newConcurrentMap();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private long lastUpdate;
+
+    private volatile Set<String> selected = Collections.emptySet();
+
+    private volatile SubtreeFilter activeFilter = new SubtreeFilter(Collections.<String>emptySet());
+
+    /**
+     * @param candidates filter for paths that may be selected.
+     * @param depth the depth of the subtree roots to select.
+     * @param maxSubtrees the maximum number of subtrees to select.
+     * @param minAccessCount the minimum decayed number of reads for a
+     *          subtree to get selected.
+     * @param updateIntervalMillis the minimum interval between two updates
+     *          of the selection.
+     * @param clock the clock used for the update interval.
+     */
+    public HotSubtreeTracker(@NotNull PathFilter candidates,
+                             int depth,
+                             int maxSubtrees,
+                             long minAccessCount,
+                             long updateIntervalMillis,
+                             @NotNull Clock clock) {
+        checkArgument(depth > 0, "depth must be greater than zero: %s", depth);
+        checkArgument(maxSubtrees >= 0, "maxSubtrees must not be negative: %s", maxSubtrees);
+        this.candidates = checkNotNull(candidates);
+        this.depth = depth;
+        this.maxSubtrees = maxSubtrees;
+        this.minAccessCount = minAccessCount;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.clock = checkNotNull(clock);
+    }
+
+    /**
+     * Records a read of the given path from the secondary store cache.
+     *
+     * @param path the path that was read.
+     * @param hit whether the read was served by the secondary store.
+     */
+    public void accessed(@NotNull String path, boolean hit) {
+        requests.incrementAndGet();
+        if (hit) {
+            hits.incrementAndGet();
+        }
+        if (PathUtils.getDepth(path) < depth
+                || candidates.filter(path) != PathFilter.Result.INCLUDE) {
+            return;
+        }
+        String subtree = PathUtils.getAncestorPath(path, PathUtils.getDepth(path) - depth);
+        AtomicLong count = accessCounts.get(subtree);
+        if (count == null) {
+            AtomicLong existing = accessCounts.putIfAbsent(subtree, count = new AtomicLong());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Updates the selected subtrees from the access counts if the update
+     * interval passed since the last update.
+     *
+     * @return {@code true} if the selection changed; {@code false} otherwise.
+     */
+    public synchronized boolean update() {
+        long now = clock.getTime();
+        if (now - lastUpdate < updateIntervalMillis) {
+            return false;
+        }
+        lastUpdate = now;
+
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>();
+        for (Map.Entry<String, AtomicLong> e : accessCounts.entrySet()) {
+            // decay the counts first, so that subtrees are selected by
+            // their decayed counts, and forget subtrees without recent reads
+            long count = e.getValue().get();
+            long decayed = count / 2;
+            e.getValue().addAndGet(decayed - count);
+            if (decayed >= minAccessCount) {
+                ranked.add(Maps.immutableEntry(e.getKey(), decayed));
+            } else if (count == 0 && !selected.contains(e.getKey())) {
+                accessCounts.remove(e.getKey(), e.getValue());
+            }
+        }
+        ranked.sort((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        for (Map.Entry<String, Long> e : ranked.subList(0, Math.min(maxSubtrees, ranked.size()))) {
+            builder.add(e.getKey());
+        }
+        Set<String> newSelection = builder.build();
+        if (newSelection.equals(selected)) {
+            return false;
+        }
+        LOG.debug("Selected subtrees changed from {} to {}", selected, newSelection);
+        selected = newSelection;
+        return true;
+    }
+
+    /**
+     * @return the currently selected subtrees.
+     */
+    @NotNull
+    public Set<String> getSelectedSubtrees() {
+        return selected;
+    }
+
+    /**
+     * @return filter for the subtrees that are present in the secondary store.
+     */
+    @NotNull
+    public PathFilter getActiveFilter() {
+        return activeFilter;
+    }
+
+    /**
+     * @return the fraction of reads served by the secondary store.
+     */
+    public double getHitRate() {
+        long r = requests.get();
+        return r == 0 ? 0 : (double) hits.get() / r;
+    }
+
+    /**
+     * @return the subtrees that are present in the secondary store.
+     */
+    @NotNull
+    Set<String> getActiveSubtrees() {
+        return activeFilter.subtrees;
+    }
+
+    /**
+     * Marks the given subtrees as present in the secondary store.
+     *
+     * @param subtrees the subtrees present in the secondary store.
+     */
+    void activate(@NotNull Set<String> subtrees) {
+        activeFilter = new SubtreeFilter(subtrees);
+        LOG.info("Secondary store now contains {} subtrees. Hit rate so far: {}",
+                subtrees.size(), getHitRate());
+    }
+
+    /**
+     * @param subtrees the subtrees to include.
+     * @return a filter including the given subtrees.
+     */
+    @NotNull
+    static PathFilter filterFor(@NotNull Set<String> subtrees) {
+        return new SubtreeFilter(subtrees);
+    }
+
+    /**
+     * A path filter including a set of subtrees. It does not support excludes
+     * and does not require an included path.
+     */
+    private static final class SubtreeFilter extends PathFilter {
+
+        private final Set<String> subtrees;
+
+        SubtreeFilter(Set<String> subtrees) {
+            super(singletonList("/"), Collections.<String>emptyList());
+            this.subtrees = subtrees;
+        }
+
+        @Override
+        public Result filter(@NotNull String path) {
+            for (String subtree : subtrees) {
+                if (subtree.equals(path) || isAncestor(subtree, path)) {
+                    return Result.INCLUDE;
+                }
+            }
+            for (String subtree : subtrees) {
+                if (isAncestor(path, subtree)) {
+                    return Result.TRAVERSE;
+                }
+            }
+            return Result.EXCLUDE;
+        }
+
+        @Override
+        public String toString() {
+            return "SubtreeFilter" + subtrees;
+        }
+    }
+}
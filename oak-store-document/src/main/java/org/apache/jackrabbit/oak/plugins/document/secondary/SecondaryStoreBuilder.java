@@ -36,6 +36,7 @@ public class SecondaryStoreBuilder {
     private NodeStateDiffer differ = NodeStateDiffer.DEFAULT_DIFFER;
     private StatisticsProvider statsProvider = StatisticsProvider.NOOP;
     private List<String> metaPropNames = Collections.emptyList();
+    private HotSubtreeTracker tracker;
 
     public SecondaryStoreBuilder(NodeStore nodeStore) {
         this.store = nodeStore;
@@ -56,13 +57,22 @@ public class SecondaryStoreBuilder {
         return this;
     }
 
+    /**
+     * Selects the subtrees kept in the secondary store with the given tracker
+     * instead of the configured path filter.
+     */
+    public SecondaryStoreBuilder hotSubtreeTracker(HotSubtreeTracker tracker) {
+        this.tracker = tracker;
+        return this;
+    }
+
     public SecondaryStoreBuilder metaPropNames(List<String> metaPropNames) {
         this.metaPropNames = ImmutableList.copyOf(metaPropNames);
         return this;
     }
 
     public SecondaryStoreCache buildCache() {
-        return new SecondaryStoreCache(store, differ, pathFilter, statsProvider);
+        return new SecondaryStoreCache(store, differ, pathFilter, tracker, statsProvider);
     }
 
     public SecondaryStoreObserver buildObserver(){
@@ -70,6 +80,6 @@ public class SecondaryStoreBuilder {
     }
 
     public SecondaryStoreObserver buildObserver(SecondaryStoreRootObserver secondaryStoreRootObserver) {
-        return new SecondaryStoreObserver(store, metaPropNames, differ, pathFilter, statsProvider, secondaryStoreRootObserver);
+        return new SecondaryStoreObserver(store, metaPropNames, differ, pathFilter, tracker, statsProvider, secondaryStoreRootObserver);
     }
 }
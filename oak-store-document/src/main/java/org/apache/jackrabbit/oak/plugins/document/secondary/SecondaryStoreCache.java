@@ -43,7 +43,9 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
     private static final AbstractDocumentNodeState[] EMPTY = new AbstractDocumentNodeState[0];
     private final NodeStore store;
     private final PathFilter pathFilter;
+    private final HotSubtreeTracker tracker;
     private final NodeStateDiffer differ;
+    private final MeterStats requests;
     private final MeterStats unknownPaths;
     private final MeterStats knownMissed;
     private final MeterStats knownMissedOld;
@@ -57,9 +59,22 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
 
     public SecondaryStoreCache(NodeStore nodeStore, NodeStateDiffer differ, PathFilter pathFilter,
                                StatisticsProvider statisticsProvider) {
+        this(nodeStore, differ, pathFilter, null, statisticsProvider);
+    }
+
+    /**
+     * @param tracker if not {@code null}, reads are recorded with the tracker
+     *                and only served for the subtrees it reports as active
+     *                instead of the ones included by {@code pathFilter}.
+     */
+    public SecondaryStoreCache(NodeStore nodeStore, NodeStateDiffer differ, PathFilter pathFilter,
+                               @Nullable HotSubtreeTracker tracker,
+                               StatisticsProvider statisticsProvider) {
         this.differ = differ;
         this.store = nodeStore;
         this.pathFilter = pathFilter;
+        this.tracker = tracker;
+        this.requests = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_REQUESTS", StatsOptions.DEFAULT);
         this.unknownPaths = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_UNKNOWN", StatsOptions.DEFAULT);
         this.knownMissed = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_KNOWN_MISSED", StatsOptions.DEFAULT);
         this.knownMissedOld = statisticsProvider.getMeter("DOCUMENT_CACHE_SEC_KNOWN_MISSED_OLD", StatsOptions.DEFAULT);
@@ -75,10 +90,21 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
     @Override
     public AbstractDocumentNodeState getDocumentNodeState(Path path, RevisionVector rootRevision,
                                                           RevisionVector lastRev) {
+        requests.mark();
+        AbstractDocumentNodeState state = findDocumentNodeState(path, rootRevision, lastRev);
+        if (tracker != null) {
+            tracker.accessed(path.toString(), state != null);
+        }
+        return state;
+    }
+
+    @Nullable
+    private AbstractDocumentNodeState findDocumentNodeState(Path path, RevisionVector rootRevision,
+                                                            RevisionVector lastRev) {
         //TODO We might need skip the calls if they occur due to SecondaryStoreObserver
         //doing the diff or in the startup when we try to sync the state
         String p = path.toString();
-        PathFilter.Result result = pathFilter.filter(p);
+        PathFilter.Result result = currentFilter().filter(p);
         if (result != PathFilter.Result.INCLUDE) {
             unknownPaths.mark();
             return null;
@@ -118,7 +144,11 @@ public class SecondaryStoreCache implements DocumentNodeStateCache, SecondarySto
 
     @Override
     public boolean isCached(Path path) {
-        return pathFilter.filter(path.toString()) == PathFilter.Result.INCLUDE;
+        return currentFilter().filter(path.toString()) == PathFilter.Result.INCLUDE;
+    }
+
+    private PathFilter currentFilter() {
+        return tracker != null ? tracker.getActiveFilter() : pathFilter;
     }
 
     @Nullable
@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Lists;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
@@ -42,6 +43,7 @@ import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeStoreProvider;
 import org.apache.jackrabbit.oak.spi.whiteboard.Registration;
 import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.apache.jackrabbit.oak.stats.Clock;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.jetbrains.annotations.NotNull;
 import org.osgi.framework.BundleContext;
@@ -86,6 +88,40 @@ public class SecondaryStoreCacheService {
                 description = "Observer queue size. Used if 'enableAsyncObserver' is set to true"
         )
         int observerQueueSize() default BackgroundObserver.DEFAULT_QUEUE_SIZE;
+
+        @AttributeDefinition(
+                name = "Automatic Path Selection",
+                description = "Keep the most frequently read subtrees within the included paths in the " +
+                        "secondary store instead of all included paths"
+        )
+        boolean autoSelectPaths() default false;
+
+        @AttributeDefinition(
+                name = "Subtree Depth",
+                description = "Depth of the subtrees selected when 'autoSelectPaths' is set to true"
+        )
+        int subtreeDepth() default 3;
+
+        @AttributeDefinition(
+                name = "Maximum Subtrees",
+                description = "Maximum number of subtrees kept in the secondary store when 'autoSelectPaths' " +
+                        "is set to true"
+        )
+        int maxSubtrees() default 100;
+
+        @AttributeDefinition(
+                name = "Minimum Access Count",
+                description = "Minimum number of recent reads for a subtree to be selected when " +
+                        "'autoSelectPaths' is set to true"
+        )
+        int minAccessCount() default 100;
+
+        @AttributeDefinition(
+                name = "Selection Update Interval",
+                description = "Interval in seconds between updates of the selected subtrees when " +
+                        "'autoSelectPaths' is set to true"
+        )
+        int selectionUpdateIntervalSeconds() default 60;
     }
 
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -140,6 +176,11 @@ public class SecondaryStoreCacheService {
                 .metaPropNames(DocumentNodeStore.META_PROP_NAMES)
                 .statisticsProvider(statisticsProvider)
                 .pathFilter(pathFilter);
+        if (config.autoSelectPaths()) {
+            builder.hotSubtreeTracker(new HotSubtreeTracker(pathFilter, config.subtreeDepth(),
+                    config.maxSubtrees(), config.minAccessCount(),
+                    TimeUnit.SECONDS.toMillis(config.selectionUpdateIntervalSeconds()), Clock.SIMPLE));
+        }
         SecondaryStoreCache cache = builder.buildCache();
         SecondaryStoreObserver observer = builder.buildObserver(cache);
         registerObserver(observer, config);
@@ -20,9 +20,11 @@
 package org.apache.jackrabbit.oak.plugins.document.secondary;
 
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Sets;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.NodeStateDiffer;
@@ -38,9 +40,15 @@ import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getName;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
 public class SecondaryStoreObserver implements Observer {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final NodeStore nodeStore;
@@ -48,6 +56,7 @@ public class SecondaryStoreObserver implements Observer {
     private final List<String> metaPropNames;
     private final SecondaryStoreRootObserver secondaryObserver;
     private final NodeStateDiffer differ;
+    private final HotSubtreeTracker tracker;
     private final TimerStats local;
     private final TimerStats external;
     private boolean firstEventProcessed;
@@ -58,7 +67,23 @@ public class SecondaryStoreObserver implements Observer {
                                   PathFilter pathFilter,
                                   StatisticsProvider statisticsProvider,
                                   SecondaryStoreRootObserver secondaryObserver) {
+        this(nodeStore, metaPropNames, differ, pathFilter, null, statisticsProvider, secondaryObserver);
+    }
+
+    /**
+     * @param tracker if not {@code null}, the subtrees selected by the tracker
+     *                are kept in the secondary store instead of the ones
+     *                included by {@code pathFilter}.
+     */
+    public SecondaryStoreObserver(NodeStore nodeStore,
+                                  List<String> metaPropNames,
+                                  NodeStateDiffer differ,
+                                  PathFilter pathFilter,
+                                  @Nullable HotSubtreeTracker tracker,
+                                  StatisticsProvider statisticsProvider,
+                                  SecondaryStoreRootObserver secondaryObserver) {
         this.nodeStore = nodeStore;
+        this.tracker = tracker;
         this.pathFilter = pathFilter;
         this.secondaryObserver = secondaryObserver;
         this.differ = differ;
@@ -80,16 +105,28 @@ public class SecondaryStoreObserver implements Observer {
         NodeState secondaryRoot = nodeStore.getRoot();
         NodeState base = DelegatingDocumentNodeState.wrapIfPossible(secondaryRoot, differ);
         NodeBuilder builder = secondaryRoot.builder();
-        ApplyDiff diff = new PathFilteringDiff(builder, pathFilter, metaPropNames, target);
+        PathFilter filter = tracker != null ? tracker.getActiveFilter() : pathFilter;
+        ApplyDiff diff = new PathFilteringDiff(builder, filter, metaPropNames, target);
 
         //Copy the root node meta properties
         PathFilteringDiff.copyMetaProperties(target, builder, metaPropNames);
 
         //Apply the rest of properties
         target.compareAgainstBaseState(base, diff);
+
+        Set<String> subtrees = null;
+        if (tracker != null && tracker.update()) {
+            subtrees = tracker.getSelectedSubtrees();
+            syncSubtrees(target, builder, tracker.getActiveSubtrees(), subtrees);
+        }
         try {
             NodeState updatedSecondaryRoot = nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
             secondaryObserver.contentChanged(DelegatingDocumentNodeState.wrap(updatedSecondaryRoot, differ));
+            if (subtrees != null) {
+                //Only serve reads from the new subtrees once the cache
+                //serves the merged root
+                tracker.activate(subtrees);
+            }
 
             TimerStats timer = info.isExternal() ? external : local;
             timer.update(w.elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
@@ -104,4 +141,47 @@ public class SecondaryStoreObserver implements Observer {
         }
     }
 
+    /**
+     * Removes subtrees that are no longer selected from the secondary store
+     * and copies newly selected subtrees from the target state.
+     */
+    private void syncSubtrees(AbstractDocumentNodeState target,
+                              NodeBuilder builder,
+                              Set<String> active,
+                              Set<String> selected) {
+        for (String path : Sets.difference(active, selected)) {
+            NodeBuilder child = builder;
+            for (String name : elements(path)) {
+                child = child.getChildNode(name);
+            }
+            if (child.exists()) {
+                child.remove();
+            }
+        }
+        PathFilter filter = HotSubtreeTracker.filterFor(selected);
+        for (String path : Sets.difference(selected, active)) {
+            AbstractDocumentNodeState state = target;
+            NodeBuilder parent = builder;
+            for (String name : elements(getParentPath(path))) {
+                NodeState child = state.getChildNode(name);
+                if (!child.exists()) {
+                    break;
+                }
+                state = (AbstractDocumentNodeState) child;
+                parent = parent.child(name);
+                PathFilteringDiff.copyMetaProperties(state, parent, metaPropNames);
+            }
+            NodeState subtree = state.getChildNode(getName(path));
+            if (!state.getPath().toString().equals(getParentPath(path)) || !subtree.exists()) {
+                continue;
+            }
+            //Replace possibly stale content left from an earlier selection
+            AbstractDocumentNodeState subtreeState = (AbstractDocumentNodeState) subtree;
+            NodeBuilder child = parent.setChildNode(getName(path));
+            PathFilteringDiff.copyMetaProperties(subtreeState, child, metaPropNames);
+            subtreeState.compareAgainstBaseState(EMPTY_NODE,
+                    new PathFilteringDiff(child, filter, metaPropNames, subtreeState));
+        }
+    }
+
 }
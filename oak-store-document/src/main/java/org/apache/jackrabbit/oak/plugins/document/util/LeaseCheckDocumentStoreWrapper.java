@@ -85,6 +85,14 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         return delegate.query(collection, fromKey, toKey, indexedProperty, startValue, limit);
     }
 
+    @NotNull
+    @Override
+    public final <T extends Document> CloseableIterable<T> queryStream(Collection<T> collection,
+            String fromKey, String toKey, int limit) {
+        performLeaseCheck();
+        return delegate.queryStream(collection, fromKey, toKey, limit);
+    }
+
     @Override
     public final <T extends Document> void remove(Collection<T> collection, String key) {
         performLeaseCheck();
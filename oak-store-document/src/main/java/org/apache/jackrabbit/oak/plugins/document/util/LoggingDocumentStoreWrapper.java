@@ -142,6 +142,26 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> CloseableIterable<T> queryStream(final Collection<T> collection,
+                                final String fromKey,
+                                final String toKey,
+                                final int limit) {
+        try {
+            logMethod("queryStream", collection, fromKey, toKey, limit);
+            return logResult(new Callable<CloseableIterable<T>>() {
+                @Override
+                public CloseableIterable<T> call() throws Exception {
+                    return store.queryStream(collection, fromKey, toKey, limit);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
     @Override
     public <T extends Document> void remove(Collection<T> collection, String key) {
         try {
@@ -64,6 +64,13 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.query(collection, fromKey, toKey, indexedProperty, startValue, limit);
     }
 
+    @Override
+    @NotNull
+    public synchronized <T extends Document> CloseableIterable<T> queryStream(final Collection<T> collection,
+            final String fromKey, final String toKey, final int limit) {
+        return store.queryStream(collection, fromKey, toKey, limit);
+    }
+
     @Override
     public synchronized <T extends Document> void remove(Collection<T> collection, String key) {
         store.remove(collection, key);
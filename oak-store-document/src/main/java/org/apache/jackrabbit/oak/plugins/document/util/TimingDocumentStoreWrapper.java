@@ -163,6 +163,25 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> CloseableIterable<T> queryStream(Collection<T> collection,
+                                                                 String fromKey,
+                                                                 String toKey,
+                                                                 int limit) {
+        try {
+            long start = now();
+            CloseableIterable<T> result = base.queryStream(collection, fromKey, toKey, limit);
+            updateAndLogTimes("queryStream", start, 0, 0);
+            if (logCommonCall()) {
+                logCommonCall(start, "queryStream " + collection + " " + fromKey + " " + toKey + " " + limit);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     public <T extends Document> void remove(Collection<T> collection, String key) {
         try {
@@ -530,7 +530,7 @@ public class Utils {
     public static Revision resolveCommitRevision(@NotNull Revision rev,
                                                  @NotNull String tag) {
         return checkNotNull(tag).startsWith("c-") ?
-                Revision.fromString(tag.substring(2)) : rev;
+                Revision.fromString(tag, 2, tag.length()) : rev;
     }
 
     /**
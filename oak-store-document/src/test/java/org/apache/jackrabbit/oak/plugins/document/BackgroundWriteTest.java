@@ -18,14 +18,23 @@ package org.apache.jackrabbit.oak.plugins.document;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.junit.Test;
 
 import static com.google.common.collect.Iterables.all;
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.IS_LAST_REV_UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -61,14 +70,86 @@ public class BackgroundWriteTest {
         mk.dispose();
     }
 
+    @Test
+    public void concurrentMultiUpdate() throws Exception {
+        int numChildren = UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT * 5;
+        TestStore store = new TestStore();
+        List<UpdateOp> docs = Lists.newArrayList(
+                new UpdateOp(Utils.getIdFromPath(Path.ROOT), true));
+        UnsavedModifications pending = new UnsavedModifications();
+        Revision r = new Revision(1, 0, 1);
+        pending.put(Path.ROOT, r);
+        for (int i = 0; i < numChildren; i++) {
+            Path child = Path.fromString("/node-" + i);
+            Path leaf = new Path(child, "leaf");
+            docs.add(new UpdateOp(Utils.getIdFromPath(child), true));
+            docs.add(new UpdateOp(Utils.getIdFromPath(leaf), true));
+            pending.put(child, r);
+            pending.put(leaf, r);
+        }
+        store.create(NODES, docs);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BackgroundWriteStats stats = pending.persist(
+                    store, Suppliers.ofInstance(r),
+                    UnsavedModifications.Snapshot.IGNORE, new ReentrantLock(), executor);
+            assertEquals(numChildren * 2 + 1, stats.num);
+            // one multi update per batch and depth, plus one for the root
+            assertEquals(2 * numChildren / UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT + 1,
+                    stats.calls);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, pending.getPaths().size());
+        for (int i = 0; i < numChildren; i++) {
+            Path child = Path.fromString("/node-" + i);
+            NodeDocument doc = store.find(NODES, Utils.getIdFromPath(child));
+            assertNotNull(doc);
+            assertEquals(r, doc.getLastRev().get(1));
+            // leaf documents must be written before their parents
+            assertTrue(store.depthOrder.indexOf(new Path(child, "leaf").getDepth())
+                    < store.depthOrder.indexOf(child.getDepth()));
+        }
+    }
+
+    @Test
+    public void mixedDepthMultiUpdate() throws Exception {
+        TestStore store = new TestStore();
+        List<UpdateOp> docs = Lists.newArrayList();
+        UnsavedModifications pending = new UnsavedModifications();
+        Revision r = new Revision(1, 0, 1);
+        for (Path p = Path.fromString("/a/b/c/d/e"); p != null; p = p.getParent()) {
+            docs.add(new UpdateOp(Utils.getIdFromPath(p), true));
+            pending.put(p, r);
+        }
+        store.create(NODES, docs);
+        BackgroundWriteStats stats = pending.persist(
+                store, Suppliers.ofInstance(r),
+                UnsavedModifications.Snapshot.IGNORE, new ReentrantLock());
+        assertEquals(6, stats.num);
+        // one multi update for all depths, plus one for the root
+        assertEquals(2, stats.calls);
+        assertEquals(0, pending.getPaths().size());
+    }
+
     private static final class TestStore extends MemoryDocumentStore {
 
+        final List<Integer> depthOrder = new ArrayList<Integer>();
+
         @Override
         public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
                                                            List<UpdateOp> updateOps) {
             if (all(updateOps, IS_LAST_REV_UPDATE)) {
                 assertTrue(updateOps.size() <= UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT);
             }
+            synchronized (depthOrder) {
+                for (UpdateOp op : updateOps) {
+                    int depth = Utils.getDepthFromId(op.getId());
+                    if (!depthOrder.contains(depth)) {
+                        depthOrder.add(depth);
+                    }
+                }
+            }
             return super.createOrUpdate(collection, updateOps);
         }
     }
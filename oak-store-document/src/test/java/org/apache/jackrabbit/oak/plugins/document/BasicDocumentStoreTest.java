@@ -35,6 +35,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -888,6 +889,31 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
         assertTrue(result.contains(base + "9"));
     }
 
+    @Test
+    public void testQueryStream() throws Exception {
+        // create more documents than fit into a single batch
+        String base = this.getClass().getName() + ".testQueryStream-";
+        List<UpdateOp> creates = new ArrayList<UpdateOp>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 250; i++) {
+            String id = base + String.format("%03d", i);
+            creates.add(new UpdateOp(id, true));
+            expected.add(id);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, creates));
+
+        try (CloseableIterable<NodeDocument> docs = ds.queryStream(Collection.NODES, base, base + "A", Integer.MAX_VALUE)) {
+            assertEquals(expected, getKeys(Lists.newArrayList(docs)));
+        }
+        try (CloseableIterable<NodeDocument> docs = ds.queryStream(Collection.NODES, base, base + "A", 150)) {
+            assertEquals(expected.subList(0, 150), getKeys(Lists.newArrayList(docs)));
+        }
+        try (CloseableIterable<NodeDocument> docs = ds.queryStream(Collection.NODES, base + "A", base + "B", 10)) {
+            assertFalse(docs.iterator().hasNext());
+        }
+    }
+
     @Test
     public void testQueryBinary() {
         // create ten documents
@@ -16,12 +16,24 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.persistToBranch;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -67,6 +79,67 @@ public class DocumentNodeStoreBranchTest {
         }
     }
 
+    @Test
+    public void largeBranchCommitInBatches() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<Thread> writers = ConcurrentHashMap.newKeySet();
+        AtomicBoolean branchCommit = new AtomicBoolean();
+        // the first two batches wait for each other
+        CountDownLatch overlap = new CountDownLatch(2);
+        DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+            @Override
+            public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                               List<UpdateOp> updateOps) {
+                boolean batch = collection == Collection.NODES && branchCommit.get();
+                if (batch) {
+                    writers.add(Thread.currentThread());
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    overlap.countDown();
+                    try {
+                        overlap.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                try {
+                    return super.createOrUpdate(collection, updateOps);
+                } finally {
+                    if (batch) {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            }
+        };
+        // uses the write executor of the node store, not the default
+        // same thread executor of the builder
+        int numNodes = 5000;
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store)
+                .setUpdateLimit(numNodes * 2)
+                .setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < numNodes; i++) {
+            test.child("node-" + i).setProperty("p", i);
+        }
+        branchCommit.set(true);
+        persistToBranch(builder);
+        branchCommit.set(false);
+        assertEquals(0, overlap.getCount());
+        assertTrue(maxInFlight.get() >= 2);
+        assertTrue(maxInFlight.get() <= ns.getBranchCommitInFlightBatches());
+        assertTrue(writers.stream().anyMatch(t -> t != Thread.currentThread()));
+        merge(ns, builder);
+
+        NodeState root = ns.getRoot().getChildNode("test");
+        assertEquals(numNodes, root.getChildNodeCount(Long.MAX_VALUE));
+        for (int i = 0; i < numNodes; i++) {
+            assertEquals(i, (long) root.getChildNode("node-" + i)
+                    .getProperty("p").getValue(Type.LONG));
+        }
+    }
+
     /**
      * Similar test as {@link #branchedBranch()} but without persistent branch.
      */
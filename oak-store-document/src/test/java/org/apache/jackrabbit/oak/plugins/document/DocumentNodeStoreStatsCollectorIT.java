@@ -103,6 +103,18 @@ public class DocumentNodeStoreStatsCollectorIT {
         verify(statsCollector).doneMerge(eq(3), eq(0), anyLong(), eq(0L), eq(false));
     }
 
+    @Test
+    public void doneCommit() throws Exception {
+        Mockito.clearInvocations(statsCollector);
+        NodeBuilder nb = nodeStore.getRoot().builder();
+        nb.child("a");
+        nb.child("b");
+        nodeStore.merge(nb, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        // two added nodes and the root with the children flag
+        verify(statsCollector).doneCommit(argThat(s -> s.numUpdateOps == 3
+                && s.numPaths == 3 && s.total >= s.changesApplied));
+    }
+
     @Test
     public void failedMerge() {
         CommitHook failingHook = new CommitHook() {
@@ -23,6 +23,7 @@ import java.lang.management.ManagementFactory;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
@@ -86,6 +87,23 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(105, m.getCount());
     }
 
+    @Test
+    public void commit() {
+        CommitStats commitStats = new CommitStats();
+        commitStats.conflictCheck = 11;
+        commitStats.commitRoot = 17;
+        commitStats.total = 42;
+        commitStats.numUpdateOps = 5;
+        stats.doneCommit(commitStats);
+        assertEquals(MICROSECONDS.toNanos(11),
+                getTimer(DocumentNodeStoreStats.COMMIT_CONFLICT_CHECK_TIME).getSnapshot().getMax());
+        assertEquals(MICROSECONDS.toNanos(17),
+                getTimer(DocumentNodeStoreStats.COMMIT_ROOT_UPDATE_TIME).getSnapshot().getMax());
+        assertEquals(MICROSECONDS.toNanos(42),
+                getTimer(DocumentNodeStoreStats.COMMIT_TOTAL_TIME).getSnapshot().getMax());
+        assertEquals(5, getHistogram(DocumentNodeStoreStats.COMMIT_NUM_UPDATE_OPS_HISTO).getSnapshot().getMax());
+    }
+
     private Meter getMeter(String name) {
         return statsProvider.getRegistry().getMeters().get(name);
     }
@@ -93,4 +111,8 @@ public class DocumentNodeStoreStatsTest {
     private Timer getTimer(String name) {
         return statsProvider.getRegistry().getTimers().get(name);
     }
+
+    private Histogram getHistogram(String name) {
+        return statsProvider.getRegistry().getHistograms().get(name);
+    }
 }
@@ -295,6 +295,50 @@ public class JournalEntryTest {
         inv.close();
     }
 
+    @Test
+    public void compactChanges() throws Exception {
+        Set<Path> paths = Sets.newHashSet();
+        addRandomPaths(paths);
+        paths.add(p("/foo"));
+        paths.add(p("/foo/bar"));
+        paths.add(p("/foo/barbaz"));
+        paths.add(p("/foo/b\u00e4r"));
+        paths.add(p("/foo/\ud83d\ude00"));
+        paths.add(p("/foo/\ud83d\ude01"));
+        Revision r1 = new Revision(1, 0, 1);
+        Revision r2 = new Revision(2, 0, 1);
+        DocumentStore store = new MemoryDocumentStore();
+        JournalEntry entry = JOURNAL.newDocument(store);
+        entry.modified(paths);
+        assertTrue(store.create(JOURNAL, singletonList(entry.asUpdateOp(r2, true))));
+
+        // read from the serialized compact format
+        entry = store.find(JOURNAL, JournalEntry.asId(r2));
+        assertNotNull(entry);
+        assertEquals(paths, addTo(entry, Path.ROOT));
+        Set<Path> fooPaths = Sets.newHashSet();
+        for (Path path : paths) {
+            if (path.toString().startsWith("/foo")) {
+                fooPaths.add(path);
+            }
+        }
+        assertEquals(fooPaths, addTo(entry, p("/foo")));
+        assertTrue(addTo(entry, p("/does/not/exist")).isEmpty());
+
+        StringSort sort = externalChanges(r1, r2, store);
+        assertEquals(paths.size(), sort.getSize());
+        sort.close();
+
+        // write back in JSON format
+        Revision r3 = new Revision(3, 0, 1);
+        entry.modified(p("/qux"));
+        paths.add(p("/qux"));
+        assertTrue(store.create(JOURNAL, singletonList(entry.asUpdateOp(r3, false))));
+        entry = store.find(JOURNAL, JournalEntry.asId(r3));
+        assertNotNull(entry);
+        assertEquals(paths, addTo(entry, Path.ROOT));
+    }
+
     @Test
     public void getRevisionTimestamp() throws Exception {
         DocumentStore store = new MemoryDocumentStore();
@@ -435,6 +479,22 @@ public class JournalEntryTest {
         }
     }
 
+    private static Set<Path> addTo(JournalEntry entry, Path path)
+            throws IOException {
+        Set<Path> paths = Sets.newHashSet();
+        StringSort sort = JournalEntry.newSorter();
+        try {
+            entry.addTo(sort, path);
+            sort.sort();
+            for (String s : sort) {
+                paths.add(p(s));
+            }
+        } finally {
+            sort.close();
+        }
+        return paths;
+    }
+
     private static void add(StringSort sort, List<Path> paths)
             throws IOException {
         for (Path p : paths) {
@@ -19,6 +19,8 @@
 
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -149,6 +151,51 @@ public class LastRevRecoveryTest {
         assertEquals(head2, getDocument(ds1, "/").getLastRev().get(c2Id));
     }
 
+    @Test
+    public void recoverMultipleClusterNodes() throws Exception {
+        NodeBuilder b1 = ds1.getRoot().builder();
+        b1.child("x").child("y");
+        merge(ds1, b1);
+        ds1.runBackgroundOperations();
+
+        List<DocumentNodeStore> crashed = newArrayList();
+        Map<Integer, Revision> heads = new HashMap<>();
+        for (int clusterId = 3; clusterId < 6; clusterId++) {
+            DocumentNodeStore ns = builderProvider.newBuilder()
+                    .clock(clock)
+                    .setLeaseCheckMode(LeaseCheckMode.DISABLED)
+                    .setAsyncDelay(0)
+                    .setDocumentStore(sharedStore)
+                    .setClusterId(clusterId)
+                    .getNodeStore();
+            NodeBuilder b = ns.getRoot().builder();
+            b.child("x").child("y").setProperty("p" + clusterId, "v");
+            merge(ns, b);
+            heads.put(clusterId, ns.getHeadRevision().getRevision(clusterId));
+            crashed.add(ns);
+        }
+
+        // let the leases expire
+        clock.waitUntil(clock.getTime() + ds1.getClusterInfo().getLeaseTime() + 1000);
+        ds1.getClusterInfo().renewLease();
+        ds2.getClusterInfo().renewLease();
+
+        LastRevRecoveryAgent agent = ds1.getLastRevRecoveryAgent();
+        assertTrue(agent.isRecoveryNeeded());
+        assertEquals(3, Iterables.size(agent.getRecoveryCandidateNodes()));
+        agent.performRecoveryIfNeeded();
+        assertFalse(agent.isRecoveryNeeded());
+
+        for (Map.Entry<Integer, Revision> head : heads.entrySet()) {
+            int clusterId = head.getKey();
+            assertEquals(head.getValue(), getDocument(ds1, "/x").getLastRev().get(clusterId));
+            assertEquals(head.getValue(), getDocument(ds1, "/").getLastRev().get(clusterId));
+        }
+        for (DocumentNodeStore ns : crashed) {
+            TestUtils.disposeQuietly(ns);
+        }
+    }
+
     // OAK-3079
     @Test
     public void recoveryWithoutRootUpdate() throws Exception {
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Meter;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.metric.MetricStatisticsProvider;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrefetchChildrenTest {
+
+    private static final int NUM_CHILDREN = 1000;
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private MetricStatisticsProvider statsProvider =
+            new MetricStatisticsProvider(ManagementFactory.getPlatformMBeanServer(), executor);
+
+    @After
+    public void shutDown() {
+        statsProvider.close();
+        new ExecutorCloser(executor).close();
+        new ExecutorCloser(prefetchExecutor).close();
+    }
+
+    @Test
+    public void prefetchNextBatch() throws Exception {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns1 = builderProvider.newBuilder()
+                .setDocumentStore(store).setClusterId(1)
+                .setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns1.getRoot().builder();
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            test.child("node-" + i);
+        }
+        ns1.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+
+        // second node store with empty caches
+        DocumentNodeStore ns2 = builderProvider.newBuilder()
+                .setDocumentStore(store).setClusterId(2)
+                .setPrefetchChildren(true)
+                .setExecutor(prefetchExecutor)
+                .setStatisticsProvider(statsProvider)
+                .setAsyncDelay(0).getNodeStore();
+
+        NodeState parent = ns2.getRoot().getChildNode("test");
+        int count = 0;
+        for (ChildNodeEntry entry : parent.getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+            count++;
+        }
+        assertEquals(NUM_CHILDREN, count);
+        prefetchExecutor.shutdown();
+        assertTrue(prefetchExecutor.awaitTermination(1, TimeUnit.MINUTES));
+
+        // all but the first batch were scheduled for prefetch
+        assertTrue(getMeter(DocumentNodeStoreStats.PREFETCH_CHILDREN_COUNT).getCount() > 0);
+        assertTrue(getMeter(DocumentNodeStoreStats.PREFETCH_CHILDREN_HIT).getCount()
+                + getMeter(DocumentNodeStoreStats.PREFETCH_CHILDREN_MISS).getCount() > 0);
+    }
+
+    @Test
+    public void noPrefetchWithDirectExecutor() throws Exception {
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setPrefetchChildren(true)
+                .setExecutor(Runnable::run, false)
+                .setStatisticsProvider(statsProvider)
+                .setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            test.child("node-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.getNodeChildrenCache().invalidateAll();
+
+        int count = 0;
+        for (ChildNodeEntry ignored : ns.getRoot().getChildNode("test").getChildNodeEntries()) {
+            count++;
+        }
+        assertEquals(NUM_CHILDREN, count);
+        assertEquals(0, getMeter(DocumentNodeStoreStats.PREFETCH_CHILDREN_COUNT).getCount());
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setExecutor(MoreExecutors.sameThreadExecutor())
+                .setStatisticsProvider(statsProvider)
+                .setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            test.child("node-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.getNodeChildrenCache().invalidateAll();
+
+        int count = 0;
+        for (ChildNodeEntry ignored : ns.getRoot().getChildNode("test").getChildNodeEntries()) {
+            count++;
+        }
+        assertEquals(NUM_CHILDREN, count);
+        assertEquals(0, getMeter(DocumentNodeStoreStats.PREFETCH_CHILDREN_COUNT).getCount());
+    }
+
+    private Meter getMeter(String name) {
+        return statsProvider.getRegistry().getMeters().get(name);
+    }
+}
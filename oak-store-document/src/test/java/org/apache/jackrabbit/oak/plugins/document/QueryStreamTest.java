@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
+import org.apache.jackrabbit.oak.plugins.document.util.LoggingDocumentStoreWrapper;
+import org.apache.jackrabbit.oak.plugins.document.util.SynchronizingDocumentStoreWrapper;
+import org.apache.jackrabbit.oak.plugins.document.util.TimingDocumentStoreWrapper;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the document store wrappers pass
+ * {@link DocumentStore#queryStream(Collection, String, String, int)} on to
+ * the wrapped store.
+ */
+public class QueryStreamTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final CountingStore store = new CountingStore();
+
+    @Test
+    public void nodeStoreDocumentStore() throws Exception {
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        assertQueryStream(ns.getDocumentStore());
+    }
+
+    @Test
+    public void timingWrapper() throws Exception {
+        assertQueryStream(new TimingDocumentStoreWrapper(store));
+    }
+
+    @Test
+    public void loggingWrapper() throws Exception {
+        assertQueryStream(new LoggingDocumentStoreWrapper(store));
+    }
+
+    @Test
+    public void synchronizingWrapper() throws Exception {
+        assertQueryStream(new SynchronizingDocumentStoreWrapper(store));
+    }
+
+    private void assertQueryStream(DocumentStore ds) throws Exception {
+        ds.create(Collection.NODES, Lists.newArrayList(
+                new UpdateOp(Utils.getIdFromPath("/foo"), true)));
+        int calls = store.queryStreamCalls.get();
+        try (CloseableIterable<NodeDocument> docs = ds.queryStream(Collection.NODES,
+                Utils.getKeyLowerLimit(Path.ROOT), Utils.getKeyUpperLimit(Path.ROOT),
+                Integer.MAX_VALUE)) {
+            assertEquals(1, Lists.newArrayList(docs).size());
+        }
+        assertTrue(store.queryStreamCalls.get() > calls);
+    }
+
+    private static final class CountingStore extends MemoryDocumentStore {
+
+        final AtomicInteger queryStreamCalls = new AtomicInteger();
+
+        @NotNull
+        @Override
+        public <T extends Document> CloseableIterable<T> queryStream(Collection<T> collection,
+                                                                     String fromKey,
+                                                                     String toKey,
+                                                                     int limit) {
+            queryStreamCalls.incrementAndGet();
+            return super.queryStream(collection, fromKey, toKey, limit);
+        }
+    }
+}
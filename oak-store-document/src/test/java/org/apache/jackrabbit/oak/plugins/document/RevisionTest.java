@@ -58,6 +58,21 @@ public class RevisionTest {
         }
     }
     
+    @Test
+    public void fromStringRange() {
+        Revision r = new Revision(0x1234, 5, 6, true);
+        String s = "c-" + r + ",";
+        assertEquals(r, Revision.fromString(s, 2, s.length() - 1));
+        for (int[] range : new int[][]{{0, 0}, {2, 3}, {0, s.length()}}) {
+            try {
+                Revision.fromString(s, range[0], range[1]);
+                fail("Expected: Invalid revision id exception for " + range[0] + "-" + range[1]);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
     @Test
     public void edgeCases() {
         assertEquals("br0-0-0", new Revision(0, 0, 0, true).toString());
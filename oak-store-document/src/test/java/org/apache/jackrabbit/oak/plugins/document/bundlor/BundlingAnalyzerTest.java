@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_CONTENT;
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BundlingAnalyzerTest {
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private DocumentNodeStore store;
+
+    private BundlingAnalyzer analyzer;
+
+    @Before
+    public void setUp() throws CommitFailedException {
+        store = builderProvider.newBuilder().setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = store.getRoot().builder();
+        new InitialContent().initialize(builder);
+        BundlingConfigInitializer.INSTANCE.initialize(builder);
+        merge(builder);
+        store.runBackgroundOperations();
+        analyzer = store.getBundlingAnalyzer();
+        analyzer.setEnabled(true);
+    }
+
+    @Test
+    public void recommendAndApply() throws Exception {
+        createPages("pages", 10);
+        readPages("pages", 10, 100);
+
+        List<BundlingAnalyzer.Recommendation> recommendations = analyzer.getRecommendations();
+        assertEquals(1, recommendations.size());
+        BundlingAnalyzer.Recommendation r = recommendations.get(0);
+        assertEquals("app:Page", r.getType());
+        assertEquals(JCR_CONTENT, r.getChildName());
+        assertEquals(1.0, r.getRatio(), 0.001);
+        assertEquals(1000, r.getSavedReads());
+        assertEquals(1.0, analyzer.getReadAmplification(), 0.001);
+
+        analyzer.applyRecommendations(store);
+        store.runBackgroundOperations();
+        NodeState config = NodeStateUtils.getNode(store.getRoot(),
+                BundlingConfigHandler.CONFIG_PATH + "/app:Page");
+        assertTrue(config.exists());
+        assertTrue(config.getProperty(DocumentBundlor.PROP_PATTERN)
+                .getValue(Type.STRINGS).iterator().hasNext());
+        assertEquals(1.0, analyzer.getPreviousReadAmplification(), 0.001);
+
+        //New pages bundle jcr:content and read fewer documents: the page
+        //and its parent are still separate documents
+        createPages("bundled", 10);
+        readPages("bundled", 10, 100);
+        assertEquals(2.0 / 3, analyzer.getReadAmplification(), 0.001);
+        assertTrue(analyzer.getRecommendations().isEmpty());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        analyzer.setEnabled(false);
+        createPages("pages", 10);
+        readPages("pages", 10, 100);
+        assertTrue(analyzer.getRecommendations().isEmpty());
+        assertFalse(analyzer.getReadAmplification() >= 0);
+    }
+
+    private void createPages(String parent, int num) throws CommitFailedException {
+        NodeBuilder builder = store.getRoot().builder();
+        NodeBuilder pages = builder.child(parent);
+        for (int i = 0; i < num; i++) {
+            NodeBuilder page = pages.child("p" + i);
+            page.setProperty(JCR_PRIMARYTYPE, "app:Page", Type.NAME);
+            page.child(JCR_CONTENT).setProperty(JCR_PRIMARYTYPE, "nt:unstructured", Type.NAME);
+        }
+        merge(builder);
+    }
+
+    private void readPages(String parent, int num, int iterations) {
+        for (int j = 0; j < iterations; j++) {
+            for (int i = 0; i < num; i++) {
+                NodeState root = store.getRoot();
+                root.getChildNode(parent).getChildNode("p" + i).getChildNode(JCR_CONTENT);
+            }
+        }
+    }
+
+    private void merge(NodeBuilder builder) throws CommitFailedException {
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+}
@@ -16,9 +16,14 @@
  */
 package org.apache.jackrabbit.oak.plugins.document.mongo;
 
+import com.mongodb.BasicDBObject;
+
+import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class MongoDocumentNodeStoreBuilderTest {
@@ -34,4 +39,38 @@ public class MongoDocumentNodeStoreBuilderTest {
         MongoDocumentNodeStoreBuilder builder = new MongoDocumentNodeStoreBuilder();
         assertFalse(builder.isClientSessionDisabled());
     }
+
+    @Test
+    public void collectionCompressor() {
+        MongoDocumentNodeStoreBuilder builder = new MongoDocumentNodeStoreBuilder();
+        assertNull(builder.getCollectionCompressor(Collection.NODES));
+        builder.setCollectionCompressor(Collection.NODES, CollectionCompressor.fromName("ZSTD"));
+        assertEquals(CollectionCompressor.ZSTD, builder.getCollectionCompressor(Collection.NODES));
+        assertNull(builder.getCollectionCompressor(Collection.JOURNAL));
+        builder.setCollectionCompressor(Collection.NODES, null);
+        assertNull(builder.getCollectionCompressor(Collection.NODES));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCollectionCompressor() {
+        CollectionCompressor.fromName("lz4");
+    }
+
+    @Test
+    public void snappyCollectionCompressor() {
+        // the server default is configurable, so snappy can be requested
+        assertEquals(CollectionCompressor.SNAPPY, CollectionCompressor.fromName("snappy"));
+    }
+
+    @Test
+    public void blockCompressor() {
+        BasicDBObject stats = new BasicDBObject();
+        assertNull(CollectionCompressor.getBlockCompressor(stats));
+        stats.put("wiredTiger", new BasicDBObject("creationString",
+                "access_pattern_hint=none,allocation_size=4KB,block_compressor=zstd,cache_resident=false"));
+        assertEquals("zstd", CollectionCompressor.getBlockCompressor(stats));
+        stats.put("wiredTiger", new BasicDBObject("creationString",
+                "allocation_size=4KB,block_compressor=,cache_resident=false"));
+        assertEquals("", CollectionCompressor.getBlockCompressor(stats));
+    }
 }
@@ -80,6 +80,7 @@ public class MongoDocumentStoreMetricsTest extends AbstractMongoConnectionTest {
 
             metrics.run();
             assertEquals(11, getCount("MongoDB.nodes.count"));
+            assertThat(getCount("MongoDB.nodes.compressionRatio"), greaterThan(0L));
         } finally {
             store.dispose();
         }
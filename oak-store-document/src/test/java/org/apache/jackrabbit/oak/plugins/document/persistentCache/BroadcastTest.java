@@ -25,8 +25,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.cache.CacheLIRS;
@@ -148,6 +150,49 @@ public class BroadcastTest {
         broadcast("tcp:sendTo localhost;key 123", 80);
     }
 
+    @Test
+    public void broadcastTCPMultiplePeers() throws Exception {
+        String config = "sendTo localhost;ports 9820 9829;key multi";
+        List<TCPBroadcaster> peers = new ArrayList<TCPBroadcaster>();
+        final List<AtomicInteger> received = new ArrayList<AtomicInteger>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                TCPBroadcaster b = new TCPBroadcaster(config);
+                final AtomicInteger count = new AtomicInteger();
+                b.addListener(new Broadcaster.Listener() {
+                    @Override
+                    public void receive(ByteBuffer buff) {
+                        if (buff.remaining() == 5 && buff.get() == 42) {
+                            count.incrementAndGet();
+                        }
+                    }
+                });
+                peers.add(b);
+                received.add(count);
+            }
+            final TCPBroadcaster sender = peers.get(0);
+            // peers connect to each other in the background
+            boolean allReceived = waitFor(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    sender.send(ByteBuffer.wrap(new byte[] {42, 1, 2, 3, 4}));
+                    for (AtomicInteger count : received) {
+                        if (count.get() == 0) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }, 10000);
+            Assert.assertTrue("received: " + received, allReceived);
+            Assert.assertTrue(sender.getSentCount() > 0);
+        } finally {
+            for (TCPBroadcaster b : peers) {
+                b.close();
+            }
+        }
+    }
+
     @Test
     public void broadcastInMemory() throws Exception {
         broadcast("inMemory", 100);
@@ -107,6 +107,33 @@ public class CacheTest {
         assertTrue(new File("target/cacheTest/cache-3.data").exists());
     }
 
+    @Test
+    public void deleteOldGenerationOnSwitch() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        PersistentCache cache = new PersistentCache("target/cacheTest,size=1,-compress,+compact");
+        try {
+            String largeString = new String(new char[1024 * 1024]);
+            for (int generation = 0; generation < 2; generation++) {
+                CacheMap<String, String> map = cache.openMap(generation, "test", null);
+                // write until the data is persisted and exceeds the size limit
+                long end = System.currentTimeMillis() + 10000;
+                for (int i = 0; !cache.needSwitch() && System.currentTimeMillis() < end; i++) {
+                    map.put("x" + i, largeString);
+                    Thread.sleep(10);
+                }
+                assertTrue(cache.needSwitch());
+                cache.switchGenerationIfNeeded();
+            }
+            // the oldest generation is discarded, two generations remain
+            assertFalse(new File("target/cacheTest/cache-0.data").exists());
+            assertTrue(new File("target/cacheTest/cache-1.data").exists());
+            assertTrue(new File("target/cacheTest/cache-2.data").exists());
+            assertEquals(0, cache.getExceptionCount());
+        } finally {
+            cache.close();
+        }
+    }
+
     @Test
     public void interrupt() throws Exception {
         FileUtils.deleteDirectory(new File("target/cacheTest"));
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -35,6 +36,7 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -144,6 +146,20 @@ public class RDBDocumentSerializerTest {
         }
     }
 
+    @Test
+    public void testSharedRevisions() throws UnsupportedEncodingException {
+        RDBRow row = new RDBRow("_foo", 1L, false, 1l, 2l, 3l, 0L, 0L, 0L,
+                "\"blob\", [[\"=\", \"c\", \"r1-0-1\", \"z\"]]",
+                "{\"a\":{\"r1-0-1\":\"x\"}, \"b\":{\"r1-0-1\":\"y\"}}".getBytes("UTF-8"));
+        NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+        Revision a = ((Map<Revision, Object>) doc.get("a")).keySet().iterator().next();
+        Revision b = ((Map<Revision, Object>) doc.get("b")).keySet().iterator().next();
+        Revision c = ((Map<Revision, Object>) doc.get("c")).keySet().iterator().next();
+        assertEquals(Revision.fromString("r1-0-1"), a);
+        assertSame(a, b);
+        assertSame(a, c);
+    }
+
     @Test
     public void testNullModified() throws UnsupportedEncodingException {
         RDBRow row = new RDBRow("_foo", 1L, true, null, 2l, 3l, 0L, 0L, 0L, "{}", null);
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.RDBTableMetaData;
+import org.junit.Test;
+
+public class RDBDocumentStoreDBTest {
+
+    private static final String INSERT = "insert into NODES(ID, MODIFIED, HASBINARY, DELETEDONCE, MODCOUNT, CMODCOUNT, DSIZE, "
+            + "VERSION, SDTYPE, SDMAXREVTIME, DATA, BDATA) values (?, ?, ?, ?, ?, ?, ?,  2, ?, ?, ?, ?)";
+
+    @Test
+    public void insertStatement() {
+        RDBTableMetaData tmd = new RDBTableMetaData(null, "NODES");
+        tmd.setHasVersion(true);
+        tmd.setHasSplitDocs(true);
+        for (RDBDocumentStoreDB db : RDBDocumentStoreDB.values()) {
+            String expected = INSERT;
+            if (db == RDBDocumentStoreDB.POSTGRES) {
+                expected += " on conflict (ID) do nothing";
+            }
+            RDBDocumentStoreJDBC jdbc = new RDBDocumentStoreJDBC(db, null, 100, 10000);
+            assertEquals(db.toString(), expected, jdbc.getInsertStatement(tmd));
+        }
+    }
+
+    @Test
+    public void insertStatementWithoutSplitDocs() {
+        RDBTableMetaData tmd = new RDBTableMetaData(null, "NODES");
+        RDBDocumentStoreJDBC jdbc = new RDBDocumentStoreJDBC(RDBDocumentStoreDB.H2, null, 100, 10000);
+        assertEquals("insert into NODES(ID, MODIFIED, HASBINARY, DELETEDONCE, MODCOUNT, CMODCOUNT, DSIZE, "
+                + "DATA, BDATA) values (?, ?, ?, ?, ?, ?, ?, ?, ?)", jdbc.getInsertStatement(tmd));
+    }
+}
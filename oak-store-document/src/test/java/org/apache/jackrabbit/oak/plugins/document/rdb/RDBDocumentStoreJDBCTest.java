@@ -261,6 +261,43 @@ public class RDBDocumentStoreJDBCTest extends AbstractDocumentStoreTest {
         }
     }
 
+    @Test
+    public void insertWithDuplicateId() throws SQLException {
+
+        // other databases may abort the batch at the first failing row
+        assumeTrue(dbInfo == RDBDocumentStoreDB.H2 || dbInfo == RDBDocumentStoreDB.POSTGRES);
+
+        String base = this.getClass().getName() + "." + name.getMethodName();
+        String existing = base + "-2";
+        for (int i = 1; i <= 3; i++) {
+            super.ds.remove(Collection.NODES, base + "-" + i);
+            removeMe.add(base + "-" + i);
+        }
+        assertTrue(super.ds.create(Collection.NODES, Collections.singletonList(new UpdateOp(existing, true))));
+
+        List<NodeDocument> docs = new ArrayList<NodeDocument>();
+        for (String id : new String[] { base + "-1", existing, base + "-3", base + "-3" }) {
+            NodeDocument doc = Collection.NODES.newDocument(super.ds);
+            doc.put(NodeDocument.ID, id);
+            doc.put(NodeDocument.MOD_COUNT, 1L);
+            docs.add(doc);
+        }
+
+        RDBTableMetaData tmd = ((RDBDocumentStore) super.ds).getTable(Collection.NODES);
+        Connection con = super.rdbDataSource.getConnection();
+        try {
+            con.setReadOnly(false);
+            Set<String> inserted = jdbc.insert(con, tmd, docs);
+            con.commit();
+            // only the rows with an existing or a duplicate ID fail
+            assertEquals(of(base + "-1", base + "-3"), inserted);
+        } finally {
+            con.close();
+        }
+        assertNotNull(super.ds.find(Collection.NODES, base + "-1", 0));
+        assertNotNull(super.ds.find(Collection.NODES, base + "-3", 0));
+    }
+
     @Test
     public void statementCloseTest() throws SQLException {
 
@@ -47,11 +47,13 @@ import org.apache.jackrabbit.oak.spi.state.EqualsDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.stats.Clock;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static com.google.common.collect.ImmutableList.of;
+import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.oak.plugins.document.secondary.SecondaryStoreObserverTest.create;
 import static org.apache.jackrabbit.oak.plugins.document.secondary.SecondaryStoreObserverTest.documentState;
@@ -258,6 +260,66 @@ public class SecondaryStoreCacheTest {
         merge(builder);
     }
 
+    @Test
+    public void autoSelectedSubtrees() throws Exception {
+        HotSubtreeTracker tracker = new HotSubtreeTracker(new PathFilter(of("/"), empty),
+                2, 1, 2, 0, Clock.SIMPLE);
+        SecondaryStoreBuilder builder = createBuilder(new PathFilter(of("/"), empty));
+        builder.metaPropNames(DocumentNodeStore.META_PROP_NAMES);
+        builder.hotSubtreeTracker(tracker);
+        SecondaryStoreCache cache = builder.buildCache();
+        primary.addObserver(builder.buildObserver(cache));
+
+        NodeBuilder nb = primary.getRoot().builder();
+        create(nb, "/a/b/x", "/a/c/y");
+        merge(nb);
+
+        Path bx = Path.fromString("/a/b/x");
+        Path cy = Path.fromString("/a/c/y");
+        assertFalse(cache.isCached(bx));
+        //Three reads are below the minimum access count once decayed
+        for (int i = 0; i < 3; i++) {
+            assertNull(read(cache, bx));
+        }
+        nb = primary.getRoot().builder();
+        create(nb, "/y");
+        merge(nb);
+        assertTrue(tracker.getSelectedSubtrees().isEmpty());
+        for (int i = 0; i < 3; i++) {
+            assertNull(read(cache, bx));
+        }
+
+        //Next change selects and copies /a/b
+        nb = primary.getRoot().builder();
+        create(nb, "/z");
+        merge(nb);
+
+        assertEquals(of("/a/b"), newArrayList(tracker.getSelectedSubtrees()));
+        assertTrue(cache.isCached(bx));
+        assertFalse(cache.isCached(cy));
+        assertTrue(EqualsDiff.equals(documentState(primary.getRoot(), "/a/b/x"), read(cache, bx)));
+
+        //Reads move to /a/c
+        for (int i = 0; i < 10; i++) {
+            assertNull(read(cache, cy));
+        }
+        nb = primary.getRoot().builder();
+        create(nb, "/z/z");
+        merge(nb);
+
+        assertEquals(of("/a/c"), newArrayList(tracker.getSelectedSubtrees()));
+        assertFalse(cache.isCached(bx));
+        assertNotNull(read(cache, cy));
+        assertFalse(NodeStateUtils.getNode(secondary.getRoot(), "/a/b").exists());
+        assertEquals(2.0 / 18, tracker.getHitRate(), 0.0001);
+    }
+
+    private AbstractDocumentNodeState read(SecondaryStoreCache cache, Path path) {
+        AbstractDocumentNodeState root = primary.getRoot();
+        AbstractDocumentNodeState state = documentState(root, path.toString());
+        return cache.getDocumentNodeState(path, root.getRootRevision(), state.getLastRevision());
+    }
+
     private SecondaryStoreCache createCache(PathFilter pathFilter){
         SecondaryStoreBuilder builder = createBuilder(pathFilter);
         builder.metaPropNames(DocumentNodeStore.META_PROP_NAMES);